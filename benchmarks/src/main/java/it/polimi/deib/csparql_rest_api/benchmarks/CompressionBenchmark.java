@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.http.GzipCompressingEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bandwidth/CPU trade-off of the gzip compression of feeds, with compression
+ * disabled (threshold -1) or enabled (threshold 0). {@code compress} measures
+ * the CPU time spent compressing a serialized model, {@code feed} the latency
+ * of a whole feed over loopback. The raw and compressed size of each payload
+ * is printed during setup, so the bandwidth savings can be read next to the
+ * timings.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+	private static final String STREAM = "http://ex.org/streams/social";
+
+	@Param({"10", "100", "1000", "10000"})
+	public int triples;
+
+	@Param({"RDF_JSON", "N_TRIPLES"})
+	public FeedFormat format;
+
+	@Param({"-1", "0"})
+	public int threshold;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private SerializedModel serialization;
+	private byte[] payload;
+
+	@Setup
+	public void setUp() throws IOException, ServerErrorException, StreamErrorException {
+		serialization = SerializedModel.serialize(Models.socialModel(triples), format);
+		ByteBuffer buffer = ByteBuffer.allocate(serialization.getLength());
+		serialization.writeTo(buffer);
+		payload = buffer.array();
+		System.out.println("\n# " + format + " payload for " + triples + " triples: "
+				+ serialization.getLength() + " bytes, " + GzipCompressingEntity.compress(new ByteArrayEntity(payload), 0).getContentLength() + " bytes compressed");
+
+		server = new FakeRspServer();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		configuration.setRequestCompressionThreshold(threshold);
+		api = new RSP_services_csparql_API(server.start(), configuration);
+		api.registerStream(STREAM);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+	}
+
+	@Benchmark
+	public HttpEntity compress() throws IOException {
+		return GzipCompressingEntity.compress(new ByteArrayEntity(payload), threshold);
+	}
+
+	@Benchmark
+	public String feed() throws ServerErrorException, StreamErrorException {
+		return api.getStreamHandle(STREAM).feed(serialization);
+	}
+
+}
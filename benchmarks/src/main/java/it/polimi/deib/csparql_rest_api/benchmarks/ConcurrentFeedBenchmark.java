@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a single client shared by several threads, against a fake
+ * server answering after {@code latency} milliseconds. Run with {@code -t}
+ * to choose the number of threads calling {@code feed}; {@code feedAsync}
+ * keeps {@value #IN_FLIGHT} asynchronous feeds in flight from each thread.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentFeedBenchmark {
+
+	private static final String STREAM = "http://ex.org/streams/social";
+	private static final int IN_FLIGHT = 100;
+
+	@Param({"0", "5"})
+	public int latency;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+
+	@Setup
+	public void setUp() throws IOException, ServerErrorException, StreamErrorException {
+		server = new FakeRspServer();
+		server.setLatency(latency, latency);
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.start(), configuration);
+		api.registerStream(STREAM);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+	}
+
+	@Benchmark
+	public String feed() throws ServerErrorException, StreamErrorException {
+		return api.feedStream(STREAM, "{}");
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(IN_FLIGHT)
+	public void feedAsync() throws InterruptedException, ExecutionException {
+		List<Future<String>> futures = new ArrayList<Future<String>>(IN_FLIGHT);
+		for(int i = 0; i < IN_FLIGHT; i++)
+			futures.add(api.feedStreamAsync(STREAM, "{}"));
+		for(Future<String> future : futures)
+			future.get();
+	}
+
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.TripleBuffer;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * Throughput of {@link RSP_services_csparql_API#feedStream(String, Model)},
+ * i.e. serialization of the model in the feed format, request and response handling. Run with
+ * {@code -prof gc} to get the allocation rate per feed.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedStreamBenchmark {
+
+	private static final String STREAM = "http://ex.org/streams/social";
+
+	@Param({"10", "1000", "100000"})
+	public int triples;
+
+	@Param({"RDF_JSON", "N_TRIPLES"})
+	public FeedFormat format;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private Model model;
+	private String serialization;
+	private TripleBuffer triplesBuffer;
+
+	@Setup
+	public void setUp() throws IOException, ServerErrorException, StreamErrorException {
+		server = new FakeRspServer();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setFeedFormat(format);
+		api = new RSP_services_csparql_API(server.start(), configuration);
+		api.registerStream(STREAM);
+		model = Models.socialModel(triples);
+		StringWriter sw = new StringWriter();
+		model.write(sw, "RDF/JSON");
+		serialization = sw.toString();
+		triplesBuffer = new TripleBuffer();
+		StmtIterator statements = model.listStatements();
+		while(statements.hasNext()){
+			Statement statement = statements.next();
+			if(statement.getObject().isLiteral())
+				triplesBuffer.addLiteral(statement.getSubject().getURI(), statement.getPredicate().getURI(), statement.getString());
+			else
+				triplesBuffer.add(statement.getSubject().getURI(), statement.getPredicate().getURI(), statement.getResource().getURI());
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+	}
+
+	@Benchmark
+	public String feedModel() throws ServerErrorException, StreamErrorException {
+		return api.feedStream(STREAM, model);
+	}
+
+	@Benchmark
+	public String feedTripleBuffer() throws ServerErrorException, StreamErrorException {
+		return api.feedStream(STREAM, triplesBuffer);
+	}
+
+	@Benchmark
+	public String feedSerializedModel() throws ServerErrorException, StreamErrorException {
+		return api.feedStream(STREAM, serialization);
+	}
+
+}
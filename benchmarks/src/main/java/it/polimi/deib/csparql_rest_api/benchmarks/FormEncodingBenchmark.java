@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StaticKnowledgeErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the form encoded requests: {@link RSP_services_csparql_API#launchUpdateQuery(String)}
+ * and the static knowledge uploads, end to end, plus the bare encoding of the
+ * update query form as done by the client.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormEncodingBenchmark {
+
+	private static final String IRI = "http://ex.org/kb/social";
+
+	/** Number of triples of the uploaded model, the update query has about the same size */
+	@Param({"100", "10000"})
+	public int triples;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private String updateQuery;
+	private File staticModel;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new FakeRspServer();
+		api = new RSP_services_csparql_API(server.start());
+		updateQuery = Models.updateQuery(triples * 60);
+		staticModel = File.createTempFile("rsp-services-benchmark", ".rdf");
+		OutputStream out = new FileOutputStream(staticModel);
+		try {
+			Models.socialModel(triples).write(out, "RDF/XML");
+		} finally {
+			out.close();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+		staticModel.delete();
+	}
+
+	@Benchmark
+	public String launchUpdateQuery() throws ServerErrorException, QueryErrorException {
+		return api.launchUpdateQuery(updateQuery);
+	}
+
+	@Benchmark
+	public String putStaticModel() throws StaticKnowledgeErrorException, ServerErrorException, URISyntaxException {
+		return api.putStaticModel(IRI, staticModel.getAbsolutePath());
+	}
+
+	@Benchmark
+	public String putStaticModelStreaming() throws StaticKnowledgeErrorException, ServerErrorException, URISyntaxException {
+		return api.putStaticModelStreaming(IRI, staticModel.getAbsolutePath());
+	}
+
+	@Benchmark
+	public UrlEncodedFormEntity encodeUpdateQuery() throws IOException {
+		List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
+		formparams.add(new BasicNameValuePair("action", "update"));
+		formparams.add(new BasicNameValuePair("queryBody", updateQuery));
+		UrlEncodedFormEntity entity = new UrlEncodedFormEntity(formparams, "UTF-8");
+		entity.writeTo(new NullOutputStream());
+		return entity;
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.info.InfoAdapters;
+import it.polimi.deib.csparql_rest_api.info.InfoIterator;
+import it.polimi.deib.csparql_rest_api.info.QueryInfo;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * Decoding of the {@code getQueriesInfo} response of an engine running
+ * {@code queries} queries. {@code reflection}, {@code tree} and
+ * {@code adapters} decode the same json string with reflective Gson, a
+ * {@link JsonParser} tree and the hand-written {@link InfoAdapters};
+ * {@code getQueries} and {@code iterateQueries} measure a whole call over
+ * loopback, buffering the response or decoding it while it is read.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InfoDecodingBenchmark {
+
+	private static final String QUERY = "REGISTER QUERY q%d AS SELECT ?s ?o FROM STREAM <http://ex.org/streams/social> [RANGE 10s STEP 1s] WHERE { ?s <http://ex.org/follows> ?o }";
+
+	@Param({"10", "1000", "10000"})
+	public int queries;
+
+	private final Gson gson = new Gson();
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private String json;
+
+	@Setup
+	public void setUp() throws IOException, ServerErrorException, QueryErrorException {
+		server = new FakeRspServer();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.start(), configuration);
+		for(int i = 0; i < queries; i++)
+			api.registerQuery("q" + i, String.format(QUERY, i));
+		json = api.getQueriesInfo();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+	}
+
+	@Benchmark
+	public QueryInfo[] reflection() {
+		return gson.fromJson(json, QueryInfo[].class);
+	}
+
+	@Benchmark
+	public JsonElement tree() {
+		return new JsonParser().parse(json);
+	}
+
+	@Benchmark
+	public List<QueryInfo> adapters() {
+		return InfoAdapters.readList(json, InfoAdapters.QUERY);
+	}
+
+	@Benchmark
+	public List<QueryInfo> getQueries() throws ServerErrorException, QueryErrorException {
+		return api.getQueries();
+	}
+
+	@Benchmark
+	public void iterateQueries(Blackhole blackhole) throws ServerErrorException, QueryErrorException {
+		InfoIterator<QueryInfo> iterator = api.iterateQueries();
+		while(iterator.hasNext())
+			blackhole.consume(iterator.next());
+	}
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Synthetic data shared by the benchmarks.
+ *
+ * @author Marco Balduini
+ *
+ */
+final class Models {
+
+	private static final String NS = "http://www.streamreasoning.org/ontologies/sr4ld2014-onto#";
+
+	private Models() {
+	}
+
+	/**
+	 * @param triples number of triples
+	 * @return model resembling the social stream of the C-SPARQL examples
+	 */
+	static Model socialModel(int triples) {
+		Model model = ModelFactory.createDefaultModel();
+		Property posts = model.createProperty(NS, "posts");
+		Property likes = model.createProperty(NS, "likes");
+		Property text = model.createProperty(NS, "text");
+		int i = 0;
+		while(model.size() < triples){
+			Resource user = model.createResource("http://ex.org/user/" + (i % 1000));
+			Resource post = model.createResource("http://ex.org/post/" + i);
+			user.addProperty(posts, post);
+			if(model.size() < triples)
+				post.addLiteral(text, "post number " + i + " about the città di Milano");
+			if(model.size() < triples)
+				model.createResource("http://ex.org/user/" + ((i * 7) % 1000)).addProperty(likes, post);
+			i++;
+		}
+		return model;
+	}
+
+	/**
+	 * @param size approximate length in characters
+	 * @return SPARQL update inserting literal data
+	 */
+	static String updateQuery(int size) {
+		StringBuilder sb = new StringBuilder("PREFIX : <" + NS + "> INSERT DATA { ");
+		int i = 0;
+		while(sb.length() < size)
+			sb.append("<http://ex.org/post/").append(i).append("> :text \"post & reply n. ").append(i++).append(" ? città\" . ");
+		return sb.append('}').toString();
+	}
+
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * Cost of reading the responses of the engine: the whole round trip of
+ * {@link RSP_services_csparql_API#getStreamsInfo()}, whose body is read into
+ * a string, and the Gson parsing that callers and the feed methods apply to
+ * the returned json.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseHandlingBenchmark {
+
+	@Param({"10", "1000"})
+	public int streams;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private String streamsInfo;
+	private final Gson gson = new Gson();
+	private final JsonParser parser = new JsonParser();
+
+	@Setup
+	public void setUp() throws IOException, ServerErrorException, StreamErrorException {
+		server = new FakeRspServer();
+		api = new RSP_services_csparql_API(server.start());
+		for(int i = 0 ; i < streams ; i++)
+			api.registerStream("http://ex.org/streams/s" + i);
+		streamsInfo = api.getStreamsInfo();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+	}
+
+	@Benchmark
+	public String getStreamsInfo() throws ServerErrorException, StreamErrorException {
+		return api.getStreamsInfo();
+	}
+
+	@Benchmark
+	public JsonElement parseStreamsInfo() {
+		return parser.parse(streamsInfo);
+	}
+
+	@Benchmark
+	public String parseStringResponse() {
+		return gson.fromJson("\"Stream http://ex.org/streams/s0 succesfully registered\"", String.class);
+	}
+
+}
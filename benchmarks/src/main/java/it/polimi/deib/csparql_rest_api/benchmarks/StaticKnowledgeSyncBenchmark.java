@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.benchmarks;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StaticKnowledgeErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.kb.ModelDelta;
+import it.polimi.deib.csparql_rest_api.kb.StaticKnowledgeSynchronizer;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+
+/**
+ * Update of a named model of the static knowledge that changes in 10
+ * triples, alternating between two versions of the model. {@code replace}
+ * removes and puts the whole model, {@code sync} sends the delta through a
+ * {@link StaticKnowledgeSynchronizer}.
+ *
+ * @author Marco Balduini
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticKnowledgeSyncBenchmark {
+
+	private static final String IRI = "http://ex.org/kb/social";
+
+	@Param({"1000", "10000", "100000"})
+	public int triples;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private StaticKnowledgeSynchronizer synchronizer;
+	private Model[] versions;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws IOException, ServerErrorException, StaticKnowledgeErrorException, QueryErrorException {
+		Model base = Models.socialModel(triples);
+		Model changed = ModelFactory.createDefaultModel().add(base);
+		Property tag = changed.createProperty("http://ex.org/tag");
+		for(int i = 0; i < 10; i++)
+			changed.createResource("http://ex.org/tagged/" + i).addProperty(tag, "changed");
+		versions = new Model[] {base, changed};
+
+		server = new FakeRspServer();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.start(), configuration);
+		synchronizer = new StaticKnowledgeSynchronizer(api);
+		synchronizer.sync(IRI, base);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		api.close();
+		server.close();
+	}
+
+	@Benchmark
+	public String replace() throws ServerErrorException, StaticKnowledgeErrorException, URISyntaxException {
+		api.removeStaticModel(IRI);
+		return api.putStaticModel(IRI, versions[next++ & 1]);
+	}
+
+	@Benchmark
+	public ModelDelta sync() throws ServerErrorException, StaticKnowledgeErrorException, QueryErrorException {
+		return synchronizer.sync(IRI, versions[next++ & 1]);
+	}
+
+}
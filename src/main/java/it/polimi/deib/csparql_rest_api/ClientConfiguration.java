@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Configuration of the HTTP transport used by {@link RSP_services_csparql_API}.
+ * <p>
+ * Instances are not thread-safe. Each client copies its configuration when it
+ * is created, so changing a configuration afterwards has no effect on the
+ * clients already created with it.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ClientConfiguration {
+
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
+	public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+	public static final long DEFAULT_DEADLINE = -1;
+	public static final long DEFAULT_KEEP_ALIVE = 30000;
+	public static final long DEFAULT_CONNECTION_TIME_TO_LIVE = -1;
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
+	public static final long DEFAULT_EVICTION_INTERVAL = 5000;
+	public static final int DEFAULT_ASYNC_IO_THREADS = 2;
+	public static final boolean DEFAULT_JMX_ENABLED = false;
+	public static final FeedFormat DEFAULT_FEED_FORMAT = FeedFormat.RDF_JSON;
+	public static final boolean DEFAULT_FEED_FORMAT_FALLBACK = true;
+	public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = -1;
+	public static final boolean DEFAULT_RESPONSE_COMPRESSION = true;
+	public static final long DEFAULT_INFO_CACHE_TTL = -1;
+	public static final long DEFAULT_HEDGE_DELAY = -1;
+
+	private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+	private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+	private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+	private long deadline = DEFAULT_DEADLINE;
+	private final Map<Operation, Integer> connectionTimeouts = new EnumMap<Operation, Integer>(Operation.class);
+	private final Map<Operation, Integer> socketTimeouts = new EnumMap<Operation, Integer>(Operation.class);
+	private final Map<Operation, Long> deadlines = new EnumMap<Operation, Long>(Operation.class);
+	private long keepAlive = DEFAULT_KEEP_ALIVE;
+	private long connectionTimeToLive = DEFAULT_CONNECTION_TIME_TO_LIVE;
+	private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+	private long evictionInterval = DEFAULT_EVICTION_INTERVAL;
+	private int asyncIoThreads = DEFAULT_ASYNC_IO_THREADS;
+	private boolean jmxEnabled = DEFAULT_JMX_ENABLED;
+	private FeedFormat feedFormat = DEFAULT_FEED_FORMAT;
+	private boolean feedFormatFallback = DEFAULT_FEED_FORMAT_FALLBACK;
+	private int requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+	private boolean responseCompression = DEFAULT_RESPONSE_COMPRESSION;
+	private long infoCacheTtl = DEFAULT_INFO_CACHE_TTL;
+	private long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+	public ClientConfiguration() {
+		super();
+	}
+
+	/**
+	 * Create a copy of a configuration
+	 * @param configuration configuration to copy
+	 */
+	public ClientConfiguration(ClientConfiguration configuration) {
+		super();
+		maxTotalConnections = configuration.maxTotalConnections;
+		maxConnectionsPerRoute = configuration.maxConnectionsPerRoute;
+		connectionTimeout = configuration.connectionTimeout;
+		socketTimeout = configuration.socketTimeout;
+		deadline = configuration.deadline;
+		connectionTimeouts.putAll(configuration.connectionTimeouts);
+		socketTimeouts.putAll(configuration.socketTimeouts);
+		deadlines.putAll(configuration.deadlines);
+		keepAlive = configuration.keepAlive;
+		connectionTimeToLive = configuration.connectionTimeToLive;
+		idleConnectionTimeout = configuration.idleConnectionTimeout;
+		evictionInterval = configuration.evictionInterval;
+		asyncIoThreads = configuration.asyncIoThreads;
+		jmxEnabled = configuration.jmxEnabled;
+		feedFormat = configuration.feedFormat;
+		feedFormatFallback = configuration.feedFormatFallback;
+		requestCompressionThreshold = configuration.requestCompressionThreshold;
+		responseCompression = configuration.responseCompression;
+		infoCacheTtl = configuration.infoCacheTtl;
+		hedgeDelay = configuration.hedgeDelay;
+	}
+
+	/**
+	 * @return maximum number of pooled connections
+	 */
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	/**
+	 * @param maxTotalConnections maximum number of pooled connections
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	/**
+	 * @return maximum number of pooled connections towards a single engine
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @param maxConnectionsPerRoute maximum number of pooled connections towards a single engine
+	 */
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @return connection timeout in milliseconds
+	 */
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * @param connectionTimeout connection timeout in milliseconds
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	/**
+	 * @param operation operation
+	 * @return connection timeout in milliseconds of the operation
+	 */
+	public int getConnectionTimeout(Operation operation) {
+		Integer timeout = connectionTimeouts.get(operation);
+		return timeout == null ? connectionTimeout : timeout;
+	}
+
+	/**
+	 * @param operation operation
+	 * @param connectionTimeout connection timeout in milliseconds of the operation, overriding
+	 * {@link #setConnectionTimeout(int)}. It also bounds the wait for a pooled connection.
+	 */
+	public void setConnectionTimeout(Operation operation, int connectionTimeout) {
+		connectionTimeouts.put(operation, connectionTimeout);
+	}
+
+	/**
+	 * @return maximum time in milliseconds between two packets of a response
+	 */
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	/**
+	 * @param socketTimeout maximum time in milliseconds between two packets of a response,
+	 * starting from the end of the request. 0 means no timeout.
+	 */
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	/**
+	 * @param operation operation
+	 * @return maximum time in milliseconds between two packets of a response of the operation
+	 */
+	public int getSocketTimeout(Operation operation) {
+		Integer timeout = socketTimeouts.get(operation);
+		return timeout == null ? socketTimeout : timeout;
+	}
+
+	/**
+	 * @param operation operation
+	 * @param socketTimeout maximum time in milliseconds between two packets of a response of the
+	 * operation, overriding {@link #setSocketTimeout(int)}. The asynchronous feeds share their
+	 * connections, so the value of {@link Operation#FEED_STREAM_ASYNC} is read when the first
+	 * asynchronous feed starts the transport.
+	 */
+	public void setSocketTimeout(Operation operation, int socketTimeout) {
+		socketTimeouts.put(operation, socketTimeout);
+	}
+
+	/**
+	 * @return maximum duration in milliseconds of a call, or a non positive value if calls have no deadline
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @param deadline maximum duration in milliseconds of a call, from the moment it is sent to the
+	 * moment its response has been read, including the wait for a pooled connection. A call still
+	 * running at its deadline is aborted. A non positive value disables the deadline.
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @param operation operation
+	 * @return maximum duration in milliseconds of a call of the operation, or a non positive value if it has no deadline
+	 */
+	public long getDeadline(Operation operation) {
+		Long operationDeadline = deadlines.get(operation);
+		return operationDeadline == null ? deadline : operationDeadline;
+	}
+
+	/**
+	 * @param operation operation
+	 * @param deadline maximum duration in milliseconds of a call of the operation, overriding
+	 * {@link #setDeadline(long)}
+	 */
+	public void setDeadline(Operation operation, long deadline) {
+		deadlines.put(operation, deadline);
+	}
+
+	/**
+	 * @return time in milliseconds an idle connection is kept alive when the server does not send a Keep-Alive header
+	 */
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @param keepAlive time in milliseconds an idle connection is kept alive when the server does not send
+	 * a Keep-Alive header. A negative value keeps connections alive indefinitely.
+	 */
+	public void setKeepAlive(long keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * @return maximum lifetime of a pooled connection in milliseconds
+	 */
+	public long getConnectionTimeToLive() {
+		return connectionTimeToLive;
+	}
+
+	/**
+	 * @param connectionTimeToLive maximum lifetime of a pooled connection in milliseconds, regardless of
+	 * keep-alive. A non positive value means no limit.
+	 */
+	public void setConnectionTimeToLive(long connectionTimeToLive) {
+		this.connectionTimeToLive = connectionTimeToLive;
+	}
+
+	/**
+	 * @return time in milliseconds after which an unused pooled connection is closed
+	 */
+	public long getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	/**
+	 * @param idleConnectionTimeout time in milliseconds after which an unused pooled connection is closed
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	/**
+	 * @return interval in milliseconds between two runs of the idle and expired connections evictor
+	 */
+	public long getEvictionInterval() {
+		return evictionInterval;
+	}
+
+	/**
+	 * @param evictionInterval interval in milliseconds between two runs of the idle and expired
+	 * connections evictor. A non positive value disables the evictor.
+	 */
+	public void setEvictionInterval(long evictionInterval) {
+		this.evictionInterval = evictionInterval;
+	}
+
+	/**
+	 * @return number of I/O dispatch threads of the asynchronous transport
+	 */
+	public int getAsyncIoThreads() {
+		return asyncIoThreads;
+	}
+
+	/**
+	 * @param asyncIoThreads number of I/O dispatch threads of the asynchronous transport
+	 */
+	public void setAsyncIoThreads(int asyncIoThreads) {
+		this.asyncIoThreads = asyncIoThreads;
+	}
+
+	/**
+	 * @return true if the client metrics are published as JMX MBeans
+	 */
+	public boolean isJmxEnabled() {
+		return jmxEnabled;
+	}
+
+	/**
+	 * @param jmxEnabled true to publish the client metrics as JMX MBeans. Disabled by default;
+	 * the metrics are always available through {@code RSP_services_csparql_API.getMetrics()}.
+	 */
+	public void setJmxEnabled(boolean jmxEnabled) {
+		this.jmxEnabled = jmxEnabled;
+	}
+
+	/**
+	 * @return serialization format of the models fed to the streams
+	 */
+	public FeedFormat getFeedFormat() {
+		return feedFormat;
+	}
+
+	/**
+	 * @param feedFormat serialization format of the models fed to the streams
+	 */
+	public void setFeedFormat(FeedFormat feedFormat) {
+		this.feedFormat = feedFormat;
+	}
+
+	/**
+	 * @return true if a feed rejected in a format other than RDF/JSON is retried in RDF/JSON
+	 */
+	public boolean isFeedFormatFallback() {
+		return feedFormatFallback;
+	}
+
+	/**
+	 * @param feedFormatFallback true to retry in RDF/JSON a feed whose format is rejected, i.e. answered
+	 * with {@code 415 Unsupported Media Type} or with {@code 400 Bad Request} reporting a parse error.
+	 * When the retry succeeds the client keeps using RDF/JSON for all the following feeds. Other
+	 * errors are reported as they are and leave the format unchanged.
+	 */
+	public void setFeedFormatFallback(boolean feedFormatFallback) {
+		this.feedFormatFallback = feedFormatFallback;
+	}
+
+	/**
+	 * @return minimum size in bytes of the request bodies sent gzip compressed, or a negative value if
+	 * request compression is disabled
+	 */
+	public int getRequestCompressionThreshold() {
+		return requestCompressionThreshold;
+	}
+
+	/**
+	 * @param requestCompressionThreshold minimum size in bytes of the request bodies sent gzip compressed,
+	 * with Content-Encoding set to gzip. Bodies whose size is not known in advance, like the models
+	 * serialized while they are sent, are always compressed. A negative value disables request
+	 * compression; the server must support gzip encoded requests to enable it.
+	 */
+	public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+		this.requestCompressionThreshold = requestCompressionThreshold;
+	}
+
+	/**
+	 * @return true if the blocking methods ask the server for gzip compressed responses
+	 */
+	public boolean isResponseCompression() {
+		return responseCompression;
+	}
+
+	/**
+	 * @param responseCompression true to ask the server for gzip compressed responses with an
+	 * Accept-Encoding header. Compressed responses are decompressed transparently in any case.
+	 */
+	public void setResponseCompression(boolean responseCompression) {
+		this.responseCompression = responseCompression;
+	}
+
+	/**
+	 * @return time in milliseconds the responses of the info methods are served from the client
+	 * cache, or a negative value if the cache is disabled
+	 */
+	public long getInfoCacheTtl() {
+		return infoCacheTtl;
+	}
+
+	/**
+	 * @param infoCacheTtl time in milliseconds the responses of {@code getStreamsInfo},
+	 * {@code getStreamInfo}, {@code getQueriesInfo}, {@code getQueryInfo},
+	 * {@code getObserversInformations} and {@code getObserverInformations} are served from the
+	 * client cache without contacting the server. Once expired, a response carrying an ETag is
+	 * revalidated with a conditional request. Any change made through the same client clears the
+	 * cache; changes made by other clients are seen at most this late. 0 revalidates on every call,
+	 * a negative value disables the cache.
+	 */
+	public void setInfoCacheTtl(long infoCacheTtl) {
+		this.infoCacheTtl = infoCacheTtl;
+	}
+
+	/**
+	 * @return delay in milliseconds after which an info request still unanswered is hedged, or a
+	 * negative value if hedging is disabled
+	 */
+	public long getHedgeDelay() {
+		return hedgeDelay;
+	}
+
+	/**
+	 * @param hedgeDelay delay in milliseconds after which a second, identical request is sent for an
+	 * info method still waiting for its response; the first response wins and the other request is
+	 * aborted. A delay close to the 95th percentile of the latency trims the tail at the cost of a
+	 * few percent more requests. Only the read-only info methods are hedged. A negative value
+	 * disables hedging.
+	 */
+	public void setHedgeDelay(long hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api;
+
+import org.apache.http.entity.ContentType;
+
+/**
+ * Serialization formats of the models fed to the streams.
+ * <p>
+ * RDF/JSON is understood by every rsp-services release. N-Triples is written
+ * line by line, without building any intermediate structure, and is the
+ * cheapest format to produce; Turtle is the most compact on the wire.
+ *
+ * @author Marco Balduini
+ *
+ */
+public enum FeedFormat {
+
+	RDF_JSON("RDF/JSON", "application/json"),
+	N_TRIPLES("N-TRIPLE", "application/n-triples"),
+	TURTLE("TURTLE", "text/turtle");
+
+	private final String lang;
+	private final String contentType;
+	private final ContentType entityContentType;
+
+	private FeedFormat(String lang, String contentType) {
+		this.lang = lang;
+		this.contentType = contentType;
+		this.entityContentType = ContentType.create(contentType);
+	}
+
+	/**
+	 * @return Jena name of the format
+	 */
+	public String getLang() {
+		return lang;
+	}
+
+	/**
+	 * @return media type sent in the Content-Type header
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return content type of the request entities, parsed once
+	 */
+	ContentType getEntityContentType() {
+		return entityContentType;
+	}
+
+}
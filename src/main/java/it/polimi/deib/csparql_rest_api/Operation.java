@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api;
+
+/**
+ * Operations exposed by {@link RSP_services_csparql_API}, used to label per-operation
+ * metrics and settings.
+ *
+ * @author Marco Balduini
+ *
+ */
+public enum Operation {
+
+	REGISTER_STREAM("registerStream"),
+	UNREGISTER_STREAM("unregisterStream"),
+	FEED_STREAM("feedStream"),
+	FEED_STREAM_ASYNC("feedStreamAsync"),
+	GET_STREAM_INFO("getStreamInfo"),
+	GET_STREAMS_INFO("getStreamsInfo"),
+	REGISTER_QUERY("registerQuery"),
+	UNREGISTER_QUERY("unregisterQuery"),
+	GET_QUERY_INFO("getQueryInfo"),
+	GET_QUERIES_INFO("getQueriesInfo"),
+	PAUSE_QUERY("pauseQuery"),
+	RESTART_QUERY("restartQuery"),
+	ADD_OBSERVER("addObserver"),
+	DELETE_OBSERVER("deleteObserver"),
+	GET_OBSERVER_INFO("getObserverInformations"),
+	GET_OBSERVERS_INFO("getObserversInformations"),
+	LAUNCH_UPDATE_QUERY("launchUpdateQuery"),
+	PUT_STATIC_MODEL("putStaticModel"),
+	REMOVE_STATIC_MODEL("removeStaticModel");
+
+	private final String methodName;
+
+	private Operation(String methodName) {
+		this.methodName = methodName;
+	}
+
+	/**
+	 * @return name of the client method performing the operation
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+}
@@ -25,18 +25,64 @@ import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
 import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
 import it.polimi.deib.csparql_rest_api.exception.StaticKnowledgeErrorException;
 import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
-
+import it.polimi.deib.csparql_rest_api.exception.TimeoutErrorException;
+import it.polimi.deib.csparql_rest_api.http.AsyncHttpTransport;
+import it.polimi.deib.csparql_rest_api.http.CountingEntity;
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+import it.polimi.deib.csparql_rest_api.http.GzipCompressingEntity;
+import it.polimi.deib.csparql_rest_api.http.ModelEntity;
+import it.polimi.deib.csparql_rest_api.http.ResponseCache;
+import it.polimi.deib.csparql_rest_api.http.ResponseReader;
+import it.polimi.deib.csparql_rest_api.http.StreamingFormEntity;
+import it.polimi.deib.csparql_rest_api.info.InfoAdapters;
+import it.polimi.deib.csparql_rest_api.info.InfoIterator;
+import it.polimi.deib.csparql_rest_api.info.ObserverInfo;
+import it.polimi.deib.csparql_rest_api.info.QueryInfo;
+import it.polimi.deib.csparql_rest_api.info.StreamInfo;
+import it.polimi.deib.csparql_rest_api.metrics.ClientMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-
-import org.apache.commons.io.IOUtils;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -44,47 +90,216 @@ import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 /**
+ * Client for the rsp-services REST interface of the C-SPARQL engine.
+ * <p>
+ * Instances are thread-safe: the only state shared between calls is the
+ * server address, the underlying {@link DefaultHttpClient} backed by a
+ * {@link PoolingClientConnectionManager} and the (thread-safe) {@link Gson}
+ * instance. Everything tied to a single request (URI, request entity, response,
+ * response entity) lives on the stack of the calling method, so a single client
+ * can and should be shared by all the threads talking to the same engine, each
+ * call leasing its own connection from the pool. Pool size, keep-alive and
+ * eviction of idle connections are set through {@link ClientConfiguration}.
+ * <p>
+ * The {@code feedStreamAsync} methods do not block the caller: they run on a
+ * non-blocking transport with a small fixed number of I/O threads, started on
+ * first use, and return a {@link Future} that completes with the server
+ * response or fails with the same exceptions thrown by the blocking methods.
+ * Call {@link #close()} to release the connections and the I/O threads.
+ * <p>
+ * Latency, errors and payload sizes of every operation are recorded in the
+ * {@link ClientMetrics} returned by {@link #getMetrics()} and, if enabled
+ * through {@link ClientConfiguration#setJmxEnabled(boolean)}, published as
+ * MXBeans in the {@code it.polimi.deib.csparql_rest_api} JMX domain.
  * 
  * @author Marco Balduini
  *
  */
-public class RSP_services_csparql_API {
+public class RSP_services_csparql_API implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RSP_services_csparql_API.class.getName());
+
+	private final String serverAddress;
+	private final ClientConfiguration configuration;
+
+	private final DefaultHttpClient client;
+	private final PoolingClientConnectionManager cm;
+
+	private final Gson gson;
+
+	private final ClientMetrics metrics;
+
+	/** Format of the fed models; falls back to RDF/JSON if the server rejects the configured one */
+	private volatile FeedFormat feedFormat;
 
-	private String serverAddress;
-	private URI uri;
+	/** Set once the server has rejected an N-Triples feed that it accepted in RDF/JSON */
+	private volatile boolean nTriplesRejected = false;
 
-	private DefaultHttpClient client;
-	private HttpResponse httpResponse;
-	private HttpEntity httpEntity;
-	private HttpParams httpParams;
+	/** Handles of the streams fed through this client, by stream name */
+	private final ConcurrentMap<String, StreamHandle> streamHandles = new ConcurrentHashMap<String, StreamHandle>();
 
-	private ArrayList<BasicNameValuePair> formparams;
-	private UrlEncodedFormEntity requestParamsEntity;
-	private PoolingClientConnectionManager cm;
+	/** Non-blocking transport for the asynchronous methods, started on first use */
+	private volatile AsyncHttpTransport asyncTransport;
 
-	private Logger logger = LoggerFactory.getLogger(RSP_services_csparql_API.class.getName());
-	private Gson gson;
+	/** Calls in flight, aborted by {@link #cancelAll()} */
+	private final Set<Call> calls = Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+
+	/** Aborts the calls that exceed their deadline, started on first use */
+	private volatile ScheduledExecutorService deadlineTimer;
+
+	private static final Set<String> RDF_XML_MEDIA_TYPES = new HashSet<String>(Arrays.asList("application/rdf+xml", "application/xml", "text/xml"));
+	/** Content types that do not tell the serialization, in which case the extension decides */
+	private static final Set<String> GENERIC_MEDIA_TYPES = new HashSet<String>(Arrays.asList("", "application/octet-stream", "text/plain", "content/unknown"));
+	/** Bodies of the 400 responses reporting a feed that the server could not parse */
+	private static final Pattern PARSE_ERROR = Pattern.compile("pars(e|ing)|syntax|lexer|riot", Pattern.CASE_INSENSITIVE);
+	private static final Pattern RDF_XML_PATH = Pattern.compile(".*\\.(rdf|rdfs|owl|xml)", Pattern.CASE_INSENSITIVE);
+
+	/** Returned by the blocking methods when the request cannot be created or sent */
+	private static final String CLIENT_ERROR = "Error";
+
+	/** Read-only operations, whose responses can be cached and whose requests can be hedged */
+	private static final Set<Operation> INFO_OPERATIONS = EnumSet.of(Operation.GET_STREAM_INFO, Operation.GET_STREAMS_INFO,
+			Operation.GET_QUERY_INFO, Operation.GET_QUERIES_INFO, Operation.GET_OBSERVER_INFO, Operation.GET_OBSERVERS_INFO);
+
+	/** Responses of the info operations, null if the cache is disabled */
+	private final ResponseCache infoCache;
+
+	/** Runs the attempts of hedged requests, started on first use */
+	private volatile ExecutorService hedgingExecutor;
+
+	/** Periodically closes idle and expired pooled connections */
+	private final ScheduledExecutorService connectionEvictor;
 
 	public RSP_services_csparql_API(String serverAddress) {
+		this(serverAddress, new ClientConfiguration());
+	}
+
+	/**
+	 * Create a client with custom connection pool, keep-alive and eviction settings
+	 * @param serverAddress address of the rsp-services server
+	 * @param configuration transport configuration, copied: changing it afterwards has no effect on the client
+	 */
+	public RSP_services_csparql_API(String serverAddress, ClientConfiguration configuration) {
 		super();
 		this.serverAddress = serverAddress;
-		cm = new PoolingClientConnectionManager();
+		this.configuration = configuration = new ClientConfiguration(configuration);
+		cm = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault(), configuration.getConnectionTimeToLive(), TimeUnit.MILLISECONDS);
+		cm.setMaxTotal(configuration.getMaxTotalConnections());
+		cm.setDefaultMaxPerRoute(configuration.getMaxConnectionsPerRoute());
 		client = new DefaultHttpClient(cm);
+		HttpConnectionParams.setConnectionTimeout(client.getParams(), configuration.getConnectionTimeout());
+		HttpConnectionParams.setSoTimeout(client.getParams(), configuration.getSocketTimeout());
+		final long keepAlive = configuration.getKeepAlive();
+		client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy(){
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long duration = super.getKeepAliveDuration(response, context);
+				return duration < 0 ? keepAlive : duration;
+			}
+		});
+		client.addResponseInterceptor(new ResponseContentEncoding());
+		if(configuration.isResponseCompression())
+			client.addRequestInterceptor(new RequestAcceptEncoding());
 		gson = new Gson();
+		feedFormat = configuration.getFeedFormat();
+		infoCache = configuration.getInfoCacheTtl() < 0 ? null : new ResponseCache(configuration.getInfoCacheTtl());
+
+		metrics = new ClientMetrics();
+		if(configuration.isJmxEnabled())
+			metrics.registerMBeans(serverAddress);
+
+		if(configuration.getEvictionInterval() > 0){
+			connectionEvictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("rsp-services-connection-evictor"));
+			connectionEvictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictConnections();
+				}
+			}, configuration.getEvictionInterval(), configuration.getEvictionInterval(), TimeUnit.MILLISECONDS);
+		} else {
+			connectionEvictor = null;
+		}
+	}
+
+	/**
+	 * Statistics of the connection pool used by the blocking methods
+	 * @return leased, available, pending and maximum number of connections
+	 */
+	public PoolStats getPoolStats(){
+		return cm.getTotalStats();
+	}
+
+	/**
+	 * Statistics of the connection pool used by the asynchronous methods
+	 * @return leased, available, pending and maximum number of connections, or null if no asynchronous call has been made yet
+	 */
+	public PoolStats getAsyncPoolStats(){
+		AsyncHttpTransport transport = asyncTransport;
+		return transport == null ? null : transport.getPoolStats();
+	}
+
+	/**
+	 * @return format currently used to serialize the fed models. It differs from the configured one
+	 * if the server rejected it and the client fell back to RDF/JSON.
+	 */
+	public FeedFormat getFeedFormat(){
+		return feedFormat;
+	}
+
+	/**
+	 * @return address of the rsp-services server
+	 */
+	public String getServerAddress(){
+		return serverAddress;
+	}
+
+	/**
+	 * Per-operation call counters, error counters, payload sizes and latency histograms
+	 * @return metrics of this client
+	 */
+	public ClientMetrics getMetrics(){
+		return metrics;
+	}
+
+	private void evictConnections(){
+		try{
+			cm.closeExpiredConnections();
+			cm.closeIdleConnections(configuration.getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+			AsyncHttpTransport transport = asyncTransport;
+			if(transport != null)
+				transport.closeIdleConnections(configuration.getIdleConnectionTimeout());
+		} catch (RuntimeException e) {
+			logger.error("error while evicting idle connections", e);
+		}
 	}
 
 
@@ -104,38 +319,35 @@ public class RSP_services_csparql_API {
 		try{
 
 			String encodedName = URLEncoder.encode(inputStreamName, "UTF-8");
-			uri = new URI(serverAddress + "/streams/" + encodedName);
+			URI uri = new URI(serverAddress + "/streams/" + encodedName);
 
 			method = new HttpPut(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			Response response = execute(Operation.REGISTER_STREAM, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new StreamErrorException("Error while registering stream " + inputStreamName + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.REGISTER_STREAM, new StreamErrorException("Error while registering stream " + inputStreamName + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.REGISTER_STREAM, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.REGISTER_STREAM, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.REGISTER_STREAM, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.REGISTER_STREAM, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -154,44 +366,78 @@ public class RSP_services_csparql_API {
 
 		try{
 			String encodedName = URLEncoder.encode(inputStreamName, "UTF-8");
-			uri = new URI(serverAddress + "/streams/" + encodedName);
+			URI uri = new URI(serverAddress + "/streams/" + encodedName);
 
 			method = new HttpDelete(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			Response response = execute(Operation.UNREGISTER_STREAM, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
+				streamHandles.remove(inputStreamName);
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new StreamErrorException("Error while unregistering stream " + inputStreamName + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.UNREGISTER_STREAM, new StreamErrorException("Error while unregistering stream " + inputStreamName + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.UNREGISTER_STREAM, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.UNREGISTER_STREAM, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.UNREGISTER_STREAM, e);
 			method.abort();
 		}  catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.UNREGISTER_STREAM, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
 	}
 
+	/**
+	 * Get the handle of the stream, holding its encoded URI and the headers of its
+	 * feed requests, so that feeding it through the handle does no string encoding
+	 * or URI parsing. Handles are created on first use and cached by the client
+	 * until the stream is unregistered; the same handle can be shared by any number
+	 * of threads. The stream does not need to be registered yet.
+	 * @param inputStreamName name of the stream
+	 * @return handle of the stream
+	 * @throws StreamErrorException if the name cannot be turned into the URI of the stream
+	 */
+	public StreamHandle getStreamHandle(String inputStreamName) throws StreamErrorException{
+		StreamHandle handle = streamHandles.get(inputStreamName);
+		if(handle == null){
+			try {
+				handle = new StreamHandle(this, inputStreamName, new URI(serverAddress + "/streams/" + URLEncoder.encode(inputStreamName, "UTF-8")));
+			} catch (UnsupportedEncodingException e) {
+				throw new StreamErrorException("Error while encoding name of stream " + inputStreamName, e);
+			} catch (URISyntaxException e) {
+				throw new StreamErrorException("Error while creating URI of stream " + inputStreamName, e);
+			}
+			StreamHandle existing = streamHandles.putIfAbsent(inputStreamName, handle);
+			if(existing != null)
+				handle = existing;
+		}
+		return handle;
+	}
+
+	private StreamHandle getStreamHandle(Operation operation, String inputStreamName){
+		try {
+			return getStreamHandle(inputStreamName);
+		} catch (StreamErrorException e) {
+			logger.error("error while creating URI", e);
+			recordError(operation, e);
+			return null;
+		}
+	}
+
 	/**
 	 * Put new data into specified RDF Stream
 	 * @param inputStreamName name of the stream
@@ -201,110 +447,361 @@ public class RSP_services_csparql_API {
 	 * @throws StreamErrorException 
 	 */
 	public String feedStream(String inputStreamName, String RDF_Data_Serialization) throws ServerErrorException, StreamErrorException{
-		HttpPost method = null;
-		String httpEntityContent;
+		StreamHandle stream = getStreamHandle(Operation.FEED_STREAM, inputStreamName);
+		return stream == null ? "Error" : feedStream(stream, RDF_Data_Serialization);
+	}
 
-		try{
-			String encodedName = URLEncoder.encode(inputStreamName, "UTF-8");
-			uri = new URI(serverAddress + "/streams/" + encodedName);
+	String feedStream(StreamHandle stream, String RDF_Data_Serialization) throws ServerErrorException, StreamErrorException{
+		try {
+			return feedStream(stream, new StringEntity(RDF_Data_Serialization));
+		} catch (UnsupportedEncodingException e) {
+			logger.error("error while encoding", e);
+			recordError(Operation.FEED_STREAM, e);
+			return "Error";
+		}
+	}
 
-			method = new HttpPost(uri);
+	/**
+	 * Put new data into specified RDF Stream. The model is serialized in the
+	 * {@link ClientConfiguration#getFeedFormat() configured format}.
+	 * @param inputStreamName name of the stream
+	 * @param model Jena Model containing data to put into stream
+	 * @return json response from server. 
+	 * @throws StreamErrorException 
+	 * @throws ServerErrorException 
+	 */
+	public String feedStream(String inputStreamName, Model model) throws StreamErrorException, ServerErrorException{
+		StreamHandle stream = getStreamHandle(Operation.FEED_STREAM, inputStreamName);
+		return stream == null ? "Error" : feedStream(stream, model);
+	}
 
-			method.setHeader("Cache-Control","no-cache");
+	String feedStream(StreamHandle stream, Model model) throws StreamErrorException, ServerErrorException{
+		FeedFormat format = feedFormat;
+		try {
+			return feedStream(stream, model, format);
+		} catch (StreamErrorException e) {
+			if(format == FeedFormat.RDF_JSON || !configuration.isFeedFormatFallback() || !isFormatRejected(e))
+				throw e;
+			logger.warn("Feed in {} rejected by {}, retrying in RDF/JSON", format, serverAddress);
+			String response = feedStream(stream, model, FeedFormat.RDF_JSON);
+			fallBackToRdfJson(format);
+			return response;
+		}
+	}
+
+	private String feedStream(StreamHandle stream, Model model, FeedFormat format) throws StreamErrorException, ServerErrorException{
+		if(logger.isDebugEnabled()){
+			StringWriter w = new StringWriter();
+			model.write(w, format.getLang());
+			logger.debug("Feeding stream with model:\n{}", w.toString());
+		}
+		return feedStream(stream, new ModelEntity(model, format.getLang(), format.getContentType()));
+	}
+
+	/**
+	 * Put the triples of the buffer into specified RDF Stream. They are sent as N-Triples
+	 * straight from the buffer, which can be cleared and reused as soon as the method returns.
+	 * If the server does not accept N-Triples and {@link ClientConfiguration#isFeedFormatFallback()}
+	 * is set, the triples are translated to RDF/JSON, which allocates a temporary model.
+	 * @param inputStreamName name of the stream
+	 * @param triples triples to put into stream
+	 * @return json response from server.
+	 * @throws StreamErrorException
+	 * @throws ServerErrorException
+	 */
+	public String feedStream(String inputStreamName, TripleBuffer triples) throws StreamErrorException, ServerErrorException{
+		StreamHandle stream = getStreamHandle(Operation.FEED_STREAM, inputStreamName);
+		return stream == null ? "Error" : feedStream(stream, triples);
+	}
 
-			method.setEntity(new StringEntity(RDF_Data_Serialization));
+	String feedStream(StreamHandle stream, TripleBuffer triples) throws StreamErrorException, ServerErrorException{
+		if(nTriplesRejected)
+			return feedStream(stream, triples.toSerializedModel().translate(FeedFormat.RDF_JSON));
+		try {
+			return feedStream(stream, new ByteArrayEntity(triples.data(), 0, triples.size(), FeedFormat.N_TRIPLES.getEntityContentType()));
+		} catch (StreamErrorException e) {
+			if(!configuration.isFeedFormatFallback() || !isFormatRejected(e))
+				throw e;
+			logger.warn("Feed in {} rejected by {}, retrying in RDF/JSON", FeedFormat.N_TRIPLES, serverAddress);
+			String response = feedStream(stream, triples.toSerializedModel().translate(FeedFormat.RDF_JSON));
+			logger.warn("{} does not accept {} feeds, translating triple buffers to RDF/JSON", serverAddress, FeedFormat.N_TRIPLES);
+			nTriplesRejected = true;
+			return response;
+		}
+	}
+
+	String feedStream(StreamHandle stream, SerializedModel serialization) throws StreamErrorException, ServerErrorException{
+		return feedStream(stream, new ByteArrayEntity(serialization.data(), 0, serialization.getLength(), serialization.getFormat().getEntityContentType()));
+	}
+
+	private String feedStream(StreamHandle stream, HttpEntity entity) throws StreamErrorException, ServerErrorException{
+		HttpPost method = stream.newRequest(entity);
+		String httpEntityContent;
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+		try{
+			Response response = execute(Operation.FEED_STREAM, method);
+			httpEntityContent = response.body;
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new StreamErrorException("Error while feeding stream " + inputStreamName + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.FEED_STREAM, new StreamErrorException("Error while feeding stream " + stream.getName() + ". ERROR: " + httpEntityContent, response.statusCode));
 			}
 
-		} catch (UnsupportedEncodingException e) {
-			logger.error("error while encoding", e);
-			method.abort();
-		} catch (URISyntaxException e) {
-			logger.error("error while creating URI", e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.FEED_STREAM, e);
 			method.abort();
-		} catch (IOException e) {
+		}  catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.FEED_STREAM, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
 	}
 
 	/**
-	 * Put new data into specified RDF Stream
+	 * Put new data into specified RDF Stream without blocking the calling thread
 	 * @param inputStreamName name of the stream
-	 * @param model Jena Model containing data to put into stream
-	 * @return json response from server. 
-	 * @throws StreamErrorException 
-	 * @throws ServerErrorException 
+	 * @param RDF_Data_Serialization RDF/Json serialization of data to put into stream
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
 	 */
-	public String feedStream(String inputStreamName, Model model) throws StreamErrorException, ServerErrorException{
-		HttpPost method = null;
-		String httpEntityContent;
+	public Future<String> feedStreamAsync(String inputStreamName, String RDF_Data_Serialization){
+		return feedStreamAsync(inputStreamName, RDF_Data_Serialization, null);
+	}
 
+	/**
+	 * Put new data into specified RDF Stream without blocking the calling thread
+	 * @param inputStreamName name of the stream
+	 * @param RDF_Data_Serialization RDF/Json serialization of data to put into stream
+	 * @param callback optional callback notified when the feed completes. It runs on an I/O dispatch thread and must not block.
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedStreamAsync(String inputStreamName, String RDF_Data_Serialization, FutureCallback<String> callback){
+		try {
+			return feedStreamAsync(getStreamHandle(inputStreamName), RDF_Data_Serialization, callback);
+		} catch (StreamErrorException e) {
+			return failedFeed(e, callback);
+		}
+	}
+
+	Future<String> feedStreamAsync(StreamHandle stream, String RDF_Data_Serialization, FutureCallback<String> callback){
+		BasicFuture<String> result = new BasicFuture<String>(callback);
 		try{
-			String encodedName = URLEncoder.encode(inputStreamName, "UTF-8");
-			uri = new URI(serverAddress + "/streams/" + encodedName);
+			executeFeedAsync(stream, stream.newRequest(new NStringEntity(RDF_Data_Serialization)), result);
+		} catch (UnsupportedEncodingException e) {
+			logger.error("error while encoding", e);
+			result.failed(recordError(Operation.FEED_STREAM_ASYNC, new StreamErrorException("Error while feeding stream " + stream.getName(), e)));
+		}
+		return result;
+	}
 
-			method = new HttpPost(uri);
+	/**
+	 * Put new data into specified RDF Stream without blocking the calling thread
+	 * @param inputStreamName name of the stream
+	 * @param model Jena Model containing data to put into stream
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedStreamAsync(String inputStreamName, Model model){
+		return feedStreamAsync(inputStreamName, model, null);
+	}
 
-			method.setHeader("Cache-Control","no-cache");
+	/**
+	 * Put new data into specified RDF Stream without blocking the calling thread
+	 * @param inputStreamName name of the stream
+	 * @param model Jena Model containing data to put into stream. The model is serialized in the configured feed format before this method returns.
+	 * @param callback optional callback notified when the feed completes. It runs on an I/O dispatch thread and must not block.
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedStreamAsync(String inputStreamName, Model model, FutureCallback<String> callback){
+		try {
+			return feedStreamAsync(getStreamHandle(inputStreamName), model, callback);
+		} catch (StreamErrorException e) {
+			return failedFeed(e, callback);
+		}
+	}
 
-			StringWriter w = new StringWriter();
+	Future<String> feedStreamAsync(StreamHandle stream, Model model, FutureCallback<String> callback){
+		return feedStreamAsync(stream, SerializedModel.serialize(model, feedFormat), callback);
+	}
+
+	/**
+	 * @param e error of a feed
+	 * @return true if the server refused the serialization format rather than the feed: the response is
+	 * {@code 415 Unsupported Media Type}, or {@code 400 Bad Request} reporting a parse error
+	 */
+	public static boolean isFormatRejected(StreamErrorException e){
+		if(e.getStatusCode() == 415)
+			return true;
+		if(e.getStatusCode() != 400 || e.getMessage() == null)
+			return false;
+		int body = e.getMessage().indexOf(". ERROR: ");
+		return PARSE_ERROR.matcher(body < 0 ? e.getMessage() : e.getMessage().substring(body)).find();
+	}
+
+	private void fallBackToRdfJson(FeedFormat rejected){
+		if(rejected == FeedFormat.N_TRIPLES)
+			nTriplesRejected = true;
+		if(feedFormat != FeedFormat.RDF_JSON){
+			logger.warn("{} does not accept {} feeds, switching to RDF/JSON", serverAddress, rejected);
+			feedFormat = FeedFormat.RDF_JSON;
+		}
+	}
+
+	/**
+	 * Put already serialized data into specified RDF Stream without blocking the calling thread.
+	 * The serialization is sent as is, so the same instance can be fed to many streams or engines. If the server
+	 * rejects its format, it is translated to RDF/JSON and sent again as described in
+	 * {@link ClientConfiguration#setFeedFormatFallback(boolean)}.
+	 * @param inputStreamName name of the stream
+	 * @param serialization serialized data to put into stream
+	 * @param callback optional callback notified when the feed completes. It runs on an I/O dispatch thread and must not block.
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedStreamAsync(String inputStreamName, SerializedModel serialization, FutureCallback<String> callback){
+		try {
+			return feedStreamAsync(getStreamHandle(inputStreamName), serialization, callback);
+		} catch (StreamErrorException e) {
+			return failedFeed(e, callback);
+		}
+	}
 
-			model.write(w,"RDF/JSON");
+	Future<String> feedStreamAsync(final StreamHandle stream, final SerializedModel serialization, FutureCallback<String> callback){
+		final FeedFormat format = serialization.getFormat();
+		if(format == FeedFormat.RDF_JSON || !configuration.isFeedFormatFallback())
+			return sendFeedAsync(stream, serialization, callback);
 
-			method.addHeader("content-type", "application/json");
-			String jsonModel = w.toString();
-			logger.debug("Feeding stream with model:\n{}", jsonModel);
-			method.setEntity(new StringEntity(jsonModel));
+		final BasicFuture<String> result = new BasicFuture<String>(callback);
+		sendFeedAsync(stream, serialization, new FutureCallback<String>() {
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+			@Override
+			public void completed(String response) {
+				result.completed(response);
+			}
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
-				return gson.fromJson(httpEntityContent, String.class);
-			} else {
-				throw new StreamErrorException("Error while feeding stream " + inputStreamName + ". ERROR: " + httpEntityContent);
+			@Override
+			public void failed(Exception ex) {
+				if(!(ex instanceof StreamErrorException) || !isFormatRejected((StreamErrorException) ex)){
+					result.failed(ex);
+					return;
+				}
+				logger.warn("Feed in {} rejected by {}, retrying in RDF/JSON", format, serverAddress);
+				sendFeedAsync(stream, serialization.translate(FeedFormat.RDF_JSON), new FutureCallback<String>() {
+
+					@Override
+					public void completed(String response) {
+						fallBackToRdfJson(format);
+						result.completed(response);
+					}
+
+					@Override
+					public void failed(Exception ex) {
+						result.failed(ex);
+					}
+
+					@Override
+					public void cancelled() {
+						result.cancel(true);
+					}
+				});
 			}
 
-		} catch (UnsupportedEncodingException e) {
-			logger.error("error while encoding", e);
-			method.abort();
-		} catch (URISyntaxException e) {
-			logger.error("error while creating URI", e);
-		} catch (ClientProtocolException e) {
-			logger.error("error while calling rest service", e);
-			method.abort();
-		}  catch (IOException e) {
-			method.abort();
-			throw new ServerErrorException("Unreachable Host");
+			@Override
+			public void cancelled() {
+				result.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	private Future<String> sendFeedAsync(StreamHandle stream, SerializedModel serialization, FutureCallback<String> callback){
+		BasicFuture<String> result = new BasicFuture<String>(callback);
+		HttpPost method = stream.newRequest(new NByteArrayEntity(serialization.data(), 0, serialization.getLength()));
+		method.addHeader("content-type", serialization.getContentType());
+		executeFeedAsync(stream, method, result);
+		return result;
+	}
+
+	private Future<String> failedFeed(StreamErrorException error, FutureCallback<String> callback){
+		logger.error("error while creating URI", error);
+		BasicFuture<String> result = new BasicFuture<String>(callback);
+		result.failed(recordError(Operation.FEED_STREAM_ASYNC, error));
+		return result;
+	}
+
+	private void executeFeedAsync(final StreamHandle stream, final HttpPost method, final BasicFuture<String> result){
+		AsyncHttpTransport transport;
+		try {
+			transport = getAsyncTransport();
+		} catch (IOException e) {
+			logger.error("error while starting the asynchronous transport", e);
+			result.failed(recordError(Operation.FEED_STREAM_ASYNC, new ServerErrorException("unable to start the asynchronous transport", e)));
+			return;
 		}
+		try {
+			method.setEntity(GzipCompressingEntity.compress(method.getEntity(), configuration.getRequestCompressionThreshold()));
+		} catch (IOException e) {
+			result.failed(recordError(Operation.FEED_STREAM_ASYNC, new StreamErrorException("Error while compressing feed of stream " + stream.getName(), e)));
+			return;
+		}
+		final Call call = new Call(Operation.FEED_STREAM_ASYNC, method, result);
+		call.start();
+		final long start = System.nanoTime();
+		call.setExchange(transport.execute(stream.getHost(), method, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse httpResponse) {
+				if(!call.done())
+					return;
+				logger.debug("HTTPResponse code for URI {} : {}",method.getURI().toString(),httpResponse.getStatusLine().getStatusCode());
+				try {
+					byte[] content = httpResponse.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(httpResponse.getEntity());
+					String httpEntityContent = new String(content, "UTF-8");
+					metrics.get(Operation.FEED_STREAM_ASYNC).exchange(System.nanoTime() - start, method.getEntity().getContentLength(), content.length);
+					if(httpResponse.getStatusLine().getStatusCode() == 200){
+						result.completed(gson.fromJson(httpEntityContent, String.class));
+					} else {
+						result.failed(recordError(Operation.FEED_STREAM_ASYNC, new StreamErrorException("Error while feeding stream " + stream.getName() + ". ERROR: " + httpEntityContent,
+								httpResponse.getStatusLine().getStatusCode())));
+					}
+				} catch (IOException e) {
+					result.failed(recordError(Operation.FEED_STREAM_ASYNC, new ServerErrorException("unreachable host", e)));
+				} catch (RuntimeException e) {
+					result.failed(recordError(Operation.FEED_STREAM_ASYNC, new StreamErrorException("Error while feeding stream " + stream.getName(), e)));
+				}
+			}
 
-		return "Error";
+			@Override
+			public void failed(Exception ex) {
+				if(!call.done())
+					return;
+				if(isTimeout(ex))
+					result.failed(recordError(Operation.FEED_STREAM_ASYNC, new TimeoutErrorException(Operation.FEED_STREAM_ASYNC.getMethodName() + " timed out", ex)));
+				else
+					result.failed(recordError(Operation.FEED_STREAM_ASYNC, new ServerErrorException("unreachable host", ex)));
+			}
+
+			@Override
+			public void cancelled() {
+				if(call.done())
+					result.cancel(true);
+			}
+		}));
+	}
+
+	private AsyncHttpTransport getAsyncTransport() throws IOException {
+		AsyncHttpTransport transport = asyncTransport;
+		if(transport == null){
+			synchronized (this) {
+				transport = asyncTransport;
+				if(transport == null){
+					transport = new AsyncHttpTransport(configuration.getAsyncIoThreads(), configuration.getMaxTotalConnections(), configuration.getMaxConnectionsPerRoute(),
+							configuration.getConnectionTimeout(Operation.FEED_STREAM_ASYNC), configuration.getSocketTimeout(Operation.FEED_STREAM_ASYNC));
+					asyncTransport = transport;
+				}
+			}
+		}
+		return transport;
 	}
 
 	/**
@@ -320,40 +817,34 @@ public class RSP_services_csparql_API {
 
 		try{
 			String encodedName = URLEncoder.encode(inputStreamName, "UTF-8");
-			uri = new URI(serverAddress + "/streams/" + encodedName);
+			URI uri = new URI(serverAddress + "/streams/" + encodedName);
 
 			method = new HttpGet(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+			Response response = execute(Operation.GET_STREAM_INFO, method);
+			httpEntityContent = response.body;
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return httpEntityContent;
 			} else {
-				throw new StreamErrorException("Error while getting information about stream " + inputStreamName + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.GET_STREAM_INFO, new StreamErrorException("Error while getting information about stream " + inputStreamName + ". ERROR: " + httpEntityContent));
 			}
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.GET_STREAM_INFO, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.GET_STREAM_INFO, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.GET_STREAM_INFO, e);
 			method.abort();
 		}  catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.GET_STREAM_INFO, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -370,45 +861,111 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(serverAddress + "/streams");
+			URI uri = new URI(serverAddress + "/streams");
 
 			method = new HttpGet(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+			Response response = execute(Operation.GET_STREAMS_INFO, method);
+			httpEntityContent = response.body;
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return httpEntityContent;
 			} else {
-				throw new StreamErrorException("Error while getting information about streams" + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.GET_STREAMS_INFO, new StreamErrorException("Error while getting information about streams" + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.GET_STREAMS_INFO, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.GET_STREAMS_INFO, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.GET_STREAMS_INFO, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.GET_STREAMS_INFO, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
 	}
 
+	/**
+	 * Get information about specific stream, decoded
+	 * @param inputStreamName name of the stream
+	 * @return stream informations
+	 * @throws ServerErrorException 
+	 * @throws StreamErrorException if the information cannot be read or decoded
+	 */
+	public StreamInfo getStream(String inputStreamName) throws ServerErrorException, StreamErrorException{
+		String info = getStreamInfo(inputStreamName);
+		if(CLIENT_ERROR.equals(info))
+			throw new StreamErrorException("Error while getting information about stream " + inputStreamName);
+		try {
+			return InfoAdapters.read(info, InfoAdapters.STREAM);
+		} catch (JsonParseException e) {
+			throw recordError(Operation.GET_STREAM_INFO, new StreamErrorException("Error while decoding information about stream " + inputStreamName, e));
+		}
+	}
+
+	/**
+	 * Get information about all the streams registered on the engine, decoded
+	 * @return streams informations
+	 * @throws ServerErrorException 
+	 * @throws StreamErrorException if the information cannot be read or decoded
+	 */
+	public List<StreamInfo> getStreams() throws ServerErrorException, StreamErrorException{
+		String info = getStreamsInfo();
+		if(CLIENT_ERROR.equals(info))
+			throw new StreamErrorException("Error while getting information about streams");
+		try {
+			return InfoAdapters.readList(info, InfoAdapters.STREAM);
+		} catch (JsonParseException e) {
+			throw recordError(Operation.GET_STREAMS_INFO, new StreamErrorException("Error while decoding information about streams", e));
+		}
+	}
+
+	/**
+	 * Iterate over the streams registered on the engine, decoding them while the response is read.
+	 * See {@link #iterateQueries()}.
+	 * @return iterator over the streams informations, to be closed if abandoned before the end
+	 * @throws ServerErrorException 
+	 * @throws StreamErrorException 
+	 */
+	public InfoIterator<StreamInfo> iterateStreams() throws ServerErrorException, StreamErrorException{
+		HttpGet method = null;
+
+		try{
+			URI uri = new URI(serverAddress + "/streams");
+
+			method = new HttpGet(uri);
+
+			method.setHeader("Cache-Control","no-cache");
+
+			InfoResponse response = open(Operation.GET_STREAMS_INFO, method);
+
+			if(response.getStatusCode() == 200){
+				return response.iterate(InfoAdapters.STREAM);
+			} else {
+				throw recordError(Operation.GET_STREAMS_INFO, new StreamErrorException("Error while getting information about streams" + ". ERROR: " + response.readError()));
+			}
+
+		} catch (URISyntaxException e) {
+			throw recordError(Operation.GET_STREAMS_INFO, new StreamErrorException("Error while creating URI", e));
+		} catch (ClientProtocolException e) {
+			method.abort();
+			throw recordError(Operation.GET_STREAMS_INFO, new StreamErrorException("Error while calling rest service", e));
+		} catch (IOException e) {
+			method.abort();
+			throw recordError(Operation.GET_STREAMS_INFO, new ServerErrorException("unreachable host"));
+		}
+	}
+
 
 	//Queries
 
@@ -428,7 +985,7 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(serverAddress + "/queries/" + queryName);
+			URI uri = new URI(serverAddress + "/queries/" + queryName);
 
 			method = new HttpPut(uri);
 
@@ -436,33 +993,29 @@ public class RSP_services_csparql_API {
 
 			method.setEntity(new StringEntity(queryBody));
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200 && httpEntityContent != null){
+			Response response = execute(Operation.REGISTER_QUERY, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200 && httpEntityContent != null){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new QueryErrorException("Error while registering query " + queryName + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.REGISTER_QUERY, new QueryErrorException("Error while registering query " + queryName + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.REGISTER_QUERY, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.REGISTER_QUERY, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.REGISTER_QUERY, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.REGISTER_QUERY, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -480,41 +1033,35 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(queryURI);
+			URI uri = new URI(queryURI);
 
 			method = new HttpDelete(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
+			Response response = execute(Operation.UNREGISTER_QUERY, method);
+			httpEntityContent = response.body;
 
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new QueryErrorException("Error while unregistering query " + queryURI + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.UNREGISTER_QUERY, new QueryErrorException("Error while unregistering query " + queryURI + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.UNREGISTER_QUERY, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.UNREGISTER_QUERY, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.UNREGISTER_QUERY, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.UNREGISTER_QUERY, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -532,41 +1079,35 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(queryURI);
+			URI uri = new URI(queryURI);
 
 			method = new HttpGet(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
+			Response response = execute(Operation.GET_QUERY_INFO, method);
+			httpEntityContent = response.body;
 
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return httpEntityContent;
 			} else {
-				throw new QueryErrorException("Error while getting information about query " + queryURI + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.GET_QUERY_INFO, new QueryErrorException("Error while getting information about query " + queryURI + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.GET_QUERY_INFO, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.GET_QUERY_INFO, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.GET_QUERY_INFO, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.GET_QUERY_INFO, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -583,41 +1124,35 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(serverAddress + "/queries");
+			URI uri = new URI(serverAddress + "/queries");
 
 			method = new HttpGet(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {}: {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
+			Response response = execute(Operation.GET_QUERIES_INFO, method);
+			httpEntityContent = response.body;
 
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return httpEntityContent;
 			} else {
-				throw new QueryErrorException("Error while getting information about queries" + ". ERROR: " + httpEntityContent);
+				throw recordError(Operation.GET_QUERIES_INFO, new QueryErrorException("Error while getting information about queries" + ". ERROR: " + httpEntityContent));
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.GET_QUERIES_INFO, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.GET_QUERIES_INFO, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.GET_QUERIES_INFO, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.GET_QUERIES_INFO, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -635,45 +1170,41 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(queryURI);
+			URI uri = new URI(queryURI);
 
 			method = new HttpPost(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			formparams = new ArrayList<BasicNameValuePair>();
+			List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
 			formparams.add(new BasicNameValuePair("action", "pause"));
-			requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
+			UrlEncodedFormEntity requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
 
 			method.setEntity(requestParamsEntity);
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			Response response = execute(Operation.PAUSE_QUERY, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new QueryErrorException("Error while pausing query " + queryURI + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.PAUSE_QUERY, new QueryErrorException("Error while pausing query " + queryURI + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.PAUSE_QUERY, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.PAUSE_QUERY, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.PAUSE_QUERY, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.PAUSE_QUERY, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -691,52 +1222,124 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(queryURI);
+			URI uri = new URI(queryURI);
 
 			method = new HttpPost(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			formparams = new ArrayList<BasicNameValuePair>();
+			List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
 			formparams.add(new BasicNameValuePair("action", "restart"));
-			requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
+			UrlEncodedFormEntity requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
 
 			method.setEntity(requestParamsEntity);
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+			Response response = execute(Operation.RESTART_QUERY, method);
+			httpEntityContent = response.body;
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new QueryErrorException("Error while restarting query " + queryURI + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.RESTART_QUERY, new QueryErrorException("Error while restarting query " + queryURI + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.RESTART_QUERY, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.RESTART_QUERY, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.RESTART_QUERY, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.RESTART_QUERY, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
 	}
 
 
+	/**
+	 * Method to get information about specified query, decoded
+	 * @param queryURI unique uri of the query
+	 * @return query informations
+	 * @throws ServerErrorException 
+	 * @throws QueryErrorException if the information cannot be read or decoded
+	 */
+	public QueryInfo getQuery(String queryURI) throws ServerErrorException, QueryErrorException{
+		String info = getQueryInfo(queryURI);
+		if(CLIENT_ERROR.equals(info))
+			throw new QueryErrorException("Error while getting information about query " + queryURI);
+		try {
+			return InfoAdapters.read(info, InfoAdapters.QUERY);
+		} catch (JsonParseException e) {
+			throw recordError(Operation.GET_QUERY_INFO, new QueryErrorException("Error while decoding information about query " + queryURI, e));
+		}
+	}
+
+	/**
+	 * Method to get information about queries, decoded
+	 * @return queries informations
+	 * @throws ServerErrorException 
+	 * @throws QueryErrorException if the information cannot be read or decoded
+	 */
+	public List<QueryInfo> getQueries() throws ServerErrorException, QueryErrorException{
+		String info = getQueriesInfo();
+		if(CLIENT_ERROR.equals(info))
+			throw new QueryErrorException("Error while getting information about queries");
+		try {
+			return InfoAdapters.readList(info, InfoAdapters.QUERY);
+		} catch (JsonParseException e) {
+			throw recordError(Operation.GET_QUERIES_INFO, new QueryErrorException("Error while decoding information about queries", e));
+		}
+	}
+
+	/**
+	 * Method to iterate over the queries registered on the engine, decoding each of them while
+	 * the response is read, so that the response is never held in memory as a whole.
+	 * <p>
+	 * The connection stays leased until the iterator reaches the end or is closed; closing it
+	 * before the end aborts the response. The deadline of the operation covers the whole
+	 * iteration. The response is neither cached nor hedged. Failures while iterating are
+	 * thrown as {@link JsonParseException}, whose cause is the {@link ServerErrorException}
+	 * or {@link TimeoutErrorException} that ended the call, if any.
+	 * @return iterator over the queries informations, to be closed if abandoned before the end
+	 * @throws ServerErrorException 
+	 * @throws QueryErrorException 
+	 */
+	public InfoIterator<QueryInfo> iterateQueries() throws ServerErrorException, QueryErrorException{
+		HttpGet method = null;
+
+		try{
+			URI uri = new URI(serverAddress + "/queries");
+
+			method = new HttpGet(uri);
+
+			method.setHeader("Cache-Control","no-cache");
+
+			InfoResponse response = open(Operation.GET_QUERIES_INFO, method);
+
+			if(response.getStatusCode() == 200){
+				return response.iterate(InfoAdapters.QUERY);
+			} else {
+				throw recordError(Operation.GET_QUERIES_INFO, new QueryErrorException("Error while getting information about queries" + ". ERROR: " + response.readError()));
+			}
+
+		} catch (URISyntaxException e) {
+			throw recordError(Operation.GET_QUERIES_INFO, new QueryErrorException("Error while creating URI", e));
+		} catch (ClientProtocolException e) {
+			method.abort();
+			throw recordError(Operation.GET_QUERIES_INFO, new QueryErrorException("Error while calling rest service", e));
+		} catch (IOException e) {
+			method.abort();
+			throw recordError(Operation.GET_QUERIES_INFO, new ServerErrorException("unreachable host"));
+		}
+	}
+
 	//Observer
 
 	/**
@@ -753,7 +1356,7 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(queryURI);
+			URI uri = new URI(queryURI);
 
 			method = new HttpPost(uri);
 
@@ -762,34 +1365,29 @@ public class RSP_services_csparql_API {
 			method.addHeader("content-type", "text/plain");
 			method.setEntity(new StringEntity(callbackUrl));
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+			Response response = execute(Operation.ADD_OBSERVER, method);
+			httpEntityContent = response.body;
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new ObserverErrorException("Error while adding observer to query " + queryURI + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.ADD_OBSERVER, new ObserverErrorException("Error while adding observer to query " + queryURI + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.ADD_OBSERVER, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.ADD_OBSERVER, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.ADD_OBSERVER, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.ADD_OBSERVER, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -809,40 +1407,35 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(observerURI);
+			URI uri = new URI(observerURI);
 
 			method = new HttpDelete(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI " + uri.toString() + " : " + httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
+			Response response = execute(Operation.DELETE_OBSERVER, method);
+			httpEntityContent = response.body;
 
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new ObserverErrorException("Error while deleting observer " + observerURI + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.DELETE_OBSERVER, new ObserverErrorException("Error while deleting observer " + observerURI + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.DELETE_OBSERVER, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.DELETE_OBSERVER, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.DELETE_OBSERVER, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.DELETE_OBSERVER, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -862,40 +1455,35 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(observerURI);
+			URI uri = new URI(observerURI);
 
 			method = new HttpGet(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {}: {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
+			Response response = execute(Operation.GET_OBSERVER_INFO, method);
+			httpEntityContent = response.body;
 
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new ObserverErrorException("Error while getting information about observer " + observerURI + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.GET_OBSERVER_INFO, new ObserverErrorException("Error while getting information about observer " + observerURI + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.GET_OBSERVER_INFO, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.GET_OBSERVER_INFO, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.GET_OBSERVER_INFO, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.GET_OBSERVER_INFO, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
@@ -915,46 +1503,114 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(queryURI+"/observers");
+			URI uri = new URI(queryURI+"/observers");
 
 			method = new HttpGet(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {}: {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
+			Response response = execute(Operation.GET_OBSERVERS_INFO, method);
+			httpEntityContent = response.body;
 
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			if(response.statusCode == 200){
 				return httpEntityContent;
 			} else {
-				throw new ObserverErrorException("Error while getting information about observers attached to query " + queryURI + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.GET_OBSERVERS_INFO, new ObserverErrorException("Error while getting information about observers attached to query " + queryURI + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.GET_OBSERVERS_INFO, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.GET_OBSERVERS_INFO, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.GET_OBSERVERS_INFO, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.GET_OBSERVERS_INFO, new ServerErrorException("unreachable host"));
 		}
 
 		return "Error";
 
 	}
 
+	/**
+	 * Method to get informations about specific observer, decoded
+	 * @param observerURI unique uri of the observer
+	 * @return observer informations
+	 * @throws ServerErrorException 
+	 * @throws ObserverErrorException if the information cannot be read or decoded
+	 */
+	public ObserverInfo getObserver(String observerURI) throws ServerErrorException, ObserverErrorException{
+		String info = getObserverInformations(observerURI);
+		if(CLIENT_ERROR.equals(info))
+			throw new ObserverErrorException("Error while getting information about observer " + observerURI);
+		try {
+			return InfoAdapters.read(info, InfoAdapters.OBSERVER);
+		} catch (JsonParseException e) {
+			throw recordError(Operation.GET_OBSERVER_INFO, new ObserverErrorException("Error while decoding information about observer " + observerURI, e));
+		}
+	}
+
+	/**
+	 * Method to get informations about the observers of a query, decoded
+	 * @param queryURI unique uri of the query
+	 * @return observers informations
+	 * @throws ServerErrorException 
+	 * @throws ObserverErrorException if the information cannot be read or decoded
+	 */
+	public List<ObserverInfo> getObservers(String queryURI) throws ServerErrorException, ObserverErrorException{
+		String info = getObserversInformations(queryURI);
+		if(CLIENT_ERROR.equals(info))
+			throw new ObserverErrorException("Error while getting information about observers attached to query " + queryURI);
+		try {
+			return InfoAdapters.readList(info, InfoAdapters.OBSERVER);
+		} catch (JsonParseException e) {
+			throw recordError(Operation.GET_OBSERVERS_INFO, new ObserverErrorException("Error while decoding information about observers attached to query " + queryURI, e));
+		}
+	}
+
+	/**
+	 * Method to iterate over the observers of a query, decoding them while the response is read.
+	 * See {@link #iterateQueries()}.
+	 * @param queryURI unique uri of the query
+	 * @return iterator over the observers informations, to be closed if abandoned before the end
+	 * @throws ServerErrorException 
+	 * @throws ObserverErrorException 
+	 */
+	public InfoIterator<ObserverInfo> iterateObservers(String queryURI) throws ServerErrorException, ObserverErrorException{
+		HttpGet method = null;
+
+		try{
+			URI uri = new URI(queryURI+"/observers");
+
+			method = new HttpGet(uri);
+
+			method.setHeader("Cache-Control","no-cache");
+
+			InfoResponse response = open(Operation.GET_OBSERVERS_INFO, method);
+
+			if(response.getStatusCode() == 200){
+				return response.iterate(InfoAdapters.OBSERVER);
+			} else {
+				throw recordError(Operation.GET_OBSERVERS_INFO, new ObserverErrorException("Error while getting information about observers attached to query " + queryURI + ". ERROR: " + response.readError()));
+			}
+
+		} catch (URISyntaxException e) {
+			throw recordError(Operation.GET_OBSERVERS_INFO, new ObserverErrorException("Error while creating URI", e));
+		} catch (ClientProtocolException e) {
+			method.abort();
+			throw recordError(Operation.GET_OBSERVERS_INFO, new ObserverErrorException("Error while calling rest service", e));
+		} catch (IOException e) {
+			method.abort();
+			throw recordError(Operation.GET_OBSERVERS_INFO, new ServerErrorException("unreachable host"));
+		}
+	}
+
 	//Static Knowledge
 
 	/**
@@ -972,46 +1628,42 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(serverAddress + "/kb");
+			URI uri = new URI(serverAddress + "/kb");
 
 			method = new HttpPost(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			formparams = new ArrayList<BasicNameValuePair>();
+			List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
 			formparams.add(new BasicNameValuePair("action", "update"));
 			formparams.add(new BasicNameValuePair("queryBody", queryBody));
-			requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
+			UrlEncodedFormEntity requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
 
 			method.setEntity(requestParamsEntity);
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			Response response = execute(Operation.LAUNCH_UPDATE_QUERY, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new QueryErrorException("Error while launching update query" + ". ERROR: " + httpEntityContent); 
+				throw recordError(Operation.LAUNCH_UPDATE_QUERY, new QueryErrorException("Error while launching update query" + ". ERROR: " + httpEntityContent)); 
 			}
 
 		} catch (UnsupportedEncodingException e) {
 			logger.error("error while encoding", e);
+			recordError(Operation.LAUNCH_UPDATE_QUERY, e);
 			method.abort();
 		} catch (URISyntaxException e) {
 			logger.error("error while creating URI", e);
+			recordError(Operation.LAUNCH_UPDATE_QUERY, e);
 		} catch (ClientProtocolException e) {
 			logger.error("error while calling rest service", e);
+			recordError(Operation.LAUNCH_UPDATE_QUERY, e);
 			method.abort();
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.LAUNCH_UPDATE_QUERY, new ServerErrorException("unreachable host"));
 		} 
 
 		return "Error";
@@ -1029,55 +1681,126 @@ public class RSP_services_csparql_API {
 	 * @throws QueryErrorException
 	 */
 	public String putStaticModel(String iri, String location) throws StaticKnowledgeErrorException, ServerErrorException, URISyntaxException {
+		return putStaticModel(iri, ModelFactory.createDefaultModel().read(normalizeLocation(location)));
+	}
+
+	/**
+	 * Method to put new named model to the internal static knowledge
+	 * @param iri IRI of new named model
+	 * @param model data of the model
+	 * @return json representation of server response
+	 * @throws StaticKnowledgeErrorException 
+	 * @throws ServerErrorException
+	 * @throws URISyntaxException 
+	 */
+	public String putStaticModel(String iri, Model model) throws StaticKnowledgeErrorException, ServerErrorException, URISyntaxException {
 
 		HttpPost method = null;
 		String httpEntityContent;
 
 		try{
-			uri = new URI(serverAddress + "/kb");
+			URI uri = new URI(serverAddress + "/kb");
 
 			method = new HttpPost(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 			
-			if(System.getProperty("os.name").contains("Windows")){
-				if(!location.startsWith("http://") && !location.startsWith("file:/"))
-					location = "file:/" + location;
-			}else{
-				if(!location.startsWith("http://") && !location.startsWith("file://"))
-					location = "file://" + location;
-			}
-			
 			StringWriter sw = new StringWriter();
-			ModelFactory.createDefaultModel().read(location).write(sw);
+			model.write(sw);
 			
-			formparams = new ArrayList<BasicNameValuePair>();
+			List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
 			formparams.add(new BasicNameValuePair("action", "put"));
 			formparams.add(new BasicNameValuePair("iri", iri));
 			formparams.add(new BasicNameValuePair("serialization", sw.toString()));
-			requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
+			UrlEncodedFormEntity requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
 
 			method.setEntity(requestParamsEntity);
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			Response response = execute(Operation.PUT_STATIC_MODEL, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
+				return gson.fromJson(httpEntityContent, String.class);
+			} else {
+				throw recordError(Operation.PUT_STATIC_MODEL, new StaticKnowledgeErrorException("Eception occurred while putting new model into the internal static dataset")); 
+			}
+
+		} catch (IOException e) {
+			method.abort();
+			throw recordError(Operation.PUT_STATIC_MODEL, new ServerErrorException("unreachable host"));
+		}
+	}
+	
+	/**
+	 * Method to put new named model to the internal static knowledge, streaming the data
+	 * from the location to the server without loading it in memory. Unlike
+	 * {@link #putStaticModel(String, String)} the data is not parsed on the client, so it
+	 * must already be in the serialization expected by the server (RDF/XML). Memory usage
+	 * does not depend on the size of the data, so it can be used for datasets larger than the heap.
+	 * <p>
+	 * The location must be recognizable as RDF/XML: a remote location answering with an
+	 * RDF/XML or XML content type, or a location whose path ends with {@code .rdf},
+	 * {@code .rdfs}, {@code .owl} or {@code .xml}. Other serializations, such as Turtle or
+	 * N-Triples, are rejected before anything is sent; use {@link #putStaticModel(String, String)},
+	 * which converts them.
+	 * @param iri IRI of new named model
+	 * @param location location (local or remote) of the RDF/XML data
+	 * @return json representation of server response
+	 * @throws StaticKnowledgeErrorException if the location cannot be read or is not RDF/XML
+	 * @throws ServerErrorException
+	 * @throws URISyntaxException 
+	 */
+	public String putStaticModelStreaming(String iri, String location) throws StaticKnowledgeErrorException, ServerErrorException, URISyntaxException {
+
+		HttpPost method = null;
+		String httpEntityContent;
+
+		URI uri = new URI(serverAddress + "/kb");
+
+		InputStream data;
+		try {
+			URL url = new URL(normalizeLocation(location));
+			URLConnection connection = url.openConnection();
+			data = connection.getInputStream();
+			String contentType = connection instanceof HttpURLConnection ? connection.getContentType() : null;
+			if(!isRdfXml(url.getPath(), contentType)){
+				data.close();
+				throw recordError(Operation.PUT_STATIC_MODEL, new StaticKnowledgeErrorException("The data at " + location + " is not RDF/XML"
+						+ (contentType == null ? "" : " (" + contentType + ")") + ", use putStaticModel to convert it"));
+			}
+		} catch (IOException e) {
+			throw recordError(Operation.PUT_STATIC_MODEL, new StaticKnowledgeErrorException("Unable to read data from " + location, e));
+		}
+
+		try{
+			method = new HttpPost(uri);
+
+			method.setHeader("Cache-Control","no-cache");
+
+			List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
+			formparams.add(new BasicNameValuePair("action", "put"));
+			formparams.add(new BasicNameValuePair("iri", iri));
+
+			method.setEntity(new StreamingFormEntity(formparams, "serialization", data));
+
+			Response response = execute(Operation.PUT_STATIC_MODEL, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new StaticKnowledgeErrorException("Eception occurred while putting new model into the internal static dataset"); 
+				throw recordError(Operation.PUT_STATIC_MODEL, new StaticKnowledgeErrorException("Eception occurred while putting new model into the internal static dataset")); 
 			}
 
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.PUT_STATIC_MODEL, new ServerErrorException("unreachable host"));
+		} finally {
+			try {
+				data.close();
+			} catch (IOException e) {
+				logger.debug("error while closing {}", location);
+			}
 		}
 	}
 	
@@ -1095,49 +1818,493 @@ public class RSP_services_csparql_API {
 		String httpEntityContent;
 
 		try{
-			uri = new URI(serverAddress + "/kb");
+			URI uri = new URI(serverAddress + "/kb");
 
 			method = new HttpPost(uri);
 
 			method.setHeader("Cache-Control","no-cache");
 
-			formparams = new ArrayList<BasicNameValuePair>();
+			List<BasicNameValuePair> formparams = new ArrayList<BasicNameValuePair>();
 			formparams.add(new BasicNameValuePair("action", "delete"));
 			formparams.add(new BasicNameValuePair("iri", iri));
-			requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
+			UrlEncodedFormEntity requestParamsEntity = new UrlEncodedFormEntity(formparams, "UTF-8");
 
 			method.setEntity(requestParamsEntity);
 
-			httpResponse = client.execute(method);
-			httpEntity = httpResponse.getEntity();
-			logger.debug("HTTPResponse code for URI {} : {}",uri.toString(),httpResponse.getStatusLine().getStatusCode());
-
-			httpParams = client.getParams();
-			HttpConnectionParams.setConnectionTimeout(httpParams, 30000);
-			InputStream istream = httpEntity.getContent();
-			httpEntityContent = streamToString(istream);
-			if(istream.available() != 0)
-				EntityUtils.consume(httpEntity);
-			if(httpResponse.getStatusLine().getStatusCode() == 200){
+			Response response = execute(Operation.REMOVE_STATIC_MODEL, method);
+			httpEntityContent = response.body;
+
+			if(response.statusCode == 200){
 				return gson.fromJson(httpEntityContent, String.class);
 			} else {
-				throw new StaticKnowledgeErrorException("Eception occurred while deleting model from the internal static dataset"); 
+				throw recordError(Operation.REMOVE_STATIC_MODEL, new StaticKnowledgeErrorException("Eception occurred while deleting model from the internal static dataset")); 
 			}
 
 		} catch (IOException e) {
 			method.abort();
-			throw new ServerErrorException("unreachable host");
+			throw recordError(Operation.REMOVE_STATIC_MODEL, new ServerErrorException("unreachable host"));
 		} 
 	}
 
-	private String streamToString(InputStream is){
+	/**
+	 * Release the pooled connections and stop the asynchronous transport, if started.
+	 * The client cannot be used after this call.
+	 */
+	@Override
+	public void close() {
+		if(connectionEvictor != null)
+			connectionEvictor.shutdownNow();
+		ScheduledExecutorService timer = deadlineTimer;
+		if(timer != null)
+			timer.shutdownNow();
+		ExecutorService executor = hedgingExecutor;
+		if(executor != null)
+			executor.shutdownNow();
+		AsyncHttpTransport transport = asyncTransport;
+		if(transport != null){
+			try {
+				transport.shutdown();
+			} catch (IOException e) {
+				logger.error("error while stopping the asynchronous transport", e);
+			}
+		}
+		client.getConnectionManager().shutdown();
+		metrics.unregisterMBeans();
+	}
+
+	/**
+	 * Drop the cached responses of the info methods, so the next calls read the current state of
+	 * the server. Changes made through this client clear the cache by themselves.
+	 */
+	public void invalidateInfoCache(){
+		if(infoCache != null)
+			infoCache.clear();
+	}
+
+	/**
+	 * Execute the request, answering the info operations from the cache and hedging them
+	 * when configured. Any other operation, apart from the feeds, clears the cache.
+	 */
+	private Response execute(Operation operation, HttpUriRequest method) throws IOException, ServerErrorException {
+		if(!INFO_OPERATIONS.contains(operation)){
+			try {
+				return send(operation, method);
+			} finally {
+				if(infoCache != null && operation != Operation.FEED_STREAM)
+					infoCache.clear();
+			}
+		}
+		if(infoCache == null)
+			return sendHedged(operation, method);
+
+		String uri = method.getURI().toString();
+		ResponseCache.Entry cached = infoCache.get(uri);
+		if(cached != null && cached.isFresh()){
+			metrics.get(operation).cacheHit();
+			return new Response(200, cached.getBody(), cached.getETag());
+		}
+		if(cached != null && cached.getETag() != null)
+			method.setHeader("If-None-Match", cached.getETag());
+		long generation = infoCache.getGeneration();
+		Response response = sendHedged(operation, method);
+		if(response.statusCode == 304 && cached != null){
+			metrics.get(operation).notModified();
+			infoCache.revalidated(uri, cached);
+			return new Response(200, cached.getBody(), cached.getETag());
+		}
+		if(response.statusCode == 200)
+			infoCache.put(uri, response.body, response.etag, generation);
+		return response;
+	}
+
+	/**
+	 * Send the request and, if no response arrives within the hedge delay, an identical one;
+	 * the first response wins and the other request is aborted. A failure of the first request
+	 * before the hedge delay is not retried.
+	 */
+	private Response sendHedged(Operation operation, HttpUriRequest method) throws IOException, ServerErrorException {
+		long hedgeDelay = configuration.getHedgeDelay();
+		if(hedgeDelay < 0)
+			return send(operation, method);
+
+		CompletionService<Response> attempts = new ExecutorCompletionService<Response>(getHedgingExecutor());
+		HttpGet hedge = new HttpGet(method.getURI());
+		hedge.setHeaders(method.getAllHeaders());
+		attempts.submit(attempt(operation, method));
+		boolean hedged = false;
+		try {
+			Future<Response> first = attempts.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+			if(first == null){
+				metrics.get(operation).hedged();
+				attempts.submit(attempt(operation, hedge));
+				hedged = true;
+				first = attempts.take();
+			}
+			try {
+				return first.get();
+			} catch (ExecutionException e) {
+				if(!hedged)
+					throw e;
+				logger.debug("hedged {} failed, waiting for the other request", operation.getMethodName());
+				return attempts.take().get();
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof ServerErrorException)
+				throw (ServerErrorException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for " + operation.getMethodName());
+		} finally {
+			// releases the connection of the request still in flight, a no-op for the completed ones
+			method.abort();
+			hedge.abort();
+		}
+	}
+
+	private Callable<Response> attempt(final Operation operation, final HttpUriRequest method) {
+		return new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return send(operation, method);
+			}
+		};
+	}
+
+	private ExecutorService getHedgingExecutor(){
+		ExecutorService executor = hedgingExecutor;
+		if(executor == null){
+			synchronized (this) {
+				executor = hedgingExecutor;
+				if(executor == null){
+					executor = Executors.newCachedThreadPool(new DaemonThreadFactory("rsp-services-hedging"));
+					hedgingExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Execute the request with the timeouts and deadline of the operation, read the whole
+	 * response body and record the exchange in the metrics of the operation. The connection
+	 * is released before returning, also when the body cannot be read.
+	 * @throws TimeoutErrorException if the call timed out or exceeded its deadline
+	 * @throws ServerErrorException if the call was cancelled
+	 */
+	private Response send(Operation operation, HttpUriRequest method) throws IOException, ServerErrorException {
+		CountingEntity requestEntity = null;
+		if(method instanceof HttpEntityEnclosingRequest){
+			HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) method;
+			if(request.getEntity() != null){
+				requestEntity = new CountingEntity(GzipCompressingEntity.compress(request.getEntity(), configuration.getRequestCompressionThreshold()));
+				request.setEntity(requestEntity);
+			}
+		}
+
+		HttpConnectionParams.setConnectionTimeout(method.getParams(), configuration.getConnectionTimeout(operation));
+		HttpConnectionParams.setSoTimeout(method.getParams(), configuration.getSocketTimeout(operation));
+
+		Call call = new Call(operation, method, null);
+		call.start();
+		long start = System.nanoTime();
 		try {
-			StringWriter writer = new StringWriter();
-			IOUtils.copy(is, writer, "UTF-8");
-			return writer.toString();
+			HttpResponse httpResponse = client.execute(method);
+			int statusCode = httpResponse.getStatusLine().getStatusCode();
+			logger.debug("HTTPResponse code for URI {} : {}",method.getURI().toString(),statusCode);
+
+			ResponseReader.Body body = ResponseReader.read(method, httpResponse);
+
+			metrics.get(operation).exchange(System.nanoTime() - start, requestEntity == null ? 0 : requestEntity.getWrittenBytes(), body.getLength());
+			Header etag = httpResponse.getFirstHeader("ETag");
+			return new Response(statusCode, body.getContent(), etag == null ? null : etag.getValue());
 		} catch (IOException e) {
-			//			logger.error("IO Exception",e);
-			return "";
+			throw failure(operation, call, e);
+		} finally {
+			call.done();
+		}
+	}
+
+	/**
+	 * Send the request with the timeouts and deadline of the operation, leaving the response
+	 * body to be read through the returned {@link InfoResponse}, which releases the connection.
+	 * @throws TimeoutErrorException if the call timed out or exceeded its deadline
+	 * @throws ServerErrorException if the call was cancelled
+	 */
+	private InfoResponse open(Operation operation, HttpUriRequest method) throws IOException, ServerErrorException {
+		HttpConnectionParams.setConnectionTimeout(method.getParams(), configuration.getConnectionTimeout(operation));
+		HttpConnectionParams.setSoTimeout(method.getParams(), configuration.getSocketTimeout(operation));
+
+		Call call = new Call(operation, method, null);
+		call.start();
+		long start = System.nanoTime();
+		boolean opened = false;
+		try {
+			HttpResponse httpResponse = client.execute(method);
+			logger.debug("HTTPResponse code for URI {} : {}",method.getURI().toString(),httpResponse.getStatusLine().getStatusCode());
+			opened = true;
+			return new InfoResponse(operation, method, call, httpResponse, start);
+		} catch (IOException e) {
+			throw failure(operation, call, e);
+		} finally {
+			if(!opened)
+				call.done();
+		}
+	}
+
+	/**
+	 * Map a failure of a blocking call to the error of the call
+	 * @return the failure itself, to be thrown, if the call was neither aborted nor timed out
+	 * @throws ServerErrorException if the call was aborted, a {@link TimeoutErrorException} if it timed out
+	 */
+	private IOException failure(Operation operation, Call call, IOException e) throws ServerErrorException {
+		ServerErrorException abortCause = call.getAbortCause();
+		if(abortCause != null)
+			throw recordError(operation, abortCause);
+		if(isTimeout(e))
+			throw recordError(operation, new TimeoutErrorException(operation.getMethodName() + " timed out", e));
+		return e;
+	}
+
+	private static boolean isTimeout(Throwable error) {
+		return error instanceof SocketTimeoutException || error instanceof ConnectTimeoutException;
+	}
+
+	/**
+	 * Abort all the calls in flight, blocking and asynchronous. Aborted blocking calls throw a
+	 * {@link ServerErrorException}, aborted asynchronous feeds fail with it. The client can still
+	 * be used afterwards.
+	 * @return number of calls aborted
+	 */
+	public int cancelAll(){
+		int cancelled = 0;
+		for(Call call : calls){
+			if(call.abort(new ServerErrorException("call cancelled")))
+				cancelled++;
+		}
+		return cancelled;
+	}
+
+	private ScheduledExecutorService getDeadlineTimer(){
+		ScheduledExecutorService timer = deadlineTimer;
+		if(timer == null){
+			synchronized (this) {
+				timer = deadlineTimer;
+				if(timer == null){
+					ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("rsp-services-deadlines"));
+					executor.setRemoveOnCancelPolicy(true);
+					timer = executor;
+					deadlineTimer = timer;
+				}
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * A call in flight, aborted when it exceeds the deadline of its operation or by
+	 * {@link RSP_services_csparql_API#cancelAll()}. Blocking calls are aborted through
+	 * their request, asynchronous ones by failing their result and cancelling the exchange.
+	 */
+	private final class Call implements Runnable {
+		private final Operation operation;
+		private final HttpUriRequest method;
+		private final BasicFuture<String> result;
+		private volatile Future<HttpResponse> exchange;
+		private volatile ScheduledFuture<?> deadline;
+		private long deadlineMillis;
+		private ServerErrorException abortCause;
+		private boolean done = false;
+
+		private Call(Operation operation, HttpUriRequest method, BasicFuture<String> result) {
+			this.operation = operation;
+			this.method = method;
+			this.result = result;
+		}
+
+		private void start() {
+			calls.add(this);
+			deadlineMillis = configuration.getDeadline(operation);
+			if(deadlineMillis > 0)
+				deadline = getDeadlineTimer().schedule(this, deadlineMillis, TimeUnit.MILLISECONDS);
+		}
+
+		private void setExchange(Future<HttpResponse> exchange) {
+			this.exchange = exchange;
+			if(getAbortCause() != null)
+				exchange.cancel(true);
+		}
+
+		/**
+		 * @return false if the call had been aborted
+		 */
+		private boolean done() {
+			calls.remove(this);
+			ScheduledFuture<?> scheduled = deadline;
+			if(scheduled != null)
+				scheduled.cancel(false);
+			synchronized (this) {
+				done = true;
+				return abortCause == null;
+			}
+		}
+
+		private synchronized ServerErrorException getAbortCause() {
+			return abortCause;
+		}
+
+		@Override
+		public void run() {
+			abort(new TimeoutErrorException(operation.getMethodName() + " exceeded its deadline of " + deadlineMillis + " ms"));
+		}
+
+		/**
+		 * @return true if the call was in flight and has been aborted
+		 */
+		private boolean abort(ServerErrorException cause) {
+			synchronized (this) {
+				if(done || abortCause != null)
+					return false;
+				abortCause = cause;
+			}
+			if(result == null){
+				method.abort();
+			} else {
+				if(result.failed(cause))
+					recordError(operation, cause);
+				Future<HttpResponse> current = exchange;
+				if(current != null)
+					current.cancel(true);
+				done();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Record the error in the metrics of the operation
+	 * @return the error itself, so that it can be thrown
+	 */
+	private <E extends Exception> E recordError(Operation operation, E error) {
+		metrics.get(operation).error(error);
+		return error;
+	}
+
+	/**
+	 * @param path path of the location of the data
+	 * @param contentType content type of the data, null if unknown
+	 * @return true if the content type or, when it is missing or generic, the extension of the path denotes RDF/XML
+	 */
+	private static boolean isRdfXml(String path, String contentType){
+		if(contentType != null){
+			String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.ENGLISH);
+			if(RDF_XML_MEDIA_TYPES.contains(mediaType))
+				return true;
+			if(!GENERIC_MEDIA_TYPES.contains(mediaType))
+				return false;
+		}
+		return RDF_XML_PATH.matcher(path).matches();
+	}
+
+	private String normalizeLocation(String location){
+		if(System.getProperty("os.name").contains("Windows")){
+			if(!location.startsWith("http://") && !location.startsWith("file:/"))
+				location = "file:/" + location;
+		}else{
+			if(!location.startsWith("http://") && !location.startsWith("file://"))
+				location = "file://" + location;
+		}
+		return location;
+	}
+
+	/**
+	 * A response whose body has not been read yet. Its call is done, and its connection
+	 * released, when the body has been read as an error message or when the iterator over
+	 * its content is closed.
+	 */
+	private final class InfoResponse {
+		private final Operation operation;
+		private final HttpUriRequest method;
+		private final Call call;
+		private final HttpResponse response;
+		private final long start;
+
+		private InfoResponse(Operation operation, HttpUriRequest method, Call call, HttpResponse response, long start) {
+			this.operation = operation;
+			this.method = method;
+			this.call = call;
+			this.response = response;
+			this.start = start;
+		}
+
+		private int getStatusCode() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		private String readError() throws IOException, ServerErrorException {
+			try {
+				ResponseReader.Body body = ResponseReader.read(method, response);
+				metrics.get(operation).exchange(System.nanoTime() - start, 0, body.getLength());
+				return body.getContent();
+			} catch (IOException e) {
+				throw failure(operation, call, e);
+			} finally {
+				call.done();
+			}
+		}
+
+		private <T> InfoIterator<T> iterate(TypeAdapter<T> adapter) throws IOException, ServerErrorException {
+			final CountingInputStream content;
+			try {
+				HttpEntity entity = response.getEntity();
+				content = new CountingInputStream(entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent());
+			} catch (IOException e) {
+				method.abort();
+				call.done();
+				throw failure(operation, call, e);
+			}
+			return new InfoIterator<T>(new InputStreamReader(content, "UTF-8"), adapter) {
+				@Override
+				protected void release(boolean exhausted) throws IOException {
+					try {
+						if(exhausted)
+							super.release(true);
+						else
+							method.abort();
+					} finally {
+						if(call.done())
+							metrics.get(operation).exchange(System.nanoTime() - start, 0, content.getByteCount());
+					}
+				}
+
+				@Override
+				protected JsonParseException failed(IOException e) {
+					ServerErrorException abortCause = call.getAbortCause();
+					if(abortCause != null)
+						return new JsonIOException(recordError(operation, abortCause));
+					if(isTimeout(e))
+						return new JsonIOException(recordError(operation, new TimeoutErrorException(operation.getMethodName() + " timed out", e)));
+					recordError(operation, e);
+					return super.failed(e);
+				}
+			};
+		}
+	}
+
+	private static class Response {
+		private final int statusCode;
+		private final String body;
+		private final String etag;
+
+		private Response(int statusCode, String body, String etag) {
+			this.statusCode = statusCode;
+			this.body = body;
+			this.etag = etag;
 		}
 	}
 }
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.http.DirectByteArrayOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Immutable serialization of a model, ready to be fed to one or more streams
+ * without serializing the model again. The same instance can be shared by any
+ * number of concurrent requests.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class SerializedModel {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final byte[] data;
+	private final int length;
+	private final FeedFormat format;
+
+	private SerializedModel(byte[] data, int length, FeedFormat format) {
+		this.data = data;
+		this.length = length;
+		this.format = format;
+	}
+
+	/**
+	 * @param model model to serialize
+	 * @return RDF/JSON serialization of the model
+	 */
+	public static SerializedModel rdfJson(Model model) {
+		return serialize(model, FeedFormat.RDF_JSON);
+	}
+
+	/**
+	 * @param model model to serialize
+	 * @param format serialization format
+	 * @return serialization of the model in the format
+	 */
+	public static SerializedModel serialize(Model model, FeedFormat format) {
+		DirectByteArrayOutputStream out = new DirectByteArrayOutputStream();
+		model.write(out, format.getLang());
+		return new SerializedModel(out.buffer(), out.size(), format);
+	}
+
+	/**
+	 * @param RDF_Data_Serialization RDF/JSON serialization of a model
+	 * @return the serialization, encoded in UTF-8
+	 */
+	public static SerializedModel rdfJson(String RDF_Data_Serialization) {
+		byte[] data = RDF_Data_Serialization.getBytes(UTF_8);
+		return new SerializedModel(data, data.length, FeedFormat.RDF_JSON);
+	}
+
+	/**
+	 * @param buffer buffer holding the serialization between its position and its limit, that are left unchanged
+	 * @param format serialization format
+	 * @return copy of the serialization
+	 */
+	public static SerializedModel read(ByteBuffer buffer, FeedFormat format) {
+		byte[] data = new byte[buffer.remaining()];
+		buffer.duplicate().get(data);
+		return new SerializedModel(data, data.length, format);
+	}
+
+	/**
+	 * @param data buffer holding the serialization, not copied
+	 * @param length size of the serialization in bytes
+	 * @param format serialization format
+	 * @return serialization backed by the buffer, that must not be modified afterwards
+	 */
+	static SerializedModel wrap(byte[] data, int length, FeedFormat format) {
+		return new SerializedModel(data, length, format);
+	}
+
+	/**
+	 * @return size of the serialization in bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return serialization format
+	 */
+	public FeedFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return media type of the serialization
+	 */
+	public String getContentType() {
+		return format.getContentType();
+	}
+
+	/**
+	 * Copy the serialization into the buffer, advancing its position
+	 * @param buffer destination buffer, with at least {@link #getLength()} bytes remaining
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(data, 0, length);
+	}
+
+	/**
+	 * @param target serialization format
+	 * @return this serialization translated into the format, without going back to the original model
+	 */
+	public SerializedModel translate(FeedFormat target) {
+		if(target == format)
+			return this;
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new ByteArrayInputStream(data, 0, length), null, format.getLang());
+		return serialize(model, target);
+	}
+
+	/**
+	 * @return buffer holding the serialization in its first {@link #getLength()} bytes. It must not be modified.
+	 */
+	byte[] data() {
+		return data;
+	}
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+
+import java.net.URI;
+import java.util.concurrent.Future;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.message.BasicHeader;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Handle of a stream of the engine, obtained through
+ * {@link RSP_services_csparql_API#getStreamHandle(String)}.
+ * <p>
+ * The handle holds the encoded URI of the stream, its target host and the
+ * headers of the feed requests, so feeding the stream through the handle
+ * skips the name encoding and URI parsing done by the
+ * {@code feedStream(String, ...)} methods, which delegate to it. Errors and
+ * fallbacks to RDF/JSON are the same as the corresponding methods of the
+ * client.
+ * <p>
+ * Instances are immutable and thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class StreamHandle {
+
+	private final RSP_services_csparql_API api;
+	private final String name;
+	private final URI uri;
+	private final HttpHost host;
+	private final Header[] headers;
+
+	StreamHandle(RSP_services_csparql_API api, String name, URI uri) {
+		this.api = api;
+		this.name = name;
+		this.uri = uri;
+		this.host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+		this.headers = new Header[] {new BasicHeader("Cache-Control", "no-cache")};
+	}
+
+	/**
+	 * @return name of the stream
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return URI of the stream on the engine
+	 */
+	public URI getURI() {
+		return uri;
+	}
+
+	/**
+	 * Put new data into the stream
+	 * @param RDF_Data_Serialization RDF/Json serialization of data to put into stream
+	 * @return json response from server.
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException
+	 * @see RSP_services_csparql_API#feedStream(String, String)
+	 */
+	public String feed(String RDF_Data_Serialization) throws ServerErrorException, StreamErrorException {
+		return api.feedStream(this, RDF_Data_Serialization);
+	}
+
+	/**
+	 * Put new data into the stream, serialized in the configured feed format
+	 * @param model Jena Model containing data to put into stream
+	 * @return json response from server.
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException
+	 * @see RSP_services_csparql_API#feedStream(String, Model)
+	 */
+	public String feed(Model model) throws ServerErrorException, StreamErrorException {
+		return api.feedStream(this, model);
+	}
+
+	/**
+	 * Put the triples of the buffer into the stream
+	 * @param triples triples to put into stream. The buffer can be reused as soon as the method returns.
+	 * @return json response from server.
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException
+	 * @see RSP_services_csparql_API#feedStream(String, TripleBuffer)
+	 */
+	public String feed(TripleBuffer triples) throws ServerErrorException, StreamErrorException {
+		return api.feedStream(this, triples);
+	}
+
+	/**
+	 * Put already serialized data into the stream. The serialization is sent as is.
+	 * @param serialization serialized data to put into stream
+	 * @return json response from server.
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException
+	 */
+	public String feed(SerializedModel serialization) throws ServerErrorException, StreamErrorException {
+		return api.feedStream(this, serialization);
+	}
+
+	/**
+	 * Put new data into the stream without blocking the calling thread
+	 * @param RDF_Data_Serialization RDF/Json serialization of data to put into stream
+	 * @param callback optional callback notified when the feed completes. It runs on an I/O dispatch thread and must not block.
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedAsync(String RDF_Data_Serialization, FutureCallback<String> callback) {
+		return api.feedStreamAsync(this, RDF_Data_Serialization, callback);
+	}
+
+	/**
+	 * Put new data into the stream without blocking the calling thread
+	 * @param model Jena Model containing data to put into stream. The model is serialized in the configured feed format before this method returns.
+	 * @param callback optional callback notified when the feed completes. It runs on an I/O dispatch thread and must not block.
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedAsync(Model model, FutureCallback<String> callback) {
+		return api.feedStreamAsync(this, model, callback);
+	}
+
+	/**
+	 * Put already serialized data into the stream without blocking the calling thread
+	 * @param serialization serialized data to put into stream
+	 * @param callback optional callback notified when the feed completes. It runs on an I/O dispatch thread and must not block.
+	 * @return future completed with the json response from server, or failed with {@link StreamErrorException} or {@link ServerErrorException}
+	 */
+	public Future<String> feedAsync(SerializedModel serialization, FutureCallback<String> callback) {
+		return api.feedStreamAsync(this, serialization, callback);
+	}
+
+	HttpHost getHost() {
+		return host;
+	}
+
+	HttpPost newRequest(HttpEntity entity) {
+		HttpPost method = new HttpPost(uri);
+		method.setHeaders(headers);
+		method.setEntity(entity);
+		return method;
+	}
+
+	@Override
+	public String toString() {
+		return uri.toString();
+	}
+
+}
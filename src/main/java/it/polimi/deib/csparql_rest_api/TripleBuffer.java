@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Reusable buffer of triples encoded as N-Triples, for producers that already
+ * hold their data as strings and do not need a Jena {@link com.hp.hpl.jena.rdf.model.Model}.
+ * <p>
+ * Terms are encoded to UTF-8 straight into an internal byte array that grows
+ * as needed and is kept across {@link #clear()}, so once the buffer has reached
+ * its working size adding triples and feeding them with
+ * {@link RSP_services_csparql_API#feedStream(String, TripleBuffer)} allocates
+ * nothing per triple. Keep one buffer per producer thread: instances are not
+ * thread-safe.
+ * <p>
+ * IRIs are written as given, so they must be valid absolute IRIs; terms
+ * starting with {@code _:} are written as blank node labels. Literals are
+ * escaped as required by N-Triples. Unpaired surrogates, which have no UTF-8
+ * encoding, are written as {@code ?} like {@link String#getBytes(String)} does.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class TripleBuffer {
+
+	private static final String XSD_LONG = "http://www.w3.org/2001/XMLSchema#long";
+
+	private byte[] buf;
+	private int count;
+	private int triples;
+	private final byte[] digits = new byte[20];
+
+	public TripleBuffer() {
+		this(8192);
+	}
+
+	/**
+	 * @param initialCapacity initial size of the buffer in bytes
+	 */
+	public TripleBuffer(int initialCapacity) {
+		buf = new byte[initialCapacity];
+	}
+
+	/**
+	 * Add a triple whose object is a resource
+	 * @param subject IRI or blank node label of the subject
+	 * @param predicate IRI of the predicate
+	 * @param object IRI or blank node label of the object
+	 */
+	public void add(String subject, String predicate, String object) {
+		writeResource(subject);
+		writeResource(predicate);
+		writeResource(object);
+		endTriple();
+	}
+
+	/**
+	 * Add triples whose objects are resources
+	 * @param spo subject, predicate and object of each triple, one after the other
+	 * @param offset index of the subject of the first triple
+	 * @param triples number of triples to add
+	 */
+	public void addAll(String[] spo, int offset, int triples) {
+		int end = offset + triples * 3;
+		for(int i = offset ; i < end ; i += 3)
+			add(spo[i], spo[i + 1], spo[i + 2]);
+	}
+
+	/**
+	 * Add a triple whose object is a plain literal
+	 * @param subject IRI or blank node label of the subject
+	 * @param predicate IRI of the predicate
+	 * @param value lexical form of the literal
+	 */
+	public void addLiteral(String subject, String predicate, String value) {
+		writeResource(subject);
+		writeResource(predicate);
+		writeLiteral(value);
+		endTriple();
+	}
+
+	/**
+	 * Add a triple whose object is a typed literal
+	 * @param subject IRI or blank node label of the subject
+	 * @param predicate IRI of the predicate
+	 * @param lexicalForm lexical form of the literal
+	 * @param datatype IRI of the datatype
+	 */
+	public void addTypedLiteral(String subject, String predicate, String lexicalForm, String datatype) {
+		writeResource(subject);
+		writeResource(predicate);
+		writeLiteral(lexicalForm);
+		ensureCapacity(2);
+		buf[count++] = '^';
+		buf[count++] = '^';
+		writeIri(datatype);
+		endTriple();
+	}
+
+	/**
+	 * Add a triple whose object is a literal with a language tag
+	 * @param subject IRI or blank node label of the subject
+	 * @param predicate IRI of the predicate
+	 * @param value lexical form of the literal
+	 * @param language language tag, e.g. "it"
+	 */
+	public void addLangLiteral(String subject, String predicate, String value, String language) {
+		writeResource(subject);
+		writeResource(predicate);
+		writeLiteral(value);
+		ensureCapacity(1);
+		buf[count++] = '@';
+		writeUtf8(language, false);
+		endTriple();
+	}
+
+	/**
+	 * Add a triple whose object is an {@code xsd:long} literal
+	 * @param subject IRI or blank node label of the subject
+	 * @param predicate IRI of the predicate
+	 * @param value value of the literal
+	 */
+	public void addLiteral(String subject, String predicate, long value) {
+		writeResource(subject);
+		writeResource(predicate);
+		// quotes, sign, 19 digits and ^^
+		ensureCapacity(24);
+		buf[count++] = '"';
+		writeLong(value);
+		buf[count++] = '"';
+		buf[count++] = '^';
+		buf[count++] = '^';
+		writeIri(XSD_LONG);
+		endTriple();
+	}
+
+	/**
+	 * @return number of triples in the buffer
+	 */
+	public int getTripleCount() {
+		return triples;
+	}
+
+	/**
+	 * @return size of the N-Triples serialization in bytes
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Remove all the triples, keeping the allocated memory
+	 */
+	public void clear() {
+		count = 0;
+		triples = 0;
+	}
+
+	/**
+	 * @param out stream receiving the N-Triples serialization
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buf, 0, count);
+	}
+
+	/**
+	 * @return immutable copy of the content of the buffer
+	 */
+	public SerializedModel toSerializedModel() {
+		return SerializedModel.wrap(Arrays.copyOf(buf, count), count, FeedFormat.N_TRIPLES);
+	}
+
+	/**
+	 * @return internal buffer, valid up to {@link #size()}
+	 */
+	byte[] data() {
+		return buf;
+	}
+
+	private void writeResource(String term) {
+		if(term.startsWith("_:")){
+			writeUtf8(term, false);
+			ensureCapacity(1);
+			buf[count++] = ' ';
+		} else {
+			writeIri(term);
+		}
+	}
+
+	private void writeIri(String iri) {
+		ensureCapacity(1);
+		buf[count++] = '<';
+		writeUtf8(iri, false);
+		ensureCapacity(2);
+		buf[count++] = '>';
+		buf[count++] = ' ';
+	}
+
+	private void writeLiteral(String value) {
+		ensureCapacity(1);
+		buf[count++] = '"';
+		writeUtf8(value, true);
+		ensureCapacity(1);
+		buf[count++] = '"';
+	}
+
+	private void endTriple() {
+		ensureCapacity(3);
+		if(buf[count - 1] != ' ')
+			buf[count++] = ' ';
+		buf[count++] = '.';
+		buf[count++] = '\n';
+		triples++;
+	}
+
+	private void writeLong(long value) {
+		if(value == Long.MIN_VALUE){
+			writeUtf8("-9223372036854775808", false);
+			return;
+		}
+		if(value < 0){
+			buf[count++] = '-';
+			value = -value;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while(value != 0);
+		while(n > 0)
+			buf[count++] = digits[--n];
+	}
+
+	private void writeUtf8(String s, boolean escape) {
+		int length = s.length();
+		// worst case: 3 bytes per char, or an escape sequence of 2
+		ensureCapacity(length * 3);
+		byte[] b = buf;
+		int pos = count;
+		for(int i = 0 ; i < length ; i++){
+			char c = s.charAt(i);
+			if(c < 0x80){
+				if(escape && (c == '"' || c == '\\' || c == '\n' || c == '\r')){
+					b[pos++] = '\\';
+					b[pos++] = (byte) (c == '\n' ? 'n' : c == '\r' ? 'r' : c);
+				} else {
+					b[pos++] = (byte) c;
+				}
+			} else if(c < 0x800){
+				b[pos++] = (byte) (0xc0 | (c >> 6));
+				b[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))){
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				b[pos++] = (byte) (0xf0 | (cp >> 18));
+				b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				b[pos++] = (byte) (0x80 | (cp & 0x3f));
+			} else if(Character.isSurrogate(c)){
+				b[pos++] = '?';
+			} else {
+				b[pos++] = (byte) (0xe0 | (c >> 12));
+				b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				b[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		count = pos;
+	}
+
+	private void ensureCapacity(int extra) {
+		if(count + extra > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+	}
+
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.bulk;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ObserverErrorException;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the stream and query lifecycle operations of {@link RSP_services_csparql_API}
+ * on many items at once.
+ * <p>
+ * Each method submits one blocking call per item to a pool of
+ * {@code parallelism} threads and waits for all of them, so at most
+ * {@code parallelism} requests are in flight towards the engine, also when
+ * several bulk operations run at the same time. Items never fail the whole
+ * operation: each one is reported in the returned {@link BulkResult} with its
+ * response or with the exception thrown by the client. Calls for which the
+ * client returns {@code "Error"} are reported as failed.
+ * <p>
+ * Make sure the connection pool of the client allows {@code parallelism}
+ * connections per route (see
+ * {@link it.polimi.deib.csparql_rest_api.ClientConfiguration#setMaxConnectionsPerRoute(int)}).
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class BulkOperations implements Closeable {
+
+	public static final int DEFAULT_PARALLELISM = 16;
+
+	private static final String CLIENT_ERROR = "Error";
+
+	private final RSP_services_csparql_API api;
+	private final ExecutorService executor;
+
+	/**
+	 * @param api client of the engine
+	 */
+	public BulkOperations(RSP_services_csparql_API api) {
+		this(api, DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param api client of the engine
+	 * @param parallelism maximum number of concurrent requests
+	 */
+	public BulkOperations(RSP_services_csparql_API api, int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive");
+		this.api = api;
+		this.executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("rsp-services-bulk"));
+	}
+
+	/**
+	 * Register the streams
+	 * @param inputStreamNames names of the streams
+	 * @return json response from server for each stream, by stream name
+	 * @throws IllegalArgumentException if a stream name appears more than once
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> registerStreams(Collection<String> inputStreamNames) throws InterruptedException {
+		checkDistinct(inputStreamNames, "stream");
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String inputStreamName : inputStreamNames){
+			calls.put(inputStreamName, checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.registerStream(inputStreamName);
+				}
+			}, Failure.STREAM, "registering stream " + inputStreamName));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Unregister the streams
+	 * @param inputStreamNames names of the streams
+	 * @return json response from server for each stream, by stream name
+	 * @throws IllegalArgumentException if a stream name appears more than once
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> unregisterStreams(Collection<String> inputStreamNames) throws InterruptedException {
+		checkDistinct(inputStreamNames, "stream");
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String inputStreamName : inputStreamNames){
+			calls.put(inputStreamName, checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.unregisterStream(inputStreamName);
+				}
+			}, Failure.STREAM, "unregistering stream " + inputStreamName));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Register the queries
+	 * @param queries body of each query, by query name
+	 * @return uri of each new query, by query name
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> registerQueries(Map<String, String> queries) throws InterruptedException {
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final Map.Entry<String, String> query : queries.entrySet()){
+			calls.put(query.getKey(), checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.registerQuery(query.getKey(), query.getValue());
+				}
+			}, Failure.QUERY, "registering query " + query.getKey()));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Unregister the queries
+	 * @param queryURIs unique uris of the queries
+	 * @return json response from server for each query, by query uri
+	 * @throws IllegalArgumentException if a query uri appears more than once
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> unregisterQueries(Collection<String> queryURIs) throws InterruptedException {
+		checkDistinct(queryURIs, "query");
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String queryURI : queryURIs){
+			calls.put(queryURI, checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.unregisterQuery(queryURI);
+				}
+			}, Failure.QUERY, "unregistering query " + queryURI));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Pause the queries
+	 * @param queryURIs unique uris of the queries
+	 * @return json response from server for each query, by query uri
+	 * @throws IllegalArgumentException if a query uri appears more than once
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> pauseQueries(Collection<String> queryURIs) throws InterruptedException {
+		checkDistinct(queryURIs, "query");
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String queryURI : queryURIs){
+			calls.put(queryURI, checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.pauseQuery(queryURI);
+				}
+			}, Failure.QUERY, "pausing query " + queryURI));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Restart the queries
+	 * @param queryURIs unique uris of the queries
+	 * @return json response from server for each query, by query uri
+	 * @throws IllegalArgumentException if a query uri appears more than once
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> restartQueries(Collection<String> queryURIs) throws InterruptedException {
+		checkDistinct(queryURIs, "query");
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String queryURI : queryURIs){
+			calls.put(queryURI, checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.restartQuery(queryURI);
+				}
+			}, Failure.QUERY, "restarting query " + queryURI));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Attach an observer with the same callback url to each query
+	 * @param queryURIs unique uris of the queries
+	 * @param callbackUrl url notified with the results of the queries
+	 * @return uri of the new observer of each query, by query uri
+	 * @throws IllegalArgumentException if a query uri appears more than once
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> addObservers(Collection<String> queryURIs, String callbackUrl) throws InterruptedException {
+		checkDistinct(queryURIs, "query");
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(String queryURI : queryURIs)
+			calls.put(queryURI, addObserver(queryURI, callbackUrl));
+		return run(calls);
+	}
+
+	/**
+	 * Attach one observer to each query for each of its callback urls
+	 * @param callbackUrls callback urls of the new observers, by query uri
+	 * @return uri of each new observer, keyed by query uri and callback url separated by a space, e.g. {@code "http://host/queries/q1 http://host/results"}
+	 * @throws IllegalArgumentException if a callback url appears more than once for the same query
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Calls not yet started are cancelled.
+	 */
+	public BulkResult<String> addObservers(Map<String, ? extends Collection<String>> callbackUrls) throws InterruptedException {
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(Map.Entry<String, ? extends Collection<String>> query : callbackUrls.entrySet()){
+			checkDistinct(query.getValue(), "callback url of query " + query.getKey());
+			for(String callbackUrl : query.getValue())
+				calls.put(query.getKey() + " " + callbackUrl, addObserver(query.getKey(), callbackUrl));
+		}
+		return run(calls);
+	}
+
+	/**
+	 * Stop the threads of the pool. The client is not closed.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	Callable<String> addObserver(final String queryURI, final String callbackUrl) {
+		return checked(new ClientCall() {
+			@Override
+			public String call() throws Exception {
+				return api.addObserver(queryURI, callbackUrl);
+			}
+		}, Failure.OBSERVER, "adding observer to query " + queryURI);
+	}
+
+	/**
+	 * Blocking call of the client, which returns {@code "Error"} when the request cannot be created or sent
+	 */
+	interface ClientCall {
+		String call() throws Exception;
+	}
+
+	/**
+	 * Exception reporting a call for which the client returns {@code "Error"}
+	 */
+	enum Failure {
+		STREAM {
+			@Override
+			Exception exception(String message) {
+				return new StreamErrorException(message);
+			}
+		},
+		QUERY {
+			@Override
+			Exception exception(String message) {
+				return new QueryErrorException(message);
+			}
+		},
+		OBSERVER {
+			@Override
+			Exception exception(String message) {
+				return new ObserverErrorException(message);
+			}
+		};
+
+		abstract Exception exception(String message);
+	}
+
+	/**
+	 * @param call blocking call of the client
+	 * @param failure exception thrown if the client returns {@code "Error"}
+	 * @param description what the call does, e.g. {@code "registering stream s1"}
+	 * @return task returning the response of the call
+	 */
+	static Callable<String> checked(final ClientCall call, final Failure failure, final String description) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				String response = call.call();
+				if(CLIENT_ERROR.equals(response))
+					throw failure.exception("Error while " + description);
+				return response;
+			}
+		};
+	}
+
+	/**
+	 * Results are keyed by item, so the same item cannot be submitted twice
+	 */
+	private static void checkDistinct(Collection<String> items, String kind) {
+		Set<String> seen = new HashSet<String>();
+		for(String item : items){
+			if(!seen.add(item))
+				throw new IllegalArgumentException("Duplicate " + kind + ": " + item);
+		}
+	}
+
+	<V> BulkResult<V> run(Map<String, Callable<V>> calls) throws InterruptedException {
+		List<String> keys = new ArrayList<String>(calls.size());
+		List<Future<V>> futures = new ArrayList<Future<V>>(calls.size());
+		for(Map.Entry<String, Callable<V>> call : calls.entrySet()){
+			keys.add(call.getKey());
+			futures.add(executor.submit(call.getValue()));
+		}
+
+		BulkResult<V> result = new BulkResult<V>();
+		try {
+			for(int i = 0; i < futures.size(); i++){
+				try {
+					result.succeeded(keys.get(i), futures.get(i).get());
+				} catch (ExecutionException e) {
+					result.failed(keys.get(i), e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+				} catch (CancellationException e) {
+					result.failed(keys.get(i), e);
+				}
+			}
+		} catch (InterruptedException e) {
+			for(Future<V> future : futures)
+				future.cancel(false);
+			throw e;
+		}
+		return result;
+	}
+
+}
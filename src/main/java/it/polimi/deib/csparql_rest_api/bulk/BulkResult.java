@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.bulk;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a bulk operation, item by item. Items are identified by the key
+ * they were submitted with (query name, query URI or stream name) and keep
+ * the order of submission.
+ *
+ * @param <V> type of the result of each item
+ *
+ * @author Marco Balduini
+ *
+ */
+public class BulkResult<V> {
+
+	private final Map<String, V> results = new LinkedHashMap<String, V>();
+	private final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+
+	BulkResult() {
+		super();
+	}
+
+	void succeeded(String key, V result) {
+		results.put(key, result);
+	}
+
+	void failed(String key, Exception cause) {
+		failures.put(key, cause);
+	}
+
+	/**
+	 * @return true if no item failed
+	 */
+	public boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * @return results of the items that succeeded, by key
+	 */
+	public Map<String, V> getResults() {
+		return Collections.unmodifiableMap(results);
+	}
+
+	/**
+	 * @return causes of the failure of the items that failed, by key
+	 */
+	public Map<String, Exception> getFailures() {
+		return Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * @param key key of the item
+	 * @return result of the item, or null if it failed
+	 */
+	public V get(String key) {
+		return results.get(key);
+	}
+
+	/**
+	 * @param key key of the item
+	 * @return cause of the failure of the item, or null if it succeeded
+	 */
+	public Exception getFailure(String key) {
+		return failures.get(key);
+	}
+
+	@Override
+	public String toString() {
+		return results.size() + " succeeded, " + failures.size() + " failed " + failures.keySet();
+	}
+
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.bulk;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams, queries and observers an engine is expected to hold, to be applied
+ * with {@link TopologySynchronizer}. Queries are identified by name and
+ * observers by the query they are attached to and their callback url.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class Topology {
+
+	private final Set<String> streams = new LinkedHashSet<String>();
+	private final Map<String, String> queries = new LinkedHashMap<String, String>();
+	private final Map<String, Set<String>> observers = new LinkedHashMap<String, Set<String>>();
+
+	/**
+	 * @param inputStreamName name of the stream
+	 * @return this topology
+	 */
+	public Topology addStream(String inputStreamName) {
+		streams.add(inputStreamName);
+		return this;
+	}
+
+	/**
+	 * @param queryName name of the query
+	 * @param queryBody string representing the query in C-SPARQL language
+	 * @return this topology
+	 */
+	public Topology addQuery(String queryName, String queryBody) {
+		queries.put(queryName, queryBody);
+		return this;
+	}
+
+	/**
+	 * @param queryName name of the observed query, that must be part of the topology
+	 * @param callbackUrl url notified with the results of the query
+	 * @return this topology
+	 */
+	public Topology addObserver(String queryName, String callbackUrl) {
+		if(!queries.containsKey(queryName))
+			throw new IllegalArgumentException("Query " + queryName + " is not part of the topology");
+		Set<String> callbacks = observers.get(queryName);
+		if(callbacks == null){
+			callbacks = new LinkedHashSet<String>();
+			observers.put(queryName, callbacks);
+		}
+		callbacks.add(callbackUrl);
+		return this;
+	}
+
+	/**
+	 * @return names of the streams
+	 */
+	public Set<String> getStreams() {
+		return Collections.unmodifiableSet(streams);
+	}
+
+	/**
+	 * @return body of each query, by query name
+	 */
+	public Map<String, String> getQueries() {
+		return Collections.unmodifiableMap(queries);
+	}
+
+	/**
+	 * @param queryName name of the query
+	 * @return callback urls of the observers of the query
+	 */
+	public Set<String> getObservers(String queryName) {
+		Set<String> callbacks = observers.get(queryName);
+		return callbacks == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(callbacks);
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.bulk;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calls needed to turn the topology held by an engine into the desired one,
+ * computed by {@link TopologySynchronizer#diff(Topology)}.
+ * <p>
+ * Queries whose body changed are unregistered and registered again, together
+ * with their observers. Observers of the other queries are compared by
+ * callback url.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class TopologyDiff {
+
+	final Set<String> streamsToRegister = new LinkedHashSet<String>();
+	final Set<String> streamsToUnregister = new LinkedHashSet<String>();
+	final Map<String, String> queriesToRegister = new LinkedHashMap<String, String>();
+	final Set<String> queriesToUnregister = new LinkedHashSet<String>();
+	/** Uri of the live queries kept by the diff, by query name */
+	final Map<String, String> keptQueries = new LinkedHashMap<String, String>();
+	/** Callback urls of the observers to add, by query name */
+	final Map<String, Set<String>> observersToAdd = new LinkedHashMap<String, Set<String>>();
+	final Set<String> observersToDelete = new LinkedHashSet<String>();
+
+	TopologyDiff() {
+		super();
+	}
+
+	/**
+	 * @return names of the streams to register
+	 */
+	public Set<String> getStreamsToRegister() {
+		return Collections.unmodifiableSet(streamsToRegister);
+	}
+
+	/**
+	 * @return names of the streams to unregister
+	 */
+	public Set<String> getStreamsToUnregister() {
+		return Collections.unmodifiableSet(streamsToUnregister);
+	}
+
+	/**
+	 * @return body of the queries to register, by query name
+	 */
+	public Map<String, String> getQueriesToRegister() {
+		return Collections.unmodifiableMap(queriesToRegister);
+	}
+
+	/**
+	 * @return uris of the queries to unregister
+	 */
+	public Set<String> getQueriesToUnregister() {
+		return Collections.unmodifiableSet(queriesToUnregister);
+	}
+
+	/**
+	 * @return callback urls of the observers to add, by query name
+	 */
+	public Map<String, Set<String>> getObserversToAdd() {
+		return Collections.unmodifiableMap(observersToAdd);
+	}
+
+	/**
+	 * @return uris of the observers to delete
+	 */
+	public Set<String> getObserversToDelete() {
+		return Collections.unmodifiableSet(observersToDelete);
+	}
+
+	/**
+	 * @return total number of calls in the diff
+	 */
+	public int size() {
+		return streamsToRegister.size() + streamsToUnregister.size() + queriesToRegister.size()
+				+ queriesToUnregister.size() + getObserversToAddCount() + observersToDelete.size();
+	}
+
+	private int getObserversToAddCount() {
+		int count = 0;
+		for(Set<String> callbacks : observersToAdd.values())
+			count += callbacks.size();
+		return count;
+	}
+
+	/**
+	 * @return true if the engine already holds the desired topology
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "+" + streamsToRegister.size() + "/-" + streamsToUnregister.size() + " streams, +"
+				+ queriesToRegister.size() + "/-" + queriesToUnregister.size() + " queries, +"
+				+ getObserversToAddCount() + "/-" + observersToDelete.size() + " observers";
+	}
+
+}
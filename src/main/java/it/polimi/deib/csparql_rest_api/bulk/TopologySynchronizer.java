@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.bulk;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.bulk.BulkOperations.ClientCall;
+import it.polimi.deib.csparql_rest_api.bulk.BulkOperations.Failure;
+import it.polimi.deib.csparql_rest_api.exception.ObserverErrorException;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.info.ObserverInfo;
+import it.polimi.deib.csparql_rest_api.info.QueryInfo;
+import it.polimi.deib.csparql_rest_api.info.StreamInfo;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the streams, queries and observers of an engine in line with a
+ * desired {@link Topology}, issuing only the calls that make a difference.
+ * <p>
+ * {@link #diff(Topology)} reads the live topology through
+ * {@code getStreams}, {@code getQueries} and, in parallel for each query
+ * that is kept, {@code getObservers}. {@link #sync(Topology)}
+ * then applies the diff in four steps, the calls of each step running in
+ * parallel through {@link BulkOperations}:
+ * <ol>
+ * <li>unregister the obsolete and changed queries and delete the obsolete observers</li>
+ * <li>unregister the obsolete streams and register the new ones</li>
+ * <li>register the new and changed queries</li>
+ * <li>add the missing observers</li>
+ * </ol>
+ * Streams and queries that are already in place are not touched, so their
+ * windows keep running.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class TopologySynchronizer {
+
+	private static final Logger logger = LoggerFactory.getLogger(TopologySynchronizer.class.getName());
+
+	private final RSP_services_csparql_API api;
+	private final BulkOperations bulk;
+
+	/**
+	 * @param api client of the engine
+	 * @param bulk bulk operations on the same client, running the calls of each step
+	 */
+	public TopologySynchronizer(RSP_services_csparql_API api, BulkOperations bulk) {
+		this.api = api;
+		this.bulk = bulk;
+	}
+
+	/**
+	 * Compare the live topology of the engine with the desired one
+	 * @param desired topology the engine should hold
+	 * @return calls needed to converge
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException if the streams cannot be read
+	 * @throws QueryErrorException if the queries cannot be read
+	 * @throws ObserverErrorException if the observers cannot be read
+	 * @throws InterruptedException
+	 */
+	public TopologyDiff diff(Topology desired) throws ServerErrorException, StreamErrorException, QueryErrorException, ObserverErrorException, InterruptedException {
+		TopologyDiff diff = new TopologyDiff();
+
+		Set<String> liveStreams = new HashSet<String>();
+		for(StreamInfo stream : api.getStreams())
+			liveStreams.add(stream.getStreamIRI());
+		for(String stream : desired.getStreams()){
+			if(!liveStreams.contains(stream))
+				diff.streamsToRegister.add(stream);
+		}
+		for(String stream : liveStreams){
+			if(!desired.getStreams().contains(stream))
+				diff.streamsToUnregister.add(stream);
+		}
+
+		Set<String> liveQueries = new HashSet<String>();
+		for(QueryInfo query : api.getQueries()){
+			String queryURI = queryURI(query.getId());
+			String queryName = queryURI.substring(queryURI.lastIndexOf('/') + 1);
+			String body = query.getBody();
+			liveQueries.add(queryName);
+			String desiredBody = desired.getQueries().get(queryName);
+			if(desiredBody == null){
+				diff.queriesToUnregister.add(queryURI);
+			} else if(body == null || !body.trim().equals(desiredBody.trim())){
+				diff.queriesToUnregister.add(queryURI);
+				diff.queriesToRegister.put(queryName, desiredBody);
+				addObservers(diff, queryName, desired.getObservers(queryName));
+			} else {
+				diff.keptQueries.put(queryName, queryURI);
+			}
+		}
+		for(Map.Entry<String, String> query : desired.getQueries().entrySet()){
+			if(!liveQueries.contains(query.getKey())){
+				diff.queriesToRegister.put(query.getKey(), query.getValue());
+				addObservers(diff, query.getKey(), desired.getObservers(query.getKey()));
+			}
+		}
+
+		Map<String, Callable<List<ObserverInfo>>> reads = new LinkedHashMap<String, Callable<List<ObserverInfo>>>();
+		for(final String queryURI : diff.keptQueries.values()){
+			reads.put(queryURI, new Callable<List<ObserverInfo>>() {
+				@Override
+				public List<ObserverInfo> call() throws Exception {
+					return api.getObservers(queryURI);
+				}
+			});
+		}
+		BulkResult<List<ObserverInfo>> observersInfo = bulk.run(reads);
+		if(!observersInfo.isSuccessful()){
+			Exception failure = observersInfo.getFailures().values().iterator().next();
+			if(failure instanceof ServerErrorException)
+				throw (ServerErrorException) failure;
+			throw new ObserverErrorException("Error while getting information about observers", failure);
+		}
+		for(Map.Entry<String, String> query : diff.keptQueries.entrySet()){
+			Set<String> missing = new LinkedHashSet<String>(desired.getObservers(query.getKey()));
+			for(ObserverInfo observer : observersInfo.get(query.getValue())){
+				// a callback observed twice is kept once
+				if(!missing.remove(observer.getCallbackUrl()))
+					diff.observersToDelete.add(observerURI(query.getValue(), observer.getId()));
+			}
+			addObservers(diff, query.getKey(), missing);
+		}
+		return diff;
+	}
+
+	/**
+	 * Bring the engine in line with the desired topology
+	 * @param desired topology the engine should hold
+	 * @return outcome of each call, keyed by the call and its target, e.g. {@code "register query q1"}
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException if the streams cannot be read
+	 * @throws QueryErrorException if the queries cannot be read
+	 * @throws ObserverErrorException if the observers cannot be read
+	 * @throws InterruptedException
+	 */
+	public BulkResult<String> sync(Topology desired) throws ServerErrorException, StreamErrorException, QueryErrorException, ObserverErrorException, InterruptedException {
+		TopologyDiff diff = diff(desired);
+		logger.debug("Topology diff of {}: {}", api.getServerAddress(), diff);
+		return apply(diff);
+	}
+
+	/**
+	 * Issue the calls of a diff
+	 * @param diff diff computed by {@link #diff(Topology)}
+	 * @return outcome of each call, keyed by the call and its target, e.g. {@code "register query q1"}
+	 * @throws InterruptedException
+	 */
+	public BulkResult<String> apply(TopologyDiff diff) throws InterruptedException {
+		BulkResult<String> result = new BulkResult<String>();
+
+		Map<String, Callable<String>> calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String queryURI : diff.queriesToUnregister){
+			calls.put("unregister query " + queryURI, BulkOperations.checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.unregisterQuery(queryURI);
+				}
+			}, Failure.QUERY, "unregistering query " + queryURI));
+		}
+		for(final String observerURI : diff.observersToDelete){
+			calls.put("delete observer " + observerURI, BulkOperations.checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.deleteObserver(observerURI);
+				}
+			}, Failure.OBSERVER, "deleting observer " + observerURI));
+		}
+		merge(result, bulk.run(calls));
+
+		calls = new LinkedHashMap<String, Callable<String>>();
+		for(final String stream : diff.streamsToUnregister){
+			calls.put("unregister stream " + stream, BulkOperations.checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.unregisterStream(stream);
+				}
+			}, Failure.STREAM, "unregistering stream " + stream));
+		}
+		for(final String stream : diff.streamsToRegister){
+			calls.put("register stream " + stream, BulkOperations.checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.registerStream(stream);
+				}
+			}, Failure.STREAM, "registering stream " + stream));
+		}
+		merge(result, bulk.run(calls));
+
+		calls = new LinkedHashMap<String, Callable<String>>();
+		for(final Map.Entry<String, String> query : diff.queriesToRegister.entrySet()){
+			calls.put("register query " + query.getKey(), BulkOperations.checked(new ClientCall() {
+				@Override
+				public String call() throws Exception {
+					return api.registerQuery(query.getKey(), query.getValue());
+				}
+			}, Failure.QUERY, "registering query " + query.getKey()));
+		}
+		merge(result, bulk.run(calls));
+
+		calls = new LinkedHashMap<String, Callable<String>>();
+		for(Map.Entry<String, Set<String>> observers : diff.observersToAdd.entrySet()){
+			String queryName = observers.getKey();
+			String queryURI = diff.keptQueries.containsKey(queryName) ? diff.keptQueries.get(queryName) : result.get("register query " + queryName);
+			for(String callbackUrl : observers.getValue()){
+				String key = "add observer " + queryName + " " + callbackUrl;
+				if(queryURI == null)
+					result.failed(key, new QueryErrorException("Query " + queryName + " not registered"));
+				else
+					calls.put(key, bulk.addObserver(queryURI, callbackUrl));
+			}
+		}
+		merge(result, bulk.run(calls));
+
+		return result;
+	}
+
+	private static void addObservers(TopologyDiff diff, String queryName, Set<String> callbackUrls) {
+		if(!callbackUrls.isEmpty())
+			diff.observersToAdd.put(queryName, new LinkedHashSet<String>(callbackUrls));
+	}
+
+	private static <V> void merge(BulkResult<V> result, BulkResult<V> step) {
+		for(Map.Entry<String, V> success : step.getResults().entrySet())
+			result.succeeded(success.getKey(), success.getValue());
+		for(Map.Entry<String, Exception> failure : step.getFailures().entrySet())
+			result.failed(failure.getKey(), failure.getValue());
+	}
+
+	/**
+	 * @param id id of a query as reported by the engine, either its uri or its name
+	 */
+	private String queryURI(String id) {
+		return id.contains("/") ? id : api.getServerAddress() + "/queries/" + id;
+	}
+
+	/**
+	 * @param id id of an observer as reported by the engine, either its uri or its local id
+	 */
+	private static String observerURI(String queryURI, String id) {
+		return id.contains("/") ? id : queryURI + "/observers/" + id;
+	}
+
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.cluster;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping keys to nodes.
+ * <p>
+ * Each node is placed on the ring at {@code virtualNodes} points obtained by
+ * hashing {@code node#i} with MD5; a key belongs to the first node point
+ * following its own hash. Adding or removing a node only remaps the keys that
+ * fall next to its points, i.e. about {@code 1/n} of the keys, and the virtual
+ * nodes keep the load balanced.
+ * <p>
+ * Lookups never block: the ring is immutable and replaced as a whole when the
+ * set of nodes changes.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ConsistentHashRing<T> {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<MessageDigest> md5 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("MD5 not available", e);
+			}
+		}
+	};
+
+	private final int virtualNodes;
+	private volatile TreeMap<Long, T> ring = new TreeMap<Long, T>();
+
+	/**
+	 * @param virtualNodes number of points of each node on the ring
+	 */
+	public ConsistentHashRing(int virtualNodes) {
+		if(virtualNodes < 1)
+			throw new IllegalArgumentException("At least one virtual node is needed");
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * @param node node to add. Its {@code toString()} identifies it on the ring.
+	 */
+	public synchronized void add(T node) {
+		TreeMap<Long, T> newRing = new TreeMap<Long, T>(ring);
+		for(int i = 0 ; i < virtualNodes ; i++)
+			newRing.put(hash(node + "#" + i), node);
+		ring = newRing;
+	}
+
+	/**
+	 * @param node node to remove
+	 */
+	public synchronized void remove(T node) {
+		TreeMap<Long, T> newRing = new TreeMap<Long, T>(ring);
+		for(int i = 0 ; i < virtualNodes ; i++){
+			long point = hash(node + "#" + i);
+			if(node.equals(newRing.get(point)))
+				newRing.remove(point);
+		}
+		ring = newRing;
+	}
+
+	/**
+	 * @param key key to look up
+	 * @return node owning the key, or null if the ring is empty
+	 */
+	public T get(String key) {
+		TreeMap<Long, T> current = ring;
+		if(current.isEmpty())
+			return null;
+		Map.Entry<Long, T> entry = current.ceilingEntry(hash(key));
+		return entry == null ? current.firstEntry().getValue() : entry.getValue();
+	}
+
+	/**
+	 * @return nodes on the ring
+	 */
+	public List<T> getNodes() {
+		List<T> nodes = new ArrayList<T>();
+		Collection<T> points = ring.values();
+		for(T node : points)
+			if(!nodes.contains(node))
+				nodes.add(node);
+		return nodes;
+	}
+
+	private static long hash(String key) {
+		MessageDigest digest = md5.get();
+		digest.reset();
+		byte[] bytes = digest.digest(key.getBytes(UTF_8));
+		long hash = 0;
+		for(int i = 0 ; i < 8 ; i++)
+			hash = (hash << 8) | (bytes[i] & 0xff);
+		return hash;
+	}
+
+}
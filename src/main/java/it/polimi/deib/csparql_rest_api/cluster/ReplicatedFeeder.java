@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.cluster;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Feeds the same streams into several engines, e.g. a primary and its hot
+ * standbys.
+ * <p>
+ * Each feed is serialized once for each feed format in use among the
+ * replicas, and the same {@link SerializedModel} is sent to all the replicas
+ * using that format, in parallel, through their non-blocking transport. The
+ * cost of a feed on the calling thread therefore does not depend on the
+ * number of replicas. A replica that rejects the format retries in RDF/JSON
+ * on its own (see
+ * {@link ClientConfiguration#setFeedFormatFallback(boolean)}). The returned
+ * future completes as soon as the
+ * {@link AckPolicy} is satisfied, or fails as soon as it can no longer be.
+ * Feeds that fail after the outcome has been decided are only logged and
+ * counted in the metrics of the replica client.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ReplicatedFeeder implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicatedFeeder.class.getName());
+
+	private final List<RSP_services_csparql_API> replicas;
+	private final AckPolicy ackPolicy;
+	private final boolean ownsClients;
+
+	/**
+	 * @param serverAddresses addresses of the rsp-services servers holding the replicas
+	 * @param configuration transport configuration of the client of each server
+	 * @param ackPolicy replicas that must accept a feed
+	 */
+	public ReplicatedFeeder(Collection<String> serverAddresses, ClientConfiguration configuration, AckPolicy ackPolicy) {
+		List<RSP_services_csparql_API> clients = new ArrayList<RSP_services_csparql_API>();
+		for(String serverAddress : serverAddresses)
+			clients.add(new RSP_services_csparql_API(serverAddress, configuration));
+		this.replicas = Collections.unmodifiableList(clients);
+		this.ackPolicy = ackPolicy;
+		this.ownsClients = true;
+		if(replicas.isEmpty())
+			throw new IllegalArgumentException("At least one replica is needed");
+	}
+
+	/**
+	 * @param replicas clients of the engines holding the replicas. They are not closed by {@link #close()}.
+	 * @param ackPolicy replicas that must accept a feed
+	 */
+	public ReplicatedFeeder(List<RSP_services_csparql_API> replicas, AckPolicy ackPolicy) {
+		this.replicas = Collections.unmodifiableList(new ArrayList<RSP_services_csparql_API>(replicas));
+		this.ackPolicy = ackPolicy;
+		this.ownsClients = false;
+		if(this.replicas.isEmpty())
+			throw new IllegalArgumentException("At least one replica is needed");
+	}
+
+	/**
+	 * @return clients of the replicas
+	 */
+	public List<RSP_services_csparql_API> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Register the stream on every replica
+	 * @param inputStreamName name of the new stream
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException
+	 */
+	public void registerStream(String inputStreamName) throws ServerErrorException, StreamErrorException {
+		for(RSP_services_csparql_API replica : replicas)
+			replica.registerStream(inputStreamName);
+	}
+
+	/**
+	 * Unregister the stream from every replica
+	 * @param inputStreamName name of the stream
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException
+	 */
+	public void unregisterStream(String inputStreamName) throws ServerErrorException, StreamErrorException {
+		for(RSP_services_csparql_API replica : replicas)
+			replica.unregisterStream(inputStreamName);
+	}
+
+	/**
+	 * Put new data into the stream of every replica
+	 * @param inputStreamName name of the stream
+	 * @param model Jena Model containing data to put into stream. The model is serialized before this method
+	 * returns, once for each feed format in use among the replicas.
+	 * @param callback optional callback notified when the outcome is decided
+	 * @return future completed with the response of the replica that satisfied the policy, or failed with the
+	 * error of the replica that made it unreachable
+	 */
+	public Future<String> feedStream(String inputStreamName, Model model, FutureCallback<String> callback) {
+		Map<FeedFormat, SerializedModel> serializations = new EnumMap<FeedFormat, SerializedModel>(FeedFormat.class);
+		List<SerializedModel> feeds = new ArrayList<SerializedModel>(replicas.size());
+		for(RSP_services_csparql_API replica : replicas){
+			FeedFormat format = replica.getFeedFormat();
+			SerializedModel serialization = serializations.get(format);
+			if(serialization == null){
+				serialization = SerializedModel.serialize(model, format);
+				serializations.put(format, serialization);
+			}
+			feeds.add(serialization);
+		}
+		return feedStream(inputStreamName, feeds, callback);
+	}
+
+	/**
+	 * Put already serialized data into the stream of every replica
+	 * @param inputStreamName name of the stream
+	 * @param serialization serialized data to put into stream
+	 * @param callback optional callback notified when the outcome is decided
+	 * @return future completed with the response of the replica that satisfied the policy, or failed with the
+	 * error of the replica that made it unreachable
+	 */
+	public Future<String> feedStream(String inputStreamName, SerializedModel serialization, FutureCallback<String> callback) {
+		return feedStream(inputStreamName, Collections.nCopies(replicas.size(), serialization), callback);
+	}
+
+	/**
+	 * @param feeds serialization to send to each replica, in the order of the replicas
+	 */
+	private Future<String> feedStream(final String inputStreamName, List<SerializedModel> feeds, FutureCallback<String> callback) {
+		final BasicFuture<String> result = new BasicFuture<String>(callback);
+		final int required = ackPolicy.required(replicas.size());
+		final int tolerated = replicas.size() - required;
+		final AtomicInteger acks = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+
+		for(int i = 0; i < replicas.size(); i++){
+			final RSP_services_csparql_API replica = replicas.get(i);
+			replica.feedStreamAsync(inputStreamName, feeds.get(i), new FutureCallback<String>() {
+
+				@Override
+				public void completed(String response) {
+					if(acks.incrementAndGet() == required)
+						result.completed(response);
+				}
+
+				@Override
+				public void failed(Exception ex) {
+					if(failures.incrementAndGet() == tolerated + 1)
+						result.failed(ex);
+					else
+						logger.error("error while feeding stream " + inputStreamName + " to replica " + replica.getServerAddress(), ex);
+				}
+
+				@Override
+				public void cancelled() {
+					failed(new StreamErrorException("Feed of stream " + inputStreamName + " cancelled"));
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Close the clients of the replicas, if created by this feeder
+	 */
+	@Override
+	public void close() {
+		if(ownsClients)
+			for(RSP_services_csparql_API replica : replicas)
+				replica.close();
+	}
+
+}
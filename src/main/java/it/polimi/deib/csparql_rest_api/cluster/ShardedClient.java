@@ -0,0 +1,484 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.cluster;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+import it.polimi.deib.csparql_rest_api.info.StreamInfo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Client spreading streams over several engines.
+ * <p>
+ * Each stream is owned by one engine, chosen by consistent hashing of the
+ * stream name, and every stream operation is routed to its owner. Queries are
+ * registered on the engine owning the streams they read, which must therefore
+ * be on the same engine; everything addressed by URI (queries, observers) can
+ * be reached through {@link #getClientForUri(String)}.
+ * <p>
+ * Nodes can be added and removed at runtime. Only about {@code 1/n} of the
+ * streams change owner; since streams and queries live in the engines, the
+ * streams registered through this client that moved are returned to the
+ * caller, which is in charge of registering them (and their queries) on the
+ * new owner. A removed server stops receiving calls at once, and its client is
+ * closed as soon as the calls already routed to it complete.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ShardedClient implements Closeable {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	private static final Pattern FROM_STREAM = Pattern.compile("FROM\\s+STREAM\\s*<([^>]+)>", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Closes the clients of the removed servers whose last call completes after the removal
+	 */
+	private static final Executor CLOSER = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("rsp-services-shard-closer"));
+
+	/** Returned by the client methods when the request cannot be created or sent */
+	private static final String CLIENT_ERROR = "Error";
+
+	private final ClientConfiguration configuration;
+	private final ConsistentHashRing<String> ring;
+	private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+	private final Set<String> registeredStreams = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * @param serverAddresses addresses of the rsp-services servers
+	 */
+	public ShardedClient(Collection<String> serverAddresses) {
+		this(serverAddresses, new ClientConfiguration(), DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param serverAddresses addresses of the rsp-services servers
+	 * @param configuration transport configuration of the client of each server, copied: changing it
+	 * afterwards has no effect on the clients, including those of the servers added later
+	 * @param virtualNodes number of points of each server on the hash ring
+	 */
+	public ShardedClient(Collection<String> serverAddresses, ClientConfiguration configuration, int virtualNodes) {
+		this.configuration = configuration = new ClientConfiguration(configuration);
+		this.ring = new ConsistentHashRing<String>(virtualNodes);
+		for(String serverAddress : serverAddresses){
+			nodes.put(serverAddress, new Node(new RSP_services_csparql_API(serverAddress, configuration)));
+			ring.add(serverAddress);
+		}
+	}
+
+	/**
+	 * Add a server to the ring
+	 * @param serverAddress address of the rsp-services server
+	 * @return streams registered through this client that are now owned by the new server
+	 */
+	public synchronized List<String> addNode(String serverAddress) {
+		if(nodes.containsKey(serverAddress))
+			return new ArrayList<String>();
+		nodes.put(serverAddress, new Node(new RSP_services_csparql_API(serverAddress, configuration)));
+		ring.add(serverAddress);
+		List<String> moved = new ArrayList<String>();
+		for(String streamName : registeredStreams)
+			if(serverAddress.equals(ring.get(streamName)))
+				moved.add(streamName);
+		return moved;
+	}
+
+	/**
+	 * Remove a server from the ring. The calls routed afterwards go to the new owners; the client of
+	 * the server is closed once the calls already routed to it, including the asynchronous feeds,
+	 * have completed. Clients obtained from {@link #getClient(String)} or
+	 * {@link #getClientForUri(String)} must not be used after their server is removed.
+	 * @param serverAddress address of the rsp-services server
+	 * @return streams registered through this client that were owned by the removed server
+	 */
+	public synchronized List<String> removeNode(String serverAddress) {
+		List<String> moved = new ArrayList<String>();
+		if(!nodes.containsKey(serverAddress))
+			return moved;
+		for(String streamName : registeredStreams)
+			if(serverAddress.equals(ring.get(streamName)))
+				moved.add(streamName);
+		ring.remove(serverAddress);
+		nodes.remove(serverAddress).remove();
+		return moved;
+	}
+
+	/**
+	 * @return addresses of the servers on the ring
+	 */
+	public List<String> getNodes() {
+		return ring.getNodes();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return address of the server owning the stream
+	 */
+	public String getNode(String streamName) {
+		String serverAddress = ring.get(streamName);
+		if(serverAddress == null)
+			throw new IllegalStateException("No server available");
+		return serverAddress;
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return client of the server owning the stream
+	 */
+	public RSP_services_csparql_API getClient(String streamName) {
+		return clientOf(getNode(streamName));
+	}
+
+	/**
+	 * @param uri uri of a resource (query, observer) returned by one of the servers
+	 * @return client of the server the resource belongs to
+	 */
+	public RSP_services_csparql_API getClientForUri(String uri) {
+		for(Map.Entry<String, Node> node : nodes.entrySet())
+			if(uri.startsWith(node.getKey() + "/"))
+				return node.getValue().client;
+		throw new IllegalArgumentException("No server for " + uri);
+	}
+
+	//Streams
+
+	/**
+	 * Register new RDF Stream into the owning engine
+	 * @see RSP_services_csparql_API#registerStream(String)
+	 */
+	public String registerStream(String inputStreamName) throws ServerErrorException, StreamErrorException {
+		Node node = acquire(inputStreamName);
+		try {
+			String response = node.client.registerStream(inputStreamName);
+			if(!CLIENT_ERROR.equals(response))
+				registeredStreams.add(inputStreamName);
+			return response;
+		} finally {
+			node.release();
+		}
+	}
+
+	/**
+	 * Unregister RDF Stream from the owning engine
+	 * @see RSP_services_csparql_API#unregisterStream(String)
+	 */
+	public String unregisterStream(String inputStreamName) throws ServerErrorException, StreamErrorException {
+		Node node = acquire(inputStreamName);
+		try {
+			String response = node.client.unregisterStream(inputStreamName);
+			if(!CLIENT_ERROR.equals(response))
+				registeredStreams.remove(inputStreamName);
+			return response;
+		} finally {
+			node.release();
+		}
+	}
+
+	/**
+	 * @see RSP_services_csparql_API#feedStream(String, String)
+	 */
+	public String feedStream(String inputStreamName, String RDF_Data_Serialization) throws ServerErrorException, StreamErrorException {
+		Node node = acquire(inputStreamName);
+		try {
+			return node.client.feedStream(inputStreamName, RDF_Data_Serialization);
+		} finally {
+			node.release();
+		}
+	}
+
+	/**
+	 * @see RSP_services_csparql_API#feedStream(String, Model)
+	 */
+	public String feedStream(String inputStreamName, Model model) throws StreamErrorException, ServerErrorException {
+		Node node = acquire(inputStreamName);
+		try {
+			return node.client.feedStream(inputStreamName, model);
+		} finally {
+			node.release();
+		}
+	}
+
+	/**
+	 * @see RSP_services_csparql_API#feedStreamAsync(String, String, FutureCallback)
+	 */
+	public Future<String> feedStreamAsync(String inputStreamName, String RDF_Data_Serialization, FutureCallback<String> callback) {
+		Node node = acquire(inputStreamName);
+		try {
+			return node.client.feedStreamAsync(inputStreamName, RDF_Data_Serialization, new ReleasingCallback(node, callback));
+		} catch (RuntimeException e) {
+			node.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @see RSP_services_csparql_API#feedStreamAsync(String, Model, FutureCallback)
+	 */
+	public Future<String> feedStreamAsync(String inputStreamName, Model model, FutureCallback<String> callback) {
+		Node node = acquire(inputStreamName);
+		try {
+			return node.client.feedStreamAsync(inputStreamName, model, new ReleasingCallback(node, callback));
+		} catch (RuntimeException e) {
+			node.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @see RSP_services_csparql_API#getStreamInfo(String)
+	 */
+	public String getStreamInfo(String inputStreamName) throws ServerErrorException, StreamErrorException {
+		Node node = acquire(inputStreamName);
+		try {
+			return node.client.getStreamInfo(inputStreamName);
+		} finally {
+			node.release();
+		}
+	}
+
+	/**
+	 * Get information about the streams of all the engines
+	 * @return json array merging the stream informations of every engine
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException if the information of an engine cannot be read
+	 */
+	public String getStreamsInfo() throws ServerErrorException, StreamErrorException {
+		JsonParser parser = new JsonParser();
+		JsonArray merged = new JsonArray();
+		for(Map.Entry<String, Node> entry : nodes.entrySet()){
+			Node node = entry.getValue();
+			if(!node.acquire())
+				continue;
+			String response;
+			try {
+				response = node.client.getStreamsInfo();
+			} finally {
+				node.release();
+			}
+			if(CLIENT_ERROR.equals(response))
+				throw new StreamErrorException("Error while getting the streams of " + entry.getKey());
+			JsonElement infos;
+			try {
+				infos = parser.parse(response);
+			} catch (JsonParseException e) {
+				throw new StreamErrorException("Error while decoding the streams of " + entry.getKey() + ". ERROR: " + e.getMessage());
+			}
+			if(!infos.isJsonArray())
+				throw new StreamErrorException("Error while decoding the streams of " + entry.getKey() + ". ERROR: not an array");
+			for(JsonElement info : infos.getAsJsonArray())
+				merged.add(info);
+		}
+		return merged.toString();
+	}
+
+	/**
+	 * Get information about the streams of all the engines, decoded
+	 * @return stream informations of every engine
+	 * @throws ServerErrorException
+	 * @throws StreamErrorException if the information of an engine cannot be read or decoded
+	 */
+	public List<StreamInfo> getStreams() throws ServerErrorException, StreamErrorException {
+		List<StreamInfo> merged = new ArrayList<StreamInfo>();
+		for(Node node : nodes.values()){
+			if(!node.acquire())
+				continue;
+			try {
+				merged.addAll(node.client.getStreams());
+			} finally {
+				node.release();
+			}
+		}
+		return merged;
+	}
+
+	//Queries
+
+	/**
+	 * Register new query on the engine owning the streams it reads
+	 * @param queryName name of the query
+	 * @param queryBody body of the query. All its {@code FROM STREAM} clauses must name streams of the same engine.
+	 * @return json response from server, i.e. the uri of the query
+	 * @throws ServerErrorException
+	 * @throws QueryErrorException if the query reads no stream or streams owned by different engines
+	 */
+	public String registerQuery(String queryName, String queryBody) throws ServerErrorException, QueryErrorException {
+		while(true){
+			String serverAddress = null;
+			Matcher matcher = FROM_STREAM.matcher(queryBody);
+			while(matcher.find()){
+				String owner = getNode(matcher.group(1));
+				if(serverAddress != null && !serverAddress.equals(owner))
+					throw new QueryErrorException("Query " + queryName + " reads streams owned by different engines: " + serverAddress + ", " + owner);
+				serverAddress = owner;
+			}
+			if(serverAddress == null)
+				throw new QueryErrorException("Query " + queryName + " does not read any stream");
+			Node node = nodes.get(serverAddress);
+			if(node == null || !node.acquire())
+				continue; // removed meanwhile, route again
+			try {
+				return node.client.registerQuery(queryName, queryBody);
+			} finally {
+				node.release();
+			}
+		}
+	}
+
+	/**
+	 * Close the clients of all the servers, aborting the calls in flight
+	 */
+	@Override
+	public synchronized void close() {
+		for(String serverAddress : ring.getNodes())
+			ring.remove(serverAddress);
+		for(Node node : nodes.values())
+			node.client.close();
+		nodes.clear();
+	}
+
+	private RSP_services_csparql_API clientOf(String serverAddress) {
+		Node node = nodes.get(serverAddress);
+		if(node == null)
+			throw new IllegalStateException("Server " + serverAddress + " removed");
+		return node.client;
+	}
+
+	/**
+	 * @return the node owning the stream, with a call in flight counted; routing is retried if the
+	 * owner is removed meanwhile
+	 */
+	private Node acquire(String streamName) {
+		while(true){
+			Node node = nodes.get(getNode(streamName));
+			if(node != null && node.acquire())
+				return node;
+		}
+	}
+
+	/**
+	 * Client of a server and number of calls in flight towards it. Removing the node adds
+	 * {@link Integer#MIN_VALUE} to the counter, so it turns negative, no call can be acquired
+	 * any more and the client is closed when the counter drops back to {@link Integer#MIN_VALUE}.
+	 */
+	private static class Node {
+		private final RSP_services_csparql_API client;
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private Node(RSP_services_csparql_API client) {
+			this.client = client;
+		}
+
+		private boolean acquire() {
+			while(true){
+				int calls = inFlight.get();
+				if(calls < 0)
+					return false;
+				if(inFlight.compareAndSet(calls, calls + 1))
+					return true;
+			}
+		}
+
+		private void release() {
+			// the last call may be an asynchronous feed completing on an I/O dispatch thread of the
+			// client, which cannot wait for its own transport to shut down
+			if(inFlight.decrementAndGet() == Integer.MIN_VALUE)
+				CLOSER.execute(new Runnable() {
+					@Override
+					public void run() {
+						client.close();
+					}
+				});
+		}
+
+		private void remove() {
+			if(inFlight.addAndGet(Integer.MIN_VALUE) == Integer.MIN_VALUE)
+				client.close();
+		}
+	}
+
+	/**
+	 * Releases the node when an asynchronous feed completes, then notifies the caller callback
+	 */
+	private static class ReleasingCallback implements FutureCallback<String> {
+		private final Node node;
+		private final FutureCallback<String> callback;
+
+		private ReleasingCallback(Node node, FutureCallback<String> callback) {
+			this.node = node;
+			this.callback = callback;
+		}
+
+		@Override
+		public void completed(String result) {
+			node.release();
+			if(callback != null)
+				callback.completed(result);
+		}
+
+		@Override
+		public void failed(Exception ex) {
+			node.release();
+			if(callback != null)
+				callback.failed(ex);
+		}
+
+		@Override
+		public void cancelled() {
+			node.release();
+			if(callback != null)
+				callback.cancelled();
+		}
+	}
+
+}
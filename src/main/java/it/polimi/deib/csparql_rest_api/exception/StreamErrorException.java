@@ -27,6 +27,9 @@ public class StreamErrorException extends Exception {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/** HTTP status of the response refusing the request, 0 if the error did not come from a response */
+	private int statusCode;
+
 	public StreamErrorException() {
 		// TODO Auto-generated constructor stub
 	}
@@ -35,6 +38,15 @@ public class StreamErrorException extends Exception {
 		super(message);
 	}
 
+	/**
+	 * @param message detail message
+	 * @param statusCode HTTP status of the response refusing the request
+	 */
+	public StreamErrorException(String message, int statusCode) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
 	public StreamErrorException(Throwable cause) {
 		super(cause);
 		// TODO Auto-generated constructor stub
@@ -51,4 +63,11 @@ public class StreamErrorException extends Exception {
 		// TODO Auto-generated constructor stub
 	}
 
+	/**
+	 * @return HTTP status of the response refusing the request, or 0 if the error did not come from a response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
 }
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.exception;
+
+/**
+ * The server did not answer in time: the connection could not be established
+ * or leased within the connection timeout, no data was received within the
+ * socket timeout, or the whole call exceeded the deadline of its operation.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class TimeoutErrorException extends ServerErrorException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public TimeoutErrorException() {
+		super();
+	}
+
+	public TimeoutErrorException(String message) {
+		super(message);
+	}
+
+	public TimeoutErrorException(Throwable cause) {
+		super(cause);
+	}
+
+	public TimeoutErrorException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.feed;
+
+/**
+ * Receives the outcome of each batch sent by a {@link BatchingStreamFeeder}.
+ * <p>
+ * Methods are invoked on the I/O dispatch threads of the client and must not block.
+ *
+ * @author Marco Balduini
+ *
+ */
+public interface BatchListener {
+
+	/**
+	 * Called when a batch has been accepted by the engine
+	 * @param streamName name of the fed stream
+	 * @param models number of models merged into the batch
+	 * @param triples number of triples sent
+	 * @param response json response from server
+	 */
+	public void batchFlushed(String streamName, int models, long triples, String response);
+
+	/**
+	 * Called when a batch could not be delivered
+	 * @param streamName name of the fed stream
+	 * @param models number of models merged into the batch
+	 * @param triples number of triples in the lost batch
+	 * @param cause {@link it.polimi.deib.csparql_rest_api.exception.StreamErrorException} if the engine refused the batch,
+	 * {@link it.polimi.deib.csparql_rest_api.exception.ServerErrorException} if it could not be reached
+	 */
+	public void batchFailed(String streamName, int models, long triples, Exception cause);
+
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.feed;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Client side micro-batching on top of {@link RSP_services_csparql_API}.
+ * <p>
+ * Models fed to the same stream are merged into a single model and sent with
+ * one POST when the batch holds {@code maxModels} models, when it reaches
+ * {@code maxTriples} triples or when the oldest model has been waiting for
+ * {@code maxDelayMillis}, whichever comes first. Batches are sent through
+ * {@link RSP_services_csparql_API#feedStreamAsync(String, Model, FutureCallback)}
+ * and their outcome is reported to the {@link BatchListener}.
+ * <p>
+ * The engine timestamps the content of a POST on arrival, so all the models of
+ * a batch share the same timestamp and identical triples of a batch are sent
+ * once. Pick {@code maxDelayMillis} well below the window step of the queries
+ * reading the stream.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class BatchingStreamFeeder implements Closeable {
+
+	private final RSP_services_csparql_API api;
+	private final int maxModels;
+	private final long maxTriples;
+	private final long maxDelayMillis;
+	private final BatchListener listener;
+
+	private final ConcurrentMap<String, StreamBuffer> buffers = new ConcurrentHashMap<String, StreamBuffer>();
+	private final ScheduledExecutorService timer;
+
+	/** Feeds hold the read lock, so that close waits for the models being added before the last flush */
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private boolean closed = false;
+
+	/**
+	 * @param api client used to send the batches
+	 * @param maxModels maximum number of models merged into a batch
+	 * @param maxTriples number of triples that triggers the flush of a batch
+	 * @param maxDelayMillis maximum time a model waits before its batch is flushed
+	 * @param listener listener notified of the outcome of each batch, not null
+	 */
+	public BatchingStreamFeeder(RSP_services_csparql_API api, int maxModels, long maxTriples, long maxDelayMillis, BatchListener listener) {
+		if(maxModels < 1 || maxTriples < 1 || maxDelayMillis < 1)
+			throw new IllegalArgumentException("Batch thresholds must be positive");
+		if(listener == null)
+			throw new IllegalArgumentException("listener must not be null");
+		this.api = api;
+		this.maxModels = maxModels;
+		this.maxTriples = maxTriples;
+		this.maxDelayMillis = maxDelayMillis;
+		this.listener = listener;
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("rsp-services-batch-timer"));
+		// batches flushed by size cancel their timeout, which would otherwise stay queued until it expires
+		timer.setRemoveOnCancelPolicy(true);
+		this.timer = timer;
+	}
+
+	/**
+	 * Add the model to the current batch of the stream
+	 * @param streamName name of the stream
+	 * @param model model to feed. Its content is copied, so it can be reused by the caller.
+	 * @throws IllegalStateException if the feeder has been closed
+	 */
+	public void feed(String streamName, Model model) {
+		Batch ready;
+		closeLock.readLock().lock();
+		try {
+			if(closed)
+				throw new IllegalStateException("Feeder closed");
+			StreamBuffer buffer = buffers.get(streamName);
+			if(buffer == null){
+				StreamBuffer newBuffer = new StreamBuffer(streamName);
+				buffer = buffers.putIfAbsent(streamName, newBuffer);
+				if(buffer == null)
+					buffer = newBuffer;
+			}
+			ready = buffer.add(model);
+		} finally {
+			closeLock.readLock().unlock();
+		}
+		if(ready != null)
+			send(streamName, ready);
+	}
+
+	/**
+	 * Send the pending batch of the stream, if any
+	 * @param streamName name of the stream
+	 */
+	public void flush(String streamName) {
+		StreamBuffer buffer = buffers.get(streamName);
+		if(buffer != null){
+			Batch ready = buffer.take();
+			if(ready != null)
+				send(streamName, ready);
+		}
+	}
+
+	/**
+	 * Send the pending batches of all the streams
+	 */
+	public void flush() {
+		List<String> streamNames = new ArrayList<String>(buffers.keySet());
+		for(String streamName : streamNames)
+			flush(streamName);
+	}
+
+	/**
+	 * Flush the pending batches, including those of feeds running concurrently, and stop
+	 * the flush timer. Later feeds are rejected. The client is not closed.
+	 */
+	@Override
+	public void close() {
+		closeLock.writeLock().lock();
+		try {
+			if(closed)
+				return;
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+		flush();
+		timer.shutdownNow();
+	}
+
+	private void send(final String streamName, final Batch batch) {
+		api.feedStreamAsync(streamName, batch.model, new FutureCallback<String>() {
+
+			@Override
+			public void completed(String response) {
+				listener.batchFlushed(streamName, batch.models, batch.triples, response);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				listener.batchFailed(streamName, batch.models, batch.triples, ex);
+			}
+
+			@Override
+			public void cancelled() {
+				listener.batchFailed(streamName, batch.models, batch.triples, new IllegalStateException("Batch cancelled"));
+			}
+		});
+	}
+
+	private static class Batch {
+		private final Model model = ModelFactory.createDefaultModel();
+		private int models;
+		private long triples;
+		private ScheduledFuture<?> timeout;
+	}
+
+	private class StreamBuffer {
+
+		private final String streamName;
+		private Batch current;
+
+		private StreamBuffer(String streamName) {
+			this.streamName = streamName;
+		}
+
+		private synchronized Batch add(Model model) {
+			if(current == null){
+				current = new Batch();
+				final Batch scheduled = current;
+				current.timeout = timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						Batch ready = takeIfCurrent(scheduled);
+						if(ready != null)
+							send(streamName, ready);
+					}
+				}, maxDelayMillis, TimeUnit.MILLISECONDS);
+			}
+			current.model.add(model);
+			current.models++;
+			current.triples = current.model.size();
+			if(current.models >= maxModels || current.triples >= maxTriples)
+				return take();
+			return null;
+		}
+
+		private synchronized Batch take() {
+			Batch ready = current;
+			current = null;
+			if(ready != null)
+				ready.timeout.cancel(false);
+			return ready;
+		}
+
+		private synchronized Batch takeIfCurrent(Batch batch) {
+			if(current != batch)
+				return null;
+			current = null;
+			return batch;
+		}
+	}
+
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.feed;
+
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead log of serialized feeds on local disk, read back in append order.
+ * <p>
+ * The log is split in segments of fixed size, named after their progressive
+ * number and memory-mapped while in use, so appending a feed copies its payload
+ * into the page cache without going through the heap. Each record is
+ * <pre>
+ * int length | byte state | byte format | short name length | stream name (UTF-8) | payload
+ * </pre>
+ * The length is written last, so a record interrupted by a crash is never read
+ * back; a length of -1 closes a segment. Reading a record does not remove it:
+ * {@link #remove()} marks the head record as delivered, and segments whose
+ * records have all been delivered are deleted. Opening an existing directory
+ * resumes from the first record not yet delivered.
+ * <p>
+ * Records survive a crash of the JVM; call {@link #force()} to make them
+ * survive a crash of the operating system too.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class FeedSpool implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(FeedSpool.class.getName());
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String SUFFIX = ".spool";
+	private static final int LENGTH_SIZE = 4;
+	private static final int HEADER_SIZE = 1 + 1 + 2;
+	private static final int END_OF_SEGMENT = -1;
+	private static final byte PENDING = 0;
+	private static final byte DELIVERED = 1;
+
+	private final File directory;
+	private final int segmentSize;
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+	/** Position of the next record to read in the first segment */
+	private int readPosition;
+	/** Position of the next record to write in the last segment */
+	private int writePosition;
+	private long pending;
+	private boolean closed = false;
+
+	/**
+	 * Open the spool in the directory with segments of {@link #DEFAULT_SEGMENT_SIZE} bytes
+	 * @param directory directory of the segments, created if missing
+	 * @throws IOException if the directory or its segments cannot be opened
+	 */
+	public FeedSpool(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Open the spool in the directory, recovering the records not yet delivered
+	 * @param directory directory of the segments, created if missing
+	 * @param segmentSize size in bytes of new segments, which bounds the size of a single record
+	 * @throws IOException if the directory or its segments cannot be opened
+	 */
+	public FeedSpool(File directory, int segmentSize) throws IOException {
+		if(segmentSize < 1024)
+			throw new IllegalArgumentException("Segment size must be at least 1024 bytes");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create spool directory " + directory);
+		recover();
+	}
+
+	private void recover() throws IOException {
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SUFFIX);
+			}
+		});
+		Arrays.sort(files);
+		for(File file : files){
+			Segment segment = new Segment(file, Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length())));
+			segments.addLast(segment);
+			int position = 0;
+			while(true){
+				int length = segment.lengthAt(position);
+				if(length <= 0)
+					break;
+				if(segment.buffer.get(position + LENGTH_SIZE) == PENDING)
+					pending++;
+				position += LENGTH_SIZE + length;
+			}
+			writePosition = position;
+		}
+		if(segments.isEmpty() || segments.getLast().lengthAt(writePosition) == END_OF_SEGMENT)
+			roll();
+		if(pending > 0)
+			logger.info("Recovered {} spooled feeds from {}", pending, directory);
+	}
+
+	/**
+	 * Append a feed at the end of the spool
+	 * @param streamName name of the fed stream
+	 * @param serialization serialized data to feed
+	 * @throws IOException if a new segment cannot be created
+	 */
+	public synchronized void append(String streamName, SerializedModel serialization) throws IOException {
+		checkOpen();
+		byte[] name = streamName.getBytes(UTF_8);
+		int length = HEADER_SIZE + name.length + serialization.getLength();
+		if(name.length > Short.MAX_VALUE || LENGTH_SIZE + length + LENGTH_SIZE > segmentSize)
+			throw new IllegalArgumentException("Feed of " + length + " bytes does not fit in a segment of " + segmentSize + " bytes");
+		if(writePosition + LENGTH_SIZE + length + LENGTH_SIZE > segments.getLast().size){
+			segments.getLast().buffer.putInt(writePosition, END_OF_SEGMENT);
+			roll();
+		}
+
+		ByteBuffer buffer = segments.getLast().buffer.duplicate();
+		buffer.position(writePosition + LENGTH_SIZE);
+		buffer.put(PENDING);
+		buffer.put((byte) serialization.getFormat().ordinal());
+		buffer.putShort((short) name.length);
+		buffer.put(name);
+		serialization.writeTo(buffer);
+		segments.getLast().buffer.putInt(writePosition, length);
+		writePosition += LENGTH_SIZE + length;
+		pending++;
+	}
+
+	/**
+	 * @return oldest feed not yet delivered, or null if the spool is empty
+	 * @throws IOException
+	 */
+	public synchronized SpooledFeed peek() throws IOException {
+		int length = head();
+		if(length == 0)
+			return null;
+		ByteBuffer buffer = segments.getFirst().buffer.duplicate();
+		buffer.limit(readPosition + LENGTH_SIZE + length);
+		buffer.position(readPosition + LENGTH_SIZE + 1);
+		FeedFormat format = FeedFormat.values()[buffer.get()];
+		byte[] name = new byte[buffer.getShort()];
+		buffer.get(name);
+		return new SpooledFeed(new String(name, UTF_8), SerializedModel.read(buffer, format));
+	}
+
+	/**
+	 * Mark the oldest feed not yet delivered as delivered
+	 * @throws IOException
+	 */
+	public synchronized void remove() throws IOException {
+		int length = head();
+		if(length == 0)
+			throw new IllegalStateException("Spool empty");
+		Segment segment = segments.getFirst();
+		segment.buffer.put(readPosition + LENGTH_SIZE, DELIVERED);
+		readPosition += LENGTH_SIZE + length;
+		pending--;
+		if(segment.lengthAt(readPosition) == END_OF_SEGMENT)
+			deleteFirst();
+	}
+
+	/**
+	 * Move the read position to the oldest record not yet delivered, deleting the consumed segments
+	 * @return length of the record, 0 if the spool is empty
+	 */
+	private int head() throws IOException {
+		checkOpen();
+		while(true){
+			Segment segment = segments.getFirst();
+			int length = segment.lengthAt(readPosition);
+			if(length == 0)
+				return 0;
+			if(length == END_OF_SEGMENT)
+				deleteFirst();
+			else if(segment.buffer.get(readPosition + LENGTH_SIZE) == DELIVERED)
+				readPosition += LENGTH_SIZE + length;
+			else
+				return length;
+		}
+	}
+
+	/**
+	 * @return number of feeds not yet delivered
+	 */
+	public synchronized long size() {
+		return pending;
+	}
+
+	/**
+	 * @return true if all the feeds have been delivered
+	 */
+	public synchronized boolean isEmpty() {
+		return pending == 0;
+	}
+
+	/**
+	 * @return number of segments on disk
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Write the segments in use to the storage device
+	 */
+	public synchronized void force() {
+		checkOpen();
+		for(Segment segment : segments)
+			segment.buffer.force();
+	}
+
+	/**
+	 * Flush and release the segments. Feeds not yet delivered are read again when the directory is reopened.
+	 */
+	@Override
+	public synchronized void close() {
+		if(closed)
+			return;
+		force();
+		closed = true;
+		segments.clear();
+	}
+
+	private void checkOpen() {
+		if(closed)
+			throw new IllegalStateException("Spool closed");
+	}
+
+	private void roll() throws IOException {
+		long number = segments.isEmpty() ? 0 : segments.getLast().number + 1;
+		segments.addLast(new Segment(new File(directory, String.format("%019d", number) + SUFFIX), number));
+		writePosition = 0;
+	}
+
+	private void deleteFirst() throws IOException {
+		Segment segment = segments.removeFirst();
+		readPosition = 0;
+		if(!segment.file.delete())
+			logger.warn("Unable to delete spool segment {}", segment.file);
+		if(segments.isEmpty())
+			roll();
+	}
+
+	/**
+	 * Feed read back from a {@link FeedSpool}
+	 */
+	public static class SpooledFeed {
+
+		private final String streamName;
+		private final SerializedModel serialization;
+
+		private SpooledFeed(String streamName, SerializedModel serialization) {
+			this.streamName = streamName;
+			this.serialization = serialization;
+		}
+
+		/**
+		 * @return name of the fed stream
+		 */
+		public String getStreamName() {
+			return streamName;
+		}
+
+		/**
+		 * @return serialized data to feed
+		 */
+		public SerializedModel getSerialization() {
+			return serialization;
+		}
+	}
+
+	private class Segment {
+
+		private final File file;
+		private final long number;
+		private final int size;
+		private final MappedByteBuffer buffer;
+
+		private Segment(File file, long number) throws IOException {
+			this.file = file;
+			this.number = number;
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				// existing segments keep the size they were created with
+				size = raf.length() > 0 ? (int) raf.length() : segmentSize;
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			} finally {
+				raf.close();
+			}
+		}
+
+		private int lengthAt(int position) {
+			return position + LENGTH_SIZE > size ? END_OF_SEGMENT : buffer.getInt(position);
+		}
+	}
+
+}
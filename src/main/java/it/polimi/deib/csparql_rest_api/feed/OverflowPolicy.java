@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.feed;
+
+/**
+ * What a {@link QueuedStreamFeeder} does with a model fed to a stream whose
+ * queue is full.
+ *
+ * @author Marco Balduini
+ *
+ */
+public enum OverflowPolicy {
+
+	/** Wait for a free slot, at most for the configured block timeout, then drop the new model */
+	BLOCK,
+
+	/** Drop the oldest queued model to make room for the new one */
+	DROP_OLDEST,
+
+	/** Drop the new model */
+	DROP_NEWEST,
+
+	/**
+	 * Once the queue is half full keep only one model out of each sample rate
+	 * models, dropping the others; drop the new model when the queue is full
+	 */
+	SAMPLE
+
+}
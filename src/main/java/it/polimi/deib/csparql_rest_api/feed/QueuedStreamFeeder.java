@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.feed;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+import it.polimi.deib.csparql_rest_api.StreamHandle;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Bounded per-stream queues in front of {@link RSP_services_csparql_API}.
+ * <p>
+ * {@link #offer(String, Model)} puts the model in the queue of the stream and
+ * returns; the queue is drained through the asynchronous feed methods of the
+ * client, with at most {@code maxInFlight} feeds per stream waiting for the
+ * engine. A queue never holds more than {@code capacity} models: when it is
+ * full the {@link OverflowPolicy} decides whether the producer waits or which
+ * model is dropped, so memory stays bounded and producers are not stalled for
+ * longer than the block timeout when the engine slows down.
+ * <p>
+ * Queues are lock-free: a producer only waits under {@link OverflowPolicy#BLOCK}
+ * with a full queue. Feeds that fail are counted and not retried. Models are
+ * serialized when they are sent, on the calling thread or on an I/O dispatch
+ * thread of the client.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class QueuedStreamFeeder implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(QueuedStreamFeeder.class.getName());
+
+	public static final long DEFAULT_BLOCK_TIMEOUT = -1;
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+
+	private final RSP_services_csparql_API api;
+	private final int capacity;
+	private final int maxInFlight;
+	private final OverflowPolicy policy;
+
+	private final ConcurrentMap<String, StreamQueue> queues = new ConcurrentHashMap<String, StreamQueue>();
+
+	/** Set while the thread drains a queue of this feeder, so that feeds failing inline do not recurse into drain */
+	private final ThreadLocal<Boolean> draining = new ThreadLocal<Boolean>();
+
+	private volatile long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+	private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param api client used to feed the streams
+	 * @param capacity maximum number of models queued for each stream
+	 * @param maxInFlight maximum number of feeds of each stream waiting for the engine
+	 * @param policy what to do when a queue is full
+	 */
+	public QueuedStreamFeeder(RSP_services_csparql_API api, int capacity, int maxInFlight, OverflowPolicy policy) {
+		if(capacity < 1 || maxInFlight < 1)
+			throw new IllegalArgumentException("Capacity and in flight feeds must be positive");
+		this.api = api;
+		this.capacity = capacity;
+		this.maxInFlight = maxInFlight;
+		this.policy = policy;
+	}
+
+	/**
+	 * @param blockTimeout maximum time in milliseconds a producer waits for a free slot under
+	 * {@link OverflowPolicy#BLOCK}. A negative value waits indefinitely.
+	 */
+	public void setBlockTimeout(long blockTimeout) {
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 * @param sampleRate under {@link OverflowPolicy#SAMPLE}, one model out of this many is kept
+	 * while the queue is more than half full
+	 */
+	public void setSampleRate(int sampleRate) {
+		if(sampleRate < 1)
+			throw new IllegalArgumentException("Sample rate must be positive");
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Queue the model for the stream
+	 * @param streamName name of the stream
+	 * @param model model to feed. It is serialized when sent, so the caller must not modify it afterwards.
+	 * @return true if the model has been queued, false if it has been dropped
+	 * @throws StreamErrorException if the name cannot be turned into the URI of the stream
+	 */
+	public boolean offer(String streamName, Model model) throws StreamErrorException {
+		return offer(streamName, (Object) model);
+	}
+
+	/**
+	 * Queue the serialized model for the stream
+	 * @param streamName name of the stream
+	 * @param serialization serialized data to feed
+	 * @return true if the model has been queued, false if it has been dropped
+	 * @throws StreamErrorException if the name cannot be turned into the URI of the stream
+	 */
+	public boolean offer(String streamName, SerializedModel serialization) throws StreamErrorException {
+		return offer(streamName, (Object) serialization);
+	}
+
+	private boolean offer(String streamName, Object item) throws StreamErrorException {
+		if(closed)
+			throw new IllegalStateException("Feeder closed");
+		StreamQueue queue = getQueue(streamName);
+		queue.offered.incrementAndGet();
+		if(!reserve(queue)){
+			queue.dropped.incrementAndGet();
+			return false;
+		}
+		queue.items.offer(item);
+		drain(queue);
+		return true;
+	}
+
+	/**
+	 * Take a slot of the queue, applying the overflow policy when it is full
+	 * @return false if the new item must be dropped
+	 */
+	private boolean reserve(StreamQueue queue) {
+		switch (policy) {
+		case BLOCK:
+			if(queue.space.tryAcquire())
+				return true;
+			try {
+				long timeout = blockTimeout;
+				if(timeout < 0){
+					queue.space.acquire();
+					return true;
+				}
+				return queue.space.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		case DROP_OLDEST:
+			while(!queue.space.tryAcquire()){
+				// the slot of the evicted item passes to the new one
+				if(queue.items.poll() != null){
+					queue.dropped.incrementAndGet();
+					return true;
+				}
+				Thread.yield();
+			}
+			return true;
+		case SAMPLE:
+			if(capacity - queue.space.availablePermits() >= capacity / 2 && queue.sampled.incrementAndGet() % sampleRate != 0)
+				return false;
+			return queue.space.tryAcquire();
+		default:
+			return queue.space.tryAcquire();
+		}
+	}
+
+	private void drain(StreamQueue queue) {
+		if(draining.get() != null)
+			return;
+		draining.set(Boolean.TRUE);
+		try {
+			while(true){
+				int inFlight = queue.inFlight.get();
+				if(inFlight >= maxInFlight)
+					return;
+				if(!queue.inFlight.compareAndSet(inFlight, inFlight + 1))
+					continue;
+				Object item = queue.items.poll();
+				if(item == null){
+					queue.inFlight.decrementAndGet();
+					// an item queued while this thread held the in flight slot would be left behind
+					if(queue.items.isEmpty())
+						return;
+					continue;
+				}
+				queue.space.release();
+				send(queue, item);
+			}
+		} finally {
+			draining.remove();
+		}
+	}
+
+	private void send(final StreamQueue queue, Object item) {
+		FutureCallback<String> callback = new FutureCallback<String>() {
+
+			@Override
+			public void completed(String response) {
+				queue.sent.incrementAndGet();
+				done(queue);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				queue.failed.incrementAndGet();
+				logger.debug("Queued feed of stream " + queue.stream.getName() + " failed", ex);
+				done(queue);
+			}
+
+			@Override
+			public void cancelled() {
+				queue.failed.incrementAndGet();
+				done(queue);
+			}
+		};
+		if(item instanceof Model)
+			queue.stream.feedAsync((Model) item, callback);
+		else
+			queue.stream.feedAsync((SerializedModel) item, callback);
+	}
+
+	private void done(StreamQueue queue) {
+		queue.inFlight.decrementAndGet();
+		drain(queue);
+		if(queue.inFlight.get() == 0 && queue.items.isEmpty()){
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	private StreamQueue getQueue(String streamName) throws StreamErrorException {
+		StreamQueue queue = queues.get(streamName);
+		if(queue == null){
+			StreamQueue newQueue = new StreamQueue(api.getStreamHandle(streamName), capacity);
+			queue = queues.putIfAbsent(streamName, newQueue);
+			if(queue == null)
+				queue = newQueue;
+		}
+		return queue;
+	}
+
+	/**
+	 * Wait until all the queued models have been sent and acknowledged
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return true if all the queues are empty, false if the timeout elapsed first
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitEmpty(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(!isEmpty()){
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				return false;
+			wait(remaining);
+		}
+		return true;
+	}
+
+	private boolean isEmpty() {
+		for(StreamQueue queue : queues.values()){
+			if(queue.inFlight.get() > 0 || !queue.items.isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of models of the stream waiting in the queue
+	 */
+	public int getQueueDepth(String streamName) {
+		StreamQueue queue = queues.get(streamName);
+		return queue == null ? 0 : capacity - queue.space.availablePermits();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of models of the stream dropped by the overflow policy
+	 */
+	public long getDroppedCount(String streamName) {
+		StreamQueue queue = queues.get(streamName);
+		return queue == null ? 0 : queue.dropped.get();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of models of the stream offered to the feeder
+	 */
+	public long getOfferedCount(String streamName) {
+		StreamQueue queue = queues.get(streamName);
+		return queue == null ? 0 : queue.offered.get();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of models of the stream accepted by the engine
+	 */
+	public long getSentCount(String streamName) {
+		StreamQueue queue = queues.get(streamName);
+		return queue == null ? 0 : queue.sent.get();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of models of the stream whose feed failed
+	 */
+	public long getFailedCount(String streamName) {
+		StreamQueue queue = queues.get(streamName);
+		return queue == null ? 0 : queue.failed.get();
+	}
+
+	/**
+	 * @return number of models waiting in the queues of all the streams
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for(StreamQueue queue : queues.values())
+			depth += capacity - queue.space.availablePermits();
+		return depth;
+	}
+
+	/**
+	 * @return number of models of all the streams dropped by the overflow policy
+	 */
+	public long getDroppedCount() {
+		long dropped = 0;
+		for(StreamQueue queue : queues.values())
+			dropped += queue.dropped.get();
+		return dropped;
+	}
+
+	/**
+	 * Stop accepting models. The queued models are still sent; the client is not closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	private static class StreamQueue {
+		private final StreamHandle stream;
+		private final Queue<Object> items = new ConcurrentLinkedQueue<Object>();
+		/** One permit for each free slot of the queue */
+		private final Semaphore space;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicLong sampled = new AtomicLong();
+
+		private final AtomicLong offered = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicLong sent = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+
+		private StreamQueue(StreamHandle stream, int capacity) {
+			this.stream = stream;
+			this.space = new Semaphore(capacity);
+		}
+	}
+
+}
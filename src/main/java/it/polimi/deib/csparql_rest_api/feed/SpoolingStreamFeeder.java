@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.feed;
+
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+import it.polimi.deib.csparql_rest_api.StreamHandle;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.feed.FeedSpool.SpooledFeed;
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Feeds streams through {@link RSP_services_csparql_API}, keeping the feeds
+ * in a {@link FeedSpool} on local disk while the engine is unreachable.
+ * <p>
+ * As long as the spool is empty feeds are sent straight to the engine. When
+ * the engine is unreachable, i.e. a feed fails with {@link ServerErrorException},
+ * with a 5xx, 408 or 429 status, or cannot be exchanged at all, the feed is
+ * appended to the spool, together with all the following ones, so they keep
+ * their order. A background thread replays the spooled feeds oldest first, at
+ * most {@code replayRate} per second, and retries every {@code retryMillis}
+ * while the engine stays unreachable; once the spool is drained feeds go
+ * straight to the engine again. While replaying, {@code 404 Not Found} and
+ * feeds the client cannot send also count as unreachable, since a restarted
+ * engine may not have registered the stream yet, but only for
+ * {@code maxAttempts} attempts: a feed that keeps failing this way would
+ * block the spool, so it is then logged and discarded, like the spooled feeds
+ * definitely refused by the engine with any other 4xx status.
+ * <p>
+ * Pick a replay rate higher than the rate of the producers, or the spool
+ * never drains.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class SpoolingStreamFeeder implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SpoolingStreamFeeder.class.getName());
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 60;
+
+	/** Returned by the client when the request cannot be created or sent */
+	private static final String CLIENT_ERROR = "Error";
+
+	private final RSP_services_csparql_API api;
+	private final FeedSpool spool;
+	private final long retryMillis;
+	private final int maxAttempts;
+	private final ScheduledExecutorService replayer;
+
+	private final AtomicLong spooled = new AtomicLong();
+	private final AtomicLong replayed = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+
+	/** Time before which the replayer does not contact the engine, after a failed replay */
+	private volatile long retryAt = 0;
+
+	/** Attempts that failed with 404 or a client error for the feed at the head of the spool, used by the replayer thread only */
+	private int headAttempts = 0;
+
+	/**
+	 * @param api client used to feed the streams
+	 * @param spool spool holding the feeds while the engine is unreachable. Feeds left by a previous run are replayed.
+	 * @param replayRate maximum number of spooled feeds replayed per second
+	 * @param retryMillis time in milliseconds between two attempts to reach the engine while it is unreachable
+	 */
+	public SpoolingStreamFeeder(RSP_services_csparql_API api, FeedSpool spool, int replayRate, long retryMillis) {
+		this(api, spool, replayRate, retryMillis, DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * @param api client used to feed the streams
+	 * @param spool spool holding the feeds while the engine is unreachable. Feeds left by a previous run are replayed.
+	 * @param replayRate maximum number of spooled feeds replayed per second
+	 * @param retryMillis time in milliseconds between two attempts to reach the engine while it is unreachable
+	 * @param maxAttempts attempts after which a spooled feed still failing with {@code 404 Not Found}, or that the
+	 * client cannot send, is discarded
+	 */
+	public SpoolingStreamFeeder(RSP_services_csparql_API api, FeedSpool spool, int replayRate, long retryMillis, int maxAttempts) {
+		if(replayRate < 1 || retryMillis < 1 || maxAttempts < 1)
+			throw new IllegalArgumentException("Replay rate, retry interval and attempts must be positive");
+		this.api = api;
+		this.spool = spool;
+		this.retryMillis = retryMillis;
+		this.maxAttempts = maxAttempts;
+		this.replayer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("rsp-services-spool-replay"));
+		replayer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				replay();
+			}
+		}, 0, TimeUnit.SECONDS.toMicros(1) / replayRate, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Feed the model to the stream, or spool it if the engine is unreachable or older feeds are spooled
+	 * @param streamName name of the stream
+	 * @param model Jena Model containing data to put into stream
+	 * @return json response from server, or null if the model has been spooled
+	 * @throws StreamErrorException if the engine refused the model
+	 * @throws IOException if the model could not be spooled
+	 */
+	public String feed(String streamName, Model model) throws StreamErrorException, IOException {
+		StreamHandle stream = api.getStreamHandle(streamName);
+		if(spool.isEmpty()){
+			try {
+				String response = stream.feed(model);
+				if(!CLIENT_ERROR.equals(response))
+					return response;
+				logger.warn("Feed to {} failed, spooling feeds", api.getServerAddress());
+			} catch (ServerErrorException e) {
+				logger.warn("{} unreachable, spooling feeds", api.getServerAddress());
+			} catch (StreamErrorException e) {
+				if(!isUnavailable(e))
+					throw e;
+				logger.warn("{} unavailable, spooling feeds", api.getServerAddress());
+			}
+		}
+		return spool(streamName, SerializedModel.serialize(model, api.getFeedFormat()));
+	}
+
+	/**
+	 * Feed the serialized model to the stream, or spool it if the engine is unreachable or older feeds are spooled
+	 * @param streamName name of the stream
+	 * @param serialization serialized data to put into stream
+	 * @return json response from server, or null if the model has been spooled
+	 * @throws StreamErrorException if the engine refused the model
+	 * @throws IOException if the model could not be spooled
+	 */
+	public String feed(String streamName, SerializedModel serialization) throws StreamErrorException, IOException {
+		StreamHandle stream = api.getStreamHandle(streamName);
+		if(spool.isEmpty()){
+			try {
+				String response = stream.feed(serialization);
+				if(!CLIENT_ERROR.equals(response))
+					return response;
+				logger.warn("Feed to {} failed, spooling feeds", api.getServerAddress());
+			} catch (ServerErrorException e) {
+				logger.warn("{} unreachable, spooling feeds", api.getServerAddress());
+			} catch (StreamErrorException e) {
+				if(!isUnavailable(e))
+					throw e;
+				logger.warn("{} unavailable, spooling feeds", api.getServerAddress());
+			}
+		}
+		return spool(streamName, serialization);
+	}
+
+	/**
+	 * @param e error of a feed
+	 * @return true if the engine could not take the feed for now, so it must be retried rather than refused
+	 */
+	private static boolean isUnavailable(StreamErrorException e) {
+		int status = e.getStatusCode();
+		return status >= 500 || status == 408 || status == 429;
+	}
+
+	private String spool(String streamName, SerializedModel serialization) throws IOException {
+		spool.append(streamName, serialization);
+		spooled.incrementAndGet();
+		return null;
+	}
+
+	private void replay() {
+		if(System.currentTimeMillis() < retryAt)
+			return;
+		try {
+			SpooledFeed feed = spool.peek();
+			if(feed == null)
+				return;
+			try {
+				if(replay(feed)){
+					replayed.incrementAndGet();
+				} else if(++headAttempts < maxAttempts){
+					retryAt = System.currentTimeMillis() + retryMillis;
+					return;
+				} else {
+					logger.error("Spooled feed of stream {} not sent after {} attempts, discarding it", feed.getStreamName(), headAttempts);
+					discarded.incrementAndGet();
+				}
+			} catch (StreamErrorException e) {
+				if(isUnavailable(e) || (e.getStatusCode() == 404 && ++headAttempts < maxAttempts)){
+					retryAt = System.currentTimeMillis() + retryMillis;
+					return;
+				}
+				logger.error("Spooled feed of stream " + feed.getStreamName() + " refused, discarding it", e);
+				discarded.incrementAndGet();
+			}
+			headAttempts = 0;
+			spool.remove();
+			if(spool.isEmpty())
+				logger.info("Spool replayed to {}", api.getServerAddress());
+		} catch (ServerErrorException e) {
+			retryAt = System.currentTimeMillis() + retryMillis;
+		} catch (IOException e) {
+			logger.error("error while reading the spool", e);
+			retryAt = System.currentTimeMillis() + retryMillis;
+		} catch (RuntimeException e) {
+			// an exception would cancel the replay task
+			logger.error("error while replaying the spool", e);
+			retryAt = System.currentTimeMillis() + retryMillis;
+		}
+	}
+
+	/**
+	 * @return false if the feed could not be exchanged with the engine
+	 */
+	private boolean replay(SpooledFeed feed) throws StreamErrorException, ServerErrorException {
+		SerializedModel serialization = feed.getSerialization();
+		StreamHandle stream = api.getStreamHandle(feed.getStreamName());
+		try {
+			return !CLIENT_ERROR.equals(stream.feed(serialization));
+		} catch (StreamErrorException e) {
+			// the feed may have been spooled in a format the engine does not accept
+			if(serialization.getFormat() == FeedFormat.RDF_JSON || !RSP_services_csparql_API.isFormatRejected(e))
+				throw e;
+			return !CLIENT_ERROR.equals(stream.feed(serialization.translate(FeedFormat.RDF_JSON)));
+		}
+	}
+
+	/**
+	 * @return number of feeds waiting in the spool
+	 */
+	public long getSpoolSize() {
+		return spool.size();
+	}
+
+	/**
+	 * @return number of feeds appended to the spool
+	 */
+	public long getSpooledCount() {
+		return spooled.get();
+	}
+
+	/**
+	 * @return number of spooled feeds delivered to the engine
+	 */
+	public long getReplayedCount() {
+		return replayed.get();
+	}
+
+	/**
+	 * @return number of spooled feeds refused by the engine and discarded
+	 */
+	public long getDiscardedCount() {
+		return discarded.get();
+	}
+
+	/**
+	 * Stop the replay. Spooled feeds stay in the spool; the client and the spool are not closed.
+	 */
+	@Override
+	public void close() {
+		replayer.shutdownNow();
+		try {
+			replayer.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.nio.DefaultHttpClientIODispatch;
+import org.apache.http.impl.nio.pool.BasicNIOConnPool;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
+import org.apache.http.nio.protocol.HttpAsyncRequester;
+import org.apache.http.nio.reactor.IOEventDispatch;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.SyncBasicHttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking HTTP transport based on the httpcore-nio reactor.
+ * <p>
+ * A small, fixed number of I/O dispatch threads multiplexes all the pooled
+ * connections, so the number of requests in flight is bounded only by the
+ * memory needed to hold them and not by the number of threads. Requests that
+ * cannot lease a connection immediately wait in the pool without blocking the
+ * caller.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class AsyncHttpTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncHttpTransport.class.getName());
+
+	private static final AtomicInteger transportCounter = new AtomicInteger();
+
+	private final DefaultConnectingIOReactor ioReactor;
+	private final BasicNIOConnPool pool;
+	private final HttpAsyncRequester requester;
+	private final Thread reactorThread;
+
+	/**
+	 * Create and start a new transport
+	 * @param ioThreads number of I/O dispatch threads
+	 * @param maxTotalConnections maximum number of pooled connections
+	 * @param maxConnectionsPerRoute maximum number of pooled connections per route
+	 * @param connectionTimeout connection timeout in milliseconds
+	 * @param socketTimeout maximum time in milliseconds a connection waiting for a response can stay silent, 0 for no limit
+	 * @throws IOException if the I/O reactor cannot be started
+	 */
+	public AsyncHttpTransport(int ioThreads, int maxTotalConnections, int maxConnectionsPerRoute, int connectionTimeout, int socketTimeout) throws IOException {
+		HttpParams params = new SyncBasicHttpParams();
+		params.setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, connectionTimeout);
+		params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, socketTimeout);
+		params.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, true);
+		params.setParameter(CoreProtocolPNames.USER_AGENT, "rsp-services-api");
+
+		IOReactorConfig config = new IOReactorConfig();
+		config.setIoThreadCount(ioThreads);
+		config.setConnectTimeout(connectionTimeout);
+		config.setTcpNoDelay(true);
+
+		final int id = transportCounter.incrementAndGet();
+		ioReactor = new DefaultConnectingIOReactor(config, new DaemonThreadFactory("rsp-services-async-" + id + "-io"));
+
+		pool = new BasicNIOConnPool(ioReactor, params);
+		pool.setMaxTotal(maxTotalConnections);
+		pool.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+		requester = new HttpAsyncRequester(new ImmutableHttpProcessor(new HttpRequestInterceptor[] {
+				new RequestContent(),
+				new RequestTargetHost(),
+				new RequestConnControl(),
+				new RequestUserAgent()}), new DefaultConnectionReuseStrategy(), params);
+
+		final IOEventDispatch dispatch = new DefaultHttpClientIODispatch(new HttpAsyncRequestExecutor(), params);
+		reactorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ioReactor.execute(dispatch);
+				} catch (InterruptedIOException e) {
+					logger.debug("Async I/O reactor interrupted");
+				} catch (IOException e) {
+					logger.error("Async I/O reactor terminated", e);
+				}
+			}
+		}, "rsp-services-async-" + id + "-reactor");
+		reactorThread.setDaemon(true);
+		reactorThread.start();
+	}
+
+	/**
+	 * Send the request without blocking the calling thread
+	 * @param target target host
+	 * @param request request to send. Entity enclosing requests should carry a repeatable entity.
+	 * @param callback optional callback notified on the I/O dispatch thread when the exchange terminates
+	 * @return future completed with the fully buffered response
+	 */
+	public Future<HttpResponse> execute(HttpHost target, HttpRequest request, FutureCallback<HttpResponse> callback) {
+		return requester.execute(new BasicAsyncRequestProducer(target, request), new BasicAsyncResponseConsumer(), pool, new BasicHttpContext(), callback);
+	}
+
+	/**
+	 * @return statistics of the connection pool used by the transport
+	 */
+	public PoolStats getPoolStats() {
+		return pool.getTotalStats();
+	}
+
+	/**
+	 * Close expired connections and connections idle for longer than the given time
+	 * @param idleTimeout idle time in milliseconds
+	 */
+	public void closeIdleConnections(long idleTimeout) {
+		pool.closeExpired();
+		pool.closeIdle(idleTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the I/O reactor. Requests still in flight are failed.
+	 * @throws IOException
+	 */
+	public void shutdown() throws IOException {
+		pool.shutdown(1000);
+	}
+
+}
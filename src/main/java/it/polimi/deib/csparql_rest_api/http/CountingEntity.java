@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Wraps a request entity counting the bytes actually written to the
+ * connection, so the size of chunked entities is known after the request has
+ * been sent.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class CountingEntity extends HttpEntityWrapper {
+
+	private long written = 0;
+
+	/**
+	 * @param wrapped entity to send
+	 */
+	public CountingEntity(HttpEntity wrapped) {
+		super(wrapped);
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(outstream);
+		try {
+			super.writeTo(counter);
+		} finally {
+			written += counter.getByteCount();
+		}
+	}
+
+	/**
+	 * @return number of bytes written so far
+	 */
+	public long getWrittenBytes() {
+		return written;
+	}
+
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that the background threads of the client
+ * never prevent the JVM from exiting.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+	private final String prefix;
+	private final AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * @param prefix prefix of the thread names, followed by a progressive number
+	 */
+	public DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * {@link ByteArrayOutputStream} that gives access to its internal buffer, so
+ * the written bytes can be sent without the copy made by {@link #toByteArray()}.
+ * Only the first {@link #size()} bytes of the buffer are valid.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class DirectByteArrayOutputStream extends ByteArrayOutputStream {
+
+	public DirectByteArrayOutputStream() {
+		super();
+	}
+
+	public DirectByteArrayOutputStream(int size) {
+		super(size);
+	}
+
+	/**
+	 * @return the internal buffer, valid up to {@link #size()}
+	 */
+	public byte[] buffer() {
+		return buf;
+	}
+
+}
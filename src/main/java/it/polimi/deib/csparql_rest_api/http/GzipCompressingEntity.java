@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Wraps a request entity compressing it with gzip while it is written to the
+ * connection. The compressed length is not known in advance, so the entity is
+ * sent with chunked transfer encoding.
+ * <p>
+ * {@link #compress(HttpEntity, long)} chooses between this entity and a
+ * compressed copy held in memory, depending on the size of the entity.
+ * <p>
+ * HttpClient ships the same wrapper as
+ * {@code org.apache.http.client.entity.GzipCompressingEntity} only from 4.3
+ * on, and the client is built on the 4.2 connection manager. This class can
+ * be replaced by the library one when the client moves to 4.3.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class GzipCompressingEntity extends HttpEntityWrapper {
+
+	public static final String GZIP = "gzip";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private GzipCompressingEntity(HttpEntity wrapped) {
+		super(wrapped);
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return new BasicHeader("Content-Encoding", GZIP);
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isChunked() {
+		return true;
+	}
+
+	/**
+	 * Compress the wrapped entity in memory. {@link #writeTo(OutputStream)}
+	 * streams it instead, and is the method used to send the entity.
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		DirectByteArrayOutputStream buffer = new DirectByteArrayOutputStream();
+		writeTo(buffer);
+		return new ByteArrayInputStream(buffer.buffer(), 0, buffer.size());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if(outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		GZIPOutputStream gzip = new GZIPOutputStream(outstream, BUFFER_SIZE);
+		wrappedEntity.writeTo(gzip);
+		// finish without closing the connection stream
+		gzip.finish();
+	}
+
+	/**
+	 * Compress a request entity if it is worth it.
+	 * <p>
+	 * Entities shorter than the threshold and entities that already carry a
+	 * Content-Encoding are returned as they are. Repeatable entities of known
+	 * length are compressed in memory, so the result has a known length and
+	 * can be sent more than once, also by the asynchronous transport. Other
+	 * entities, whose length is not known in advance, are compressed while
+	 * they are sent.
+	 * @param entity entity to compress
+	 * @param threshold minimum length in bytes of the entities to compress. A negative value disables compression.
+	 * @return the compressed entity, with Content-Encoding set to gzip, or the entity itself
+	 * @throws IOException if the entity cannot be read
+	 */
+	public static HttpEntity compress(HttpEntity entity, long threshold) throws IOException {
+		if(entity == null || threshold < 0 || entity.getContentEncoding() != null)
+			return entity;
+		long length = entity.getContentLength();
+		if(length >= 0 && length < threshold)
+			return entity;
+		if(length < 0 || length > Integer.MAX_VALUE || !entity.isRepeatable())
+			return new GzipCompressingEntity(entity);
+
+		DirectByteArrayOutputStream buffer = new DirectByteArrayOutputStream(Math.max(64, (int) (length / 4)));
+		GZIPOutputStream gzip = new GZIPOutputStream(buffer, BUFFER_SIZE);
+		entity.writeTo(gzip);
+		gzip.close();
+		ByteArrayEntity compressed = new ByteArrayEntity(buffer.buffer(), 0, buffer.size());
+		compressed.setContentType(entity.getContentType());
+		compressed.setContentEncoding(GZIP);
+		return compressed;
+	}
+
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Request entity that serializes a Jena {@link Model} directly into the
+ * connection output stream while the request is sent, instead of building
+ * the whole serialization in memory first. The content length is not known
+ * in advance, so the entity is sent with chunked transfer encoding.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ModelEntity extends AbstractHttpEntity {
+
+	private final Model model;
+	private final String lang;
+
+	/**
+	 * @param model model to serialize
+	 * @param lang Jena name of the serialization format, e.g. "RDF/JSON"
+	 * @param contentType value of the Content-Type header
+	 */
+	public ModelEntity(Model model, String lang, String contentType) {
+		super();
+		this.model = model;
+		this.lang = lang;
+		setContentType(contentType);
+		setChunked(true);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		DirectByteArrayOutputStream out = new DirectByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.buffer(), 0, out.size());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if(outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		model.write(outstream, lang);
+		outstream.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+}
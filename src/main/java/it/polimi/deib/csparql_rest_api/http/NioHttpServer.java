@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.nio.DefaultHttpServerIODispatch;
+import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandlerResolver;
+import org.apache.http.nio.protocol.HttpAsyncService;
+import org.apache.http.nio.reactor.IOEventDispatch;
+import org.apache.http.nio.reactor.ListenerEndpoint;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.SyncBasicHttpParams;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.protocol.ResponseDate;
+import org.apache.http.protocol.ResponseServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal embedded HTTP server based on the httpcore-nio listening reactor.
+ * <p>
+ * Connections are multiplexed by a small, fixed number of I/O dispatch threads.
+ * Request handlers run on those threads, so they must hand any non trivial work
+ * over to other threads and submit the response asynchronously through the
+ * {@link org.apache.http.nio.protocol.HttpAsyncExchange}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class NioHttpServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(NioHttpServer.class.getName());
+
+	private static final AtomicInteger serverCounter = new AtomicInteger();
+
+	private final DefaultListeningIOReactor ioReactor;
+	private final IOEventDispatch dispatch;
+	private final String name;
+
+	private InetSocketAddress address;
+
+	/**
+	 * @param name name of the server, used for the names of its threads
+	 * @param ioThreads number of I/O dispatch threads
+	 * @param handlers resolver of the request handlers
+	 * @throws IOException if the I/O reactor cannot be created
+	 */
+	public NioHttpServer(String name, int ioThreads, HttpAsyncRequestHandlerResolver handlers) throws IOException {
+		this.name = name + "-" + serverCounter.incrementAndGet();
+
+		HttpParams params = new SyncBasicHttpParams();
+		params.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, true);
+		params.setParameter(CoreProtocolPNames.ORIGIN_SERVER, "rsp-services-api");
+
+		IOReactorConfig config = new IOReactorConfig();
+		config.setIoThreadCount(ioThreads);
+		config.setTcpNoDelay(true);
+		config.setSoReuseAddress(true);
+
+		ioReactor = new DefaultListeningIOReactor(config, new DaemonThreadFactory(this.name + "-io"));
+
+		HttpAsyncService service = new HttpAsyncService(new ImmutableHttpProcessor(new HttpResponseInterceptor[] {
+				new ResponseDate(),
+				new ResponseServer(),
+				new ResponseContent(),
+				new ResponseConnControl()}), new DefaultConnectionReuseStrategy(), handlers, params);
+		dispatch = new DefaultHttpServerIODispatch(service, params);
+	}
+
+	/**
+	 * Start the reactor and bind the listening socket
+	 * @param bindAddress local address to listen on. Port 0 picks a free port.
+	 * @return address the server is listening on
+	 * @throws IOException if the socket cannot be bound
+	 */
+	public synchronized InetSocketAddress start(InetSocketAddress bindAddress) throws IOException {
+		if(address != null)
+			throw new IllegalStateException("Server already started");
+
+		Thread reactorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ioReactor.execute(dispatch);
+				} catch (InterruptedIOException e) {
+					logger.debug("{} I/O reactor interrupted", name);
+				} catch (IOException e) {
+					logger.error(name + " I/O reactor terminated", e);
+				}
+			}
+		}, name + "-reactor");
+		reactorThread.setDaemon(true);
+		reactorThread.start();
+
+		ListenerEndpoint endpoint = ioReactor.listen(bindAddress);
+		try {
+			endpoint.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while binding " + bindAddress);
+		}
+		if(endpoint.getException() != null)
+			throw endpoint.getException();
+		address = (InetSocketAddress) endpoint.getAddress();
+		return address;
+	}
+
+	/**
+	 * @return address the server is listening on, or null if not started
+	 */
+	public synchronized InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Close the listening socket and all the open connections
+	 * @throws IOException
+	 */
+	public void shutdown() throws IOException {
+		ioReactor.shutdown(1000);
+	}
+
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bodies of the responses to read-only requests, by request URI.
+ * <p>
+ * An entry is fresh for a fixed time after it has been stored or revalidated;
+ * a stale entry can still be revalidated with a conditional request if the
+ * server sent an entity tag. Every {@link #clear()} starts a new generation:
+ * responses to requests sent before it are not stored, so a read racing with
+ * a change of the server state cannot bring a stale body back.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ResponseCache {
+
+	private final long ttlNanos;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * @param ttlMillis time in milliseconds an entry stays fresh, 0 to revalidate every entry on each use
+	 */
+	public ResponseCache(long ttlMillis) {
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	}
+
+	/**
+	 * @param uri request URI
+	 * @return the entry of the URI, fresh or stale, or null if there is none
+	 */
+	public Entry get(String uri) {
+		return entries.get(uri);
+	}
+
+	/**
+	 * @return current generation, to be passed to {@link #put(String, String, String, long)}
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Store a response, unless the cache has been cleared since the request was sent
+	 * @param uri request URI
+	 * @param body response body
+	 * @param etag entity tag of the response, null if none
+	 * @param requestGeneration generation read before sending the request
+	 */
+	public void put(String uri, String body, String etag, long requestGeneration) {
+		if(generation.get() != requestGeneration)
+			return;
+		entries.put(uri, new Entry(body, etag, System.nanoTime() + ttlNanos));
+		// a clear between the check and the put must not be missed
+		if(generation.get() != requestGeneration)
+			entries.remove(uri);
+	}
+
+	/**
+	 * Make a stale entry fresh again, after the server confirmed it is still valid
+	 * @param uri request URI
+	 * @param entry revalidated entry
+	 */
+	public void revalidated(String uri, Entry entry) {
+		entries.replace(uri, entry, new Entry(entry.body, entry.etag, System.nanoTime() + ttlNanos));
+	}
+
+	/**
+	 * Drop all the entries
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		entries.clear();
+	}
+
+	/**
+	 * @return number of entries, fresh or stale
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * A cached response body
+	 */
+	public static final class Entry {
+		private final String body;
+		private final String etag;
+		private final long expiresAtNanos;
+
+		private Entry(String body, String etag, long expiresAtNanos) {
+			this.body = body;
+			this.etag = etag;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+
+		/**
+		 * @return the response body
+		 */
+		public String getBody() {
+			return body;
+		}
+
+		/**
+		 * @return entity tag of the response, null if the server did not send one
+		 */
+		public String getETag() {
+			return etag;
+		}
+
+		/**
+		 * @return true if the entry can be used without asking the server
+		 */
+		public boolean isFresh() {
+			return expiresAtNanos - System.nanoTime() > 0;
+		}
+	}
+
+}
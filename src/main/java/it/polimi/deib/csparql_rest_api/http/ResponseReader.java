@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Reads the body of the responses of the blocking client and releases their
+ * connection, whatever happens.
+ * <p>
+ * The body is read into a buffer owned by the calling thread and reused by
+ * the following requests of the same thread; buffers grown beyond
+ * {@link #MAX_RETAINED_BUFFER_SIZE} by a large response are dropped once the
+ * body has been decoded. When the whole body has been read the content stream
+ * is closed, which returns the connection to the pool. When reading fails,
+ * including a body shorter than its Content-Length, the request is aborted,
+ * which closes the connection and returns it to the pool as well, and the
+ * failure is reported to the caller instead of a truncated body.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class ResponseReader {
+
+	public static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int CHUNK_SIZE = 8192;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<DirectByteArrayOutputStream> buffers = new ThreadLocal<DirectByteArrayOutputStream>() {
+		@Override
+		protected DirectByteArrayOutputStream initialValue() {
+			return new DirectByteArrayOutputStream(CHUNK_SIZE);
+		}
+	};
+
+	private static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[CHUNK_SIZE];
+		}
+	};
+
+	private ResponseReader() {
+	}
+
+	/**
+	 * Read the whole body of the response as UTF-8 text and release the connection
+	 * @param request request the response belongs to, aborted if the body cannot be read
+	 * @param response response to read
+	 * @return the body
+	 * @throws IOException if the body cannot be read completely
+	 */
+	public static Body read(HttpUriRequest request, HttpResponse response) throws IOException {
+		HttpEntity entity = response.getEntity();
+		if(entity == null)
+			return new Body("", 0);
+
+		DirectByteArrayOutputStream buffer = buffers.get();
+		buffer.reset();
+		boolean complete = false;
+		try {
+			InputStream content = entity.getContent();
+			if(content != null){
+				try {
+					byte[] chunk = chunks.get();
+					int read;
+					while((read = content.read(chunk)) != -1)
+						buffer.write(chunk, 0, read);
+					long expected = entity.getContentLength();
+					if(expected >= 0 && expected != buffer.size())
+						throw new ConnectionClosedException("Premature end of response body: " + buffer.size() + " of " + expected + " bytes received");
+					complete = true;
+				} finally {
+					if(complete)
+						content.close();
+				}
+			} else {
+				complete = true;
+			}
+		} finally {
+			if(!complete)
+				request.abort();
+		}
+
+		Body body = new Body(new String(buffer.buffer(), 0, buffer.size(), UTF_8), buffer.size());
+		if(buffer.buffer().length > MAX_RETAINED_BUFFER_SIZE)
+			buffers.remove();
+		return body;
+	}
+
+	/**
+	 * Body of a response, decoded
+	 */
+	public static final class Body {
+		private final String content;
+		private final long length;
+
+		private Body(String content, long length) {
+			this.content = content;
+			this.length = length;
+		}
+
+		/**
+		 * @return the body as text
+		 */
+		public String getContent() {
+			return content;
+		}
+
+		/**
+		 * @return number of bytes read
+		 */
+		public long getLength() {
+			return length;
+		}
+	}
+
+}
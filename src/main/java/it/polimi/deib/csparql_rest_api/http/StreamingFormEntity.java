@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * {@code application/x-www-form-urlencoded} request entity whose last field
+ * is read from an {@link InputStream} and URL-encoded on the fly while the
+ * request is sent. Memory usage does not depend on the size of the streamed
+ * field, so it can be used to upload content larger than the heap.
+ * <p>
+ * The entity is sent with chunked transfer encoding and can be written only once.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class StreamingFormEntity extends AbstractHttpEntity {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+	private final List<? extends NameValuePair> parameters;
+	private final String streamedName;
+	private final InputStream streamedContent;
+	private boolean consumed = false;
+
+	/**
+	 * @param parameters form fields sent before the streamed one
+	 * @param streamedName name of the streamed field
+	 * @param streamedContent raw bytes of the streamed field value. It is closed once written.
+	 */
+	public StreamingFormEntity(List<? extends NameValuePair> parameters, String streamedName, InputStream streamedContent) {
+		super();
+		this.parameters = parameters;
+		this.streamedName = streamedName;
+		this.streamedContent = streamedContent;
+		setContentType("application/x-www-form-urlencoded; charset=UTF-8");
+		setChunked(true);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		throw new UnsupportedOperationException("Streaming form entity can only be written to an output stream");
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if(outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		if(consumed)
+			throw new IllegalStateException("Streaming form entity already written");
+		consumed = true;
+
+		byte[] out = new byte[BUFFER_SIZE * 3];
+		try {
+			for(NameValuePair parameter : parameters){
+				writeEncoded(outstream, out, parameter.getName().getBytes("UTF-8"));
+				outstream.write('=');
+				if(parameter.getValue() != null)
+					writeEncoded(outstream, out, parameter.getValue().getBytes("UTF-8"));
+				outstream.write('&');
+			}
+			writeEncoded(outstream, out, streamedName.getBytes("UTF-8"));
+			outstream.write('=');
+
+			byte[] in = new byte[BUFFER_SIZE];
+			int read;
+			while((read = streamedContent.read(in)) != -1){
+				outstream.write(out, 0, encode(in, 0, read, out));
+			}
+			outstream.flush();
+		} finally {
+			streamedContent.close();
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return !consumed;
+	}
+
+	private static void writeEncoded(OutputStream outstream, byte[] out, byte[] value) throws IOException {
+		for(int offset = 0 ; offset < value.length ; offset += BUFFER_SIZE){
+			outstream.write(out, 0, encode(value, offset, Math.min(BUFFER_SIZE, value.length - offset), out));
+		}
+	}
+
+	/**
+	 * Percent-encode {@code length} bytes of {@code in} starting at {@code offset}
+	 * into {@code out}, following the rules of {@link java.net.URLEncoder}
+	 * @return number of bytes written into {@code out}
+	 */
+	private static int encode(byte[] in, int offset, int length, byte[] out) {
+		int pos = 0;
+		for(int i = offset ; i < offset + length ; i++){
+			int b = in[i] & 0xFF;
+			if((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+					|| b == '-' || b == '_' || b == '.' || b == '*'){
+				out[pos++] = (byte) b;
+			} else if(b == ' '){
+				out[pos++] = '+';
+			} else {
+				out[pos++] = '%';
+				out[pos++] = HEX[b >> 4];
+				out[pos++] = HEX[b & 0x0F];
+			}
+		}
+		return pos;
+	}
+
+}
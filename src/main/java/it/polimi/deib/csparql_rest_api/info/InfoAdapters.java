@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.info;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Hand-written {@link TypeAdapter}s of the info objects returned by the
+ * engine. They read the fields straight from a {@link JsonReader}, without
+ * reflection and without building a tree of the document; fields they do not
+ * know are skipped, so newer engines reporting more fields can still be read.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class InfoAdapters {
+
+	public static final TypeAdapter<StreamInfo> STREAM = new TypeAdapter<StreamInfo>() {
+		@Override
+		public void write(JsonWriter out, StreamInfo value) throws IOException {
+			if(value == null){
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("streamIRI").value(value.getStreamIRI());
+			out.name("status").value(value.getStatus());
+			out.endObject();
+		}
+
+		@Override
+		public StreamInfo read(JsonReader in) throws IOException {
+			if(in.peek() == JsonToken.NULL){
+				in.nextNull();
+				return null;
+			}
+			String streamIRI = null;
+			String status = null;
+			in.beginObject();
+			while(in.hasNext()){
+				String name = in.nextName();
+				if(name.equals("streamIRI"))
+					streamIRI = nextString(in);
+				else if(name.equals("status"))
+					status = nextString(in);
+				else
+					in.skipValue();
+			}
+			in.endObject();
+			return new StreamInfo(streamIRI, status);
+		}
+	};
+
+	public static final TypeAdapter<QueryInfo> QUERY = new TypeAdapter<QueryInfo>() {
+		@Override
+		public void write(JsonWriter out, QueryInfo value) throws IOException {
+			if(value == null){
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("id").value(value.getId());
+			out.name("body").value(value.getBody());
+			out.name("status").value(value.getStatus());
+			out.endObject();
+		}
+
+		@Override
+		public QueryInfo read(JsonReader in) throws IOException {
+			if(in.peek() == JsonToken.NULL){
+				in.nextNull();
+				return null;
+			}
+			String id = null;
+			String body = null;
+			String status = null;
+			in.beginObject();
+			while(in.hasNext()){
+				String name = in.nextName();
+				if(name.equals("id"))
+					id = nextString(in);
+				else if(name.equals("body"))
+					body = nextString(in);
+				else if(name.equals("status"))
+					status = nextString(in);
+				else
+					in.skipValue();
+			}
+			in.endObject();
+			return new QueryInfo(id, body, status);
+		}
+	};
+
+	public static final TypeAdapter<ObserverInfo> OBSERVER = new TypeAdapter<ObserverInfo>() {
+		@Override
+		public void write(JsonWriter out, ObserverInfo value) throws IOException {
+			if(value == null){
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("id").value(value.getId());
+			out.name("callbackUrl").value(value.getCallbackUrl());
+			out.endObject();
+		}
+
+		@Override
+		public ObserverInfo read(JsonReader in) throws IOException {
+			if(in.peek() == JsonToken.NULL){
+				in.nextNull();
+				return null;
+			}
+			String id = null;
+			String callbackUrl = null;
+			in.beginObject();
+			while(in.hasNext()){
+				String name = in.nextName();
+				if(name.equals("id"))
+					id = nextString(in);
+				else if(name.equals("callbackUrl"))
+					callbackUrl = nextString(in);
+				else
+					in.skipValue();
+			}
+			in.endObject();
+			return new ObserverInfo(id, callbackUrl);
+		}
+	};
+
+	private InfoAdapters() {
+	}
+
+	/**
+	 * Register the adapters, so that a {@link com.google.gson.Gson} built by the caller
+	 * decodes the info objects without reflection as well
+	 * @param builder builder to register the adapters on
+	 * @return the builder
+	 */
+	public static GsonBuilder register(GsonBuilder builder) {
+		return builder.registerTypeAdapter(StreamInfo.class, STREAM)
+				.registerTypeAdapter(QueryInfo.class, QUERY)
+				.registerTypeAdapter(ObserverInfo.class, OBSERVER);
+	}
+
+	/**
+	 * Decode a single info object
+	 * @param json json serialization of the object
+	 * @param adapter adapter of the object
+	 * @return the object
+	 * @throws JsonParseException if the json is malformed or is not an object
+	 */
+	public static <T> T read(String json, TypeAdapter<T> adapter) {
+		JsonReader reader = new JsonReader(new StringReader(json));
+		try {
+			T value = adapter.read(reader);
+			if(reader.peek() != JsonToken.END_DOCUMENT)
+				throw new JsonSyntaxException("trailing content after the info object");
+			return value;
+		} catch (IOException e) {
+			throw failure(e);
+		} catch (IllegalStateException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	/**
+	 * Decode a json array of info objects
+	 * @param json json serialization of the array
+	 * @param adapter adapter of the elements
+	 * @return the elements
+	 * @throws JsonParseException if the json is malformed or is not an array
+	 */
+	public static <T> List<T> readList(String json, TypeAdapter<T> adapter) {
+		List<T> values = new ArrayList<T>();
+		InfoIterator<T> iterator = new InfoIterator<T>(new StringReader(json), adapter);
+		while(iterator.hasNext())
+			values.add(iterator.next());
+		return values;
+	}
+
+	/**
+	 * @return the exception a failure of the reader is reported with: malformed documents are
+	 * syntax errors, anything else is an I/O error
+	 */
+	static JsonParseException failure(IOException e) {
+		if(e instanceof MalformedJsonException)
+			return new JsonSyntaxException(e);
+		return new JsonIOException(e);
+	}
+
+	private static String nextString(JsonReader in) throws IOException {
+		if(in.peek() == JsonToken.NULL){
+			in.nextNull();
+			return null;
+		}
+		return in.nextString();
+	}
+
+}
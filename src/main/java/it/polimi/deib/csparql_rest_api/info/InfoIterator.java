@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.info;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Iterates over a json array of info objects, decoding each element only when
+ * it is requested, so the array never needs to be held in memory as a whole.
+ * <p>
+ * The iterator closes itself when the end of the array is reached or when
+ * decoding fails; an iterator abandoned before the end must be closed by the
+ * caller. Decoding failures are reported with a {@link JsonSyntaxException}
+ * for malformed documents and a {@link JsonIOException} for I/O errors.
+ * Instances are not thread-safe.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class InfoIterator<T> implements Iterator<T>, Closeable {
+
+	private final JsonReader reader;
+	private final TypeAdapter<T> adapter;
+	private boolean started = false;
+	private boolean exhausted = false;
+	private boolean closed = false;
+
+	/**
+	 * @param in reader of the json array
+	 * @param adapter adapter of the elements
+	 */
+	public InfoIterator(Reader in, TypeAdapter<T> adapter) {
+		this.reader = new JsonReader(in);
+		this.adapter = adapter;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(closed)
+			return false;
+		try {
+			if(!started){
+				reader.beginArray();
+				started = true;
+			}
+			if(reader.hasNext())
+				return true;
+			reader.endArray();
+			exhausted = true;
+		} catch (IOException e) {
+			throw fail(failed(e));
+		} catch (IllegalStateException e) {
+			throw fail(new JsonSyntaxException(e));
+		}
+		try {
+			close();
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+		return false;
+	}
+
+	@Override
+	public T next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		try {
+			return adapter.read(reader);
+		} catch (IOException e) {
+			throw fail(failed(e));
+		} catch (IllegalStateException e) {
+			throw fail(new JsonSyntaxException(e));
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Release the underlying reader. Does nothing if the iterator is already closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed)
+			return;
+		closed = true;
+		release(exhausted);
+	}
+
+	/**
+	 * Called once, when the iterator is closed. Closes the reader.
+	 * @param exhausted true if the whole array has been read
+	 */
+	protected void release(boolean exhausted) throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Called when reading fails, before the iterator is closed
+	 * @param e failure of the reader
+	 * @return the exception thrown to the caller
+	 */
+	protected JsonParseException failed(IOException e) {
+		return InfoAdapters.failure(e);
+	}
+
+	private JsonParseException fail(JsonParseException failure) {
+		try {
+			close();
+		} catch (IOException e) {
+			// the failure is more relevant than the failure to release
+		}
+		return failure;
+	}
+
+}
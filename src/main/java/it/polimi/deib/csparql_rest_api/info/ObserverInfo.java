@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.info;
+
+/**
+ * Information about an observer attached to a query, as returned by
+ * {@code getObserversInformations} and {@code getObserverInformations}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class ObserverInfo {
+
+	private final String id;
+	private final String callbackUrl;
+
+	/**
+	 * @param id id of the observer, either its uri or its local id
+	 * @param callbackUrl url the results are posted to
+	 */
+	public ObserverInfo(String id, String callbackUrl) {
+		this.id = id;
+		this.callbackUrl = callbackUrl;
+	}
+
+	/**
+	 * @return id of the observer, either its uri or its local id depending on the engine
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return url the results are posted to
+	 */
+	public String getCallbackUrl() {
+		return callbackUrl;
+	}
+
+	@Override
+	public String toString() {
+		return "ObserverInfo [id=" + id + ", callbackUrl=" + callbackUrl + "]";
+	}
+
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.info;
+
+/**
+ * Information about a query registered on the engine, as returned by
+ * {@code getQueriesInfo} and {@code getQueryInfo}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class QueryInfo {
+
+	private final String id;
+	private final String body;
+	private final String status;
+
+	/**
+	 * @param id id of the query, either its uri or its name
+	 * @param body body of the query, null if not reported
+	 * @param status status of the query, null if not reported
+	 */
+	public QueryInfo(String id, String body, String status) {
+		this.id = id;
+		this.body = body;
+		this.status = status;
+	}
+
+	/**
+	 * @return id of the query, either its uri or its name depending on the engine
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return body of the query, null if not reported
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * @return status of the query, e.g. RUNNING or PAUSED, null if not reported
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryInfo [id=" + id + ", status=" + status + "]";
+	}
+
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.info;
+
+/**
+ * Information about a stream registered on the engine, as returned by
+ * {@code getStreamsInfo} and {@code getStreamInfo}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class StreamInfo {
+
+	private final String streamIRI;
+	private final String status;
+
+	/**
+	 * @param streamIRI iri of the stream
+	 * @param status status of the stream, null if not reported
+	 */
+	public StreamInfo(String streamIRI, String status) {
+		this.streamIRI = streamIRI;
+		this.status = status;
+	}
+
+	/**
+	 * @return iri of the stream
+	 */
+	public String getStreamIRI() {
+		return streamIRI;
+	}
+
+	/**
+	 * @return status of the stream, e.g. RUNNING, null if not reported
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	@Override
+	public String toString() {
+		return "StreamInfo [streamIRI=" + streamIRI + ", status=" + status + "]";
+	}
+
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.kb;
+
+/**
+ * Outcome of the synchronization of a named model: how many triples were
+ * deleted and inserted, or whether the whole model was uploaded again.
+ *
+ * @author Marco Balduini
+ *
+ */
+public final class ModelDelta {
+
+	private final int deleted;
+	private final int inserted;
+	private final boolean fullUpload;
+
+	ModelDelta(int deleted, int inserted, boolean fullUpload) {
+		this.deleted = deleted;
+		this.inserted = inserted;
+		this.fullUpload = fullUpload;
+	}
+
+	/**
+	 * @return number of triples removed through {@code DELETE DATA}, 0 after a full upload
+	 */
+	public int getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * @return number of triples added through {@code INSERT DATA}, or uploaded by a full upload
+	 */
+	public int getInserted() {
+		return inserted;
+	}
+
+	/**
+	 * @return true if the model was removed and uploaded as a whole
+	 */
+	public boolean isFullUpload() {
+		return fullUpload;
+	}
+
+	/**
+	 * @return true if nothing was sent to the server
+	 */
+	public boolean isEmpty() {
+		return !fullUpload && deleted == 0 && inserted == 0;
+	}
+
+	@Override
+	public String toString() {
+		return fullUpload ? "ModelDelta [full upload of " + inserted + " triples]" : "ModelDelta [deleted=" + deleted + ", inserted=" + inserted + "]";
+	}
+
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.kb;
+
+import it.polimi.deib.csparql_rest_api.http.DirectByteArrayOutputStream;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+
+/**
+ * What was last uploaded for a named model: the sorted 64-bit hashes of its
+ * triples, to compute the delta against a new version of the model, and its
+ * triples in the same order, gzipped, to write the {@code DELETE DATA} of the
+ * triples that are gone. A model holding blank nodes cannot be diffed, since
+ * blank nodes have no stable label, and keeps no triples at all.
+ *
+ * @author Marco Balduini
+ *
+ */
+final class ModelFingerprint {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final long[] hashes;
+	private final byte[] triples;
+
+	private ModelFingerprint(long[] hashes, byte[] triples) {
+		this.hashes = hashes;
+		this.triples = triples;
+	}
+
+	/**
+	 * @return true if the model held no blank node, so that a delta can be computed against it
+	 */
+	boolean isDiffable() {
+		return hashes != null;
+	}
+
+	/**
+	 * @return number of triples of the model, -1 if it is not diffable
+	 */
+	int size() {
+		return hashes == null ? -1 : hashes.length;
+	}
+
+	/**
+	 * Fingerprint of a model that cannot be diffed
+	 */
+	static ModelFingerprint opaque() {
+		return new ModelFingerprint(null, null);
+	}
+
+	/**
+	 * @return the triples of the model in SPARQL syntax, sorted by hash, or null if the model holds blank nodes
+	 */
+	static Encoded encode(Model model) {
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		List<Encoded.Line> lines = new ArrayList<Encoded.Line>((int) Math.min(Integer.MAX_VALUE, model.size()));
+		StmtIterator statements = model.listStatements();
+		try {
+			while(statements.hasNext()){
+				Triple triple = statements.next().asTriple();
+				if(triple.getSubject().isBlank() || triple.getObject().isBlank())
+					return null;
+				String text = FmtUtils.stringForTriple(triple, (PrefixMapping) null);
+				lines.add(new Encoded.Line(hash(md5, text), text));
+			}
+		} finally {
+			statements.close();
+		}
+		Encoded.Line[] sorted = lines.toArray(new Encoded.Line[lines.size()]);
+		Arrays.sort(sorted);
+		return new Encoded(sorted);
+	}
+
+	/**
+	 * Compare the fingerprint with a new version of the model
+	 * @param next triples of the new version
+	 * @param deleted receives the triples that are gone, in SPARQL syntax
+	 * @param inserted receives the triples that are new, in SPARQL syntax
+	 */
+	void diff(Encoded next, List<String> deleted, List<String> inserted) throws IOException {
+		List<Integer> gone = new ArrayList<Integer>();
+		int i = 0, j = 0;
+		while(i < hashes.length || j < next.lines.length){
+			if(j == next.lines.length || (i < hashes.length && hashes[i] < next.lines[j].hash)){
+				gone.add(i++);
+			} else if(i == hashes.length || next.lines[j].hash < hashes[i]){
+				inserted.add(next.lines[j++].text);
+			} else {
+				i++;
+				j++;
+			}
+		}
+		if(gone.isEmpty())
+			return;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(triples)), UTF_8));
+		try {
+			int line = 0;
+			for(int index : gone){
+				for(; line < index; line++)
+					reader.readLine();
+				deleted.add(reader.readLine());
+				line++;
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Triples of a model, sorted by hash
+	 */
+	static final class Encoded {
+		private final Line[] lines;
+
+		private Encoded(Line[] lines) {
+			this.lines = lines;
+		}
+
+		/**
+		 * @return number of triples
+		 */
+		int size() {
+			return lines.length;
+		}
+
+		/**
+		 * @return fingerprint of the model
+		 */
+		ModelFingerprint fingerprint() throws IOException {
+			long[] hashes = new long[lines.length];
+			DirectByteArrayOutputStream buffer = new DirectByteArrayOutputStream(Math.max(64, lines.length * 16));
+			Writer out = new OutputStreamWriter(new GZIPOutputStream(buffer), UTF_8);
+			for(int i = 0; i < lines.length; i++){
+				hashes[i] = lines[i].hash;
+				// the SPARQL syntax escapes line breaks, so each triple takes one line
+				out.write(lines[i].text);
+				out.write('\n');
+			}
+			out.close();
+			return new ModelFingerprint(hashes, Arrays.copyOf(buffer.buffer(), buffer.size()));
+		}
+
+		private static final class Line implements Comparable<Line> {
+			private final long hash;
+			private final String text;
+
+			private Line(long hash, String text) {
+				this.hash = hash;
+				this.text = text;
+			}
+
+			@Override
+			public int compareTo(Line other) {
+				return hash < other.hash ? -1 : (hash == other.hash ? 0 : 1);
+			}
+		}
+	}
+
+	private static long hash(MessageDigest md5, String text) {
+		byte[] digest = md5.digest(text.getBytes(UTF_8));
+		long hash = 0;
+		for(int i = 0; i < 8; i++)
+			hash = (hash << 8) | (digest[i] & 0xff);
+		return hash;
+	}
+
+}
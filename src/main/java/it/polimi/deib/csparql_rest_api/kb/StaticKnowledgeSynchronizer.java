@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.kb;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StaticKnowledgeErrorException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Keeps named models of the static knowledge of an engine in line with local
+ * models, sending only the triples that changed.
+ * <p>
+ * For each IRI it synchronizes, the synchronizer remembers a
+ * {@link ModelFingerprint} of what it last uploaded. {@link #sync(String, Model)}
+ * compares the new version of the model with it and sends the difference as
+ * {@code DELETE DATA} and {@code INSERT DATA} updates through
+ * {@link RSP_services_csparql_API#launchUpdateQuery(String)}, at most
+ * {@link #getMaxTriplesPerUpdate()} triples per update, so the cost of an
+ * update depends on the size of the change rather than the size of the model.
+ * <p>
+ * The model is removed and uploaded as a whole, as
+ * {@code removeStaticModel} and {@code putStaticModel} would do, when the
+ * synchronizer has no fingerprint for the IRI, when the old or the new
+ * version holds blank nodes, which cannot be named in {@code DELETE DATA},
+ * and when the change is as large as the model itself. A failed update drops
+ * the fingerprint, so the next synchronization uploads the whole model.
+ * <p>
+ * The fingerprint assumes that the model is only changed through this
+ * synchronizer; after any other change {@link #forget(String)} must be called.
+ * Triples are compared through 64-bit hashes.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class StaticKnowledgeSynchronizer {
+
+	private static final Logger logger = LoggerFactory.getLogger(StaticKnowledgeSynchronizer.class.getName());
+
+	public static final int DEFAULT_MAX_TRIPLES_PER_UPDATE = 10000;
+
+	private static final String CLIENT_ERROR = "Error";
+
+	private final RSP_services_csparql_API api;
+	private final Map<String, ModelFingerprint> fingerprints = new ConcurrentHashMap<String, ModelFingerprint>();
+	private volatile int maxTriplesPerUpdate = DEFAULT_MAX_TRIPLES_PER_UPDATE;
+
+	/**
+	 * @param api client of the engine
+	 */
+	public StaticKnowledgeSynchronizer(RSP_services_csparql_API api) {
+		this.api = api;
+	}
+
+	/**
+	 * @return maximum number of triples sent in a single update
+	 */
+	public int getMaxTriplesPerUpdate() {
+		return maxTriplesPerUpdate;
+	}
+
+	/**
+	 * @param maxTriplesPerUpdate maximum number of triples sent in a single update
+	 */
+	public void setMaxTriplesPerUpdate(int maxTriplesPerUpdate) {
+		if(maxTriplesPerUpdate < 1)
+			throw new IllegalArgumentException("maxTriplesPerUpdate must be positive");
+		this.maxTriplesPerUpdate = maxTriplesPerUpdate;
+	}
+
+	/**
+	 * Bring the named model of the engine in line with the local model
+	 * @param iri IRI of the named model
+	 * @param model new version of the model
+	 * @return what has been sent to the server
+	 * @throws ServerErrorException
+	 * @throws StaticKnowledgeErrorException if the model cannot be uploaded
+	 * @throws QueryErrorException if an update is rejected
+	 */
+	public synchronized ModelDelta sync(String iri, Model model) throws ServerErrorException, StaticKnowledgeErrorException, QueryErrorException {
+		ModelFingerprint previous = fingerprints.get(iri);
+		ModelFingerprint.Encoded encoded = ModelFingerprint.encode(model);
+		if(previous == null || !previous.isDiffable() || encoded == null)
+			return upload(iri, model, encoded, previous != null);
+
+		List<String> deleted = new ArrayList<String>();
+		List<String> inserted = new ArrayList<String>();
+		try {
+			previous.diff(encoded, deleted, inserted);
+		} catch (IOException e) {
+			logger.error("error while reading the fingerprint of " + iri, e);
+			return upload(iri, model, encoded, true);
+		}
+		if(deleted.size() + inserted.size() >= Math.max(1, encoded.size()))
+			return upload(iri, model, encoded, true);
+
+		fingerprints.remove(iri);
+		update(iri, "DELETE DATA", deleted);
+		update(iri, "INSERT DATA", inserted);
+		remember(iri, encoded);
+		logger.debug("{} synchronized: {} triples deleted, {} inserted", iri, deleted.size(), inserted.size());
+		return new ModelDelta(deleted.size(), inserted.size(), false);
+	}
+
+	/**
+	 * Drop the fingerprint of a named model, so that the next synchronization uploads it as a whole
+	 * @param iri IRI of the named model
+	 */
+	public void forget(String iri) {
+		fingerprints.remove(iri);
+	}
+
+	private ModelDelta upload(String iri, Model model, ModelFingerprint.Encoded encoded, boolean uploaded) throws ServerErrorException, StaticKnowledgeErrorException {
+		fingerprints.remove(iri);
+		try {
+			try {
+				api.removeStaticModel(iri);
+			} catch (StaticKnowledgeErrorException e) {
+				// nothing to remove on the first upload, unless the model was put by someone else
+				if(uploaded)
+					throw e;
+				logger.debug("{} not removed before its first upload", iri);
+			}
+			if(CLIENT_ERROR.equals(api.putStaticModel(iri, model)))
+				throw new StaticKnowledgeErrorException("Error while putting model " + iri);
+		} catch (URISyntaxException e) {
+			throw new StaticKnowledgeErrorException("Invalid address of the static knowledge", e);
+		}
+		remember(iri, encoded);
+		logger.debug("{} uploaded as a whole", iri);
+		return new ModelDelta(0, (int) Math.min(Integer.MAX_VALUE, model.size()), true);
+	}
+
+	private void remember(String iri, ModelFingerprint.Encoded encoded) throws StaticKnowledgeErrorException {
+		if(encoded == null){
+			fingerprints.put(iri, ModelFingerprint.opaque());
+			return;
+		}
+		try {
+			fingerprints.put(iri, encoded.fingerprint());
+		} catch (IOException e) {
+			throw new StaticKnowledgeErrorException("Error while fingerprinting model " + iri, e);
+		}
+	}
+
+	private void update(String iri, String operation, List<String> triples) throws ServerErrorException, QueryErrorException {
+		int max = maxTriplesPerUpdate;
+		for(int from = 0; from < triples.size(); from += max){
+			StringBuilder update = new StringBuilder(operation).append(" { GRAPH <").append(iri).append("> {\n");
+			for(String triple : triples.subList(from, Math.min(triples.size(), from + max)))
+				update.append(triple).append(" .\n");
+			update.append("} }");
+			if(CLIENT_ERROR.equals(api.launchUpdateQuery(update.toString())))
+				throw new QueryErrorException("Error while launching update query on model " + iri);
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.metrics;
+
+import it.polimi.deib.csparql_rest_api.Operation;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-operation metrics of a client, optionally published as JMX MBeans named
+ * {@code it.polimi.deib.csparql_rest_api:type=Client,id=<n>,server=<address>,operation=<method>}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ClientMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClientMetrics.class.getName());
+
+	private static final String DOMAIN = "it.polimi.deib.csparql_rest_api";
+	private static final AtomicInteger clientCounter = new AtomicInteger();
+
+	private final Map<Operation, OperationMetrics> operations = new EnumMap<Operation, OperationMetrics>(Operation.class);
+	private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+
+	public ClientMetrics() {
+		for(Operation operation : Operation.values())
+			operations.put(operation, new OperationMetrics());
+	}
+
+	/**
+	 * @param operation client operation
+	 * @return metrics of the operation
+	 */
+	public OperationMetrics get(Operation operation) {
+		return operations.get(operation);
+	}
+
+	/**
+	 * Publish the metrics of every operation to the platform MBean server
+	 * @param serverAddress address of the engine the client talks to
+	 */
+	public synchronized void registerMBeans(String serverAddress) {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		int id = clientCounter.incrementAndGet();
+		for(Map.Entry<Operation, OperationMetrics> entry : operations.entrySet()){
+			try {
+				ObjectName name = new ObjectName(DOMAIN + ":type=Client,id=" + id + ",server=" + ObjectName.quote(serverAddress)
+						+ ",operation=" + entry.getKey().getMethodName());
+				mbeanServer.registerMBean(entry.getValue(), name);
+				registeredNames.add(name);
+			} catch (JMException e) {
+				logger.error("error while registering metrics MBean", e);
+			}
+		}
+	}
+
+	/**
+	 * Remove the MBeans published by {@link #registerMBeans(String)}
+	 */
+	public synchronized void unregisterMBeans() {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		for(ObjectName name : registeredNames){
+			try {
+				mbeanServer.unregisterMBean(name);
+			} catch (JMException e) {
+				logger.debug("error while unregistering metrics MBean {}", name);
+			}
+		}
+		registeredNames.clear();
+	}
+
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Call and error counters, payload sizes and latency histogram of a single client operation.
+ * All the methods are thread-safe and lock-free.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> errorsByType = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong requestBytes = new AtomicLong();
+	private final AtomicLong responseBytes = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong hedgedCalls = new AtomicLong();
+
+	/**
+	 * Record a call answered from the client cache, without contacting the server
+	 */
+	public void cacheHit() {
+		cacheHits.incrementAndGet();
+	}
+
+	/**
+	 * Record a conditional request answered with {@code 304 Not Modified}
+	 */
+	public void notModified() {
+		notModified.incrementAndGet();
+	}
+
+	/**
+	 * Record a call for which a second, hedged request has been sent
+	 */
+	public void hedged() {
+		hedgedCalls.incrementAndGet();
+	}
+
+	/**
+	 * Record a completed HTTP exchange
+	 * @param latencyNanos duration of the exchange in nanoseconds
+	 * @param sentBytes size of the request body, negative if unknown
+	 * @param receivedBytes size of the response body, negative if unknown
+	 */
+	public void exchange(long latencyNanos, long sentBytes, long receivedBytes) {
+		calls.incrementAndGet();
+		latency.record(latencyNanos / 1000);
+		if(sentBytes > 0)
+			requestBytes.addAndGet(sentBytes);
+		if(receivedBytes > 0)
+			responseBytes.addAndGet(receivedBytes);
+	}
+
+	/**
+	 * Record a failed call
+	 * @param cause error raised by the call
+	 */
+	public void error(Throwable cause) {
+		errors.incrementAndGet();
+		String type = cause.getClass().getSimpleName();
+		AtomicLong counter = errorsByType.get(type);
+		if(counter == null){
+			AtomicLong newCounter = new AtomicLong();
+			counter = errorsByType.putIfAbsent(type, newCounter);
+			if(counter == null)
+				counter = newCounter;
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * @return latency histogram of the operation, in microseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public long getCalls() {
+		return calls.get();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.get();
+	}
+
+	@Override
+	public Map<String, Long> getErrorsByType() {
+		Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for(Map.Entry<String, AtomicLong> entry : errorsByType.entrySet())
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		return snapshot;
+	}
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+	@Override
+	public long getResponseBytes() {
+		return responseBytes.get();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	@Override
+	public long getHedgedCalls() {
+		return hedgedCalls.get();
+	}
+
+	@Override
+	public double getLatencyMean() {
+		return latency.getMean();
+	}
+
+	@Override
+	public long getLatencyP50() {
+		return latency.getPercentile(50);
+	}
+
+	@Override
+	public long getLatencyP99() {
+		return latency.getPercentile(99);
+	}
+
+	@Override
+	public long getLatencyP999() {
+		return latency.getPercentile(99.9);
+	}
+
+	@Override
+	public long getLatencyMax() {
+		return latency.getMax();
+	}
+
+	@Override
+	public void reset() {
+		calls.set(0);
+		errors.set(0);
+		errorsByType.clear();
+		requestBytes.set(0);
+		responseBytes.set(0);
+		cacheHits.set(0);
+		notModified.set(0);
+		hedgedCalls.set(0);
+		latency.reset();
+	}
+
+}
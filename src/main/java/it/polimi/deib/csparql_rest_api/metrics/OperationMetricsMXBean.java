@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of a single client operation. Latencies are in microseconds.
+ * As an MXBean it only exposes open types, so generic JMX consoles can read it without the
+ * client classes; the errors by type are published as a table of exception names and counts.
+ *
+ * @author Marco Balduini
+ *
+ */
+public interface OperationMetricsMXBean {
+
+	public long getCalls();
+
+	public long getErrors();
+
+	public Map<String, Long> getErrorsByType();
+
+	public long getRequestBytes();
+
+	public long getResponseBytes();
+
+	public long getCacheHits();
+
+	public long getNotModified();
+
+	public long getHedgedCalls();
+
+	public double getLatencyMean();
+
+	public long getLatencyP50();
+
+	public long getLatencyP99();
+
+	public long getLatencyP999();
+
+	public long getLatencyMax();
+
+	public void reset();
+
+}
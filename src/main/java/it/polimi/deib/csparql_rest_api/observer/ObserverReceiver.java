@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.observer;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ObserverErrorException;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+import it.polimi.deib.csparql_rest_api.http.NioHttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.nio.protocol.BasicAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncExchange;
+import org.apache.http.nio.protocol.HttpAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandlerRegistry;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded HTTP server receiving the query results pushed by the engine to
+ * the observers registered through it.
+ * <p>
+ * Connections are handled by a non-blocking I/O reactor; each result is handed
+ * to a bounded pool of worker threads that runs the user
+ * {@link ObserverResultHandler}. The engine receives its response only after
+ * the handler has run, so a slow consumer slows down the engine instead of
+ * growing a backlog in memory. When all the workers are busy and the queue is
+ * full the result is refused with {@code 503 Service Unavailable} and counted
+ * as rejected.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * ObserverReceiver receiver = new ObserverReceiver(0, 4, 1000);
+ * receiver.start();
+ * String observerURI = receiver.register(api, queryURI, handler);
+ * ...
+ * receiver.unregister(observerURI);
+ * </pre>
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ObserverReceiver implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ObserverReceiver.class.getName());
+
+	private static final String CALLBACK_PATH = "/observers/";
+	private static final int IO_THREADS = 1;
+
+	private final int port;
+	private final ThreadPoolExecutor workers;
+	private final NioHttpServer server;
+	private final ConcurrentMap<String, Registration> registrations = new ConcurrentHashMap<String, Registration>();
+	/** Ids of the registrations, by observer uri */
+	private final ConcurrentMap<String, String> observerIds = new ConcurrentHashMap<String, String>();
+	private final AtomicLong registrationCounter = new AtomicLong();
+
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile String advertisedHost;
+	private volatile InetSocketAddress address;
+
+	/**
+	 * @param port local port to listen on, 0 to pick a free one
+	 * @param workerThreads number of threads running the result handlers
+	 * @param queueCapacity maximum number of results waiting for a worker
+	 * @throws IOException if the I/O reactor cannot be created
+	 */
+	public ObserverReceiver(int port, int workerThreads, int queueCapacity) throws IOException {
+		this.port = port;
+		this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new DaemonThreadFactory("rsp-services-observer-worker"));
+
+		HttpAsyncRequestHandlerRegistry handlers = new HttpAsyncRequestHandlerRegistry();
+		handlers.register(CALLBACK_PATH + "*", new ResultRequestHandler());
+		this.server = new NioHttpServer("rsp-services-observer", IO_THREADS, handlers);
+	}
+
+	/**
+	 * Start listening. The callback URLs use the local host address unless
+	 * {@link #setAdvertisedHost(String)} has been called; the local host address is
+	 * often a loopback one, which a remote engine cannot reach, so the advertised host
+	 * should be set whenever the engine runs on another machine.
+	 * @throws IOException if the port cannot be bound
+	 */
+	public void start() throws IOException {
+		address = server.start(new InetSocketAddress(port));
+		if(advertisedHost == null){
+			InetAddress localHost = InetAddress.getLocalHost();
+			advertisedHost = localHost.getHostAddress();
+			if(localHost.isLoopbackAddress())
+				logger.warn("Observer receiver advertises the loopback address {}, only a local engine can reach it; set the advertised host", advertisedHost);
+		}
+		logger.info("Observer receiver listening on {}, advertised as {}", address, advertisedHost);
+	}
+
+	/**
+	 * @param advertisedHost host name or address the engine uses to reach this receiver
+	 */
+	public void setAdvertisedHost(String advertisedHost) {
+		this.advertisedHost = advertisedHost;
+	}
+
+	/**
+	 * @return local port the receiver is listening on
+	 */
+	public int getPort() {
+		if(address == null)
+			throw new IllegalStateException("Receiver not started");
+		return address.getPort();
+	}
+
+	/**
+	 * Attach a new observer to the query, delivering its results to the handler
+	 * @param api client of the engine running the query
+	 * @param queryURI unique uri of the query to observe
+	 * @param handler handler of the results
+	 * @return json response from server, i.e. the uri of the new observer
+	 * @throws ServerErrorException
+	 * @throws ObserverErrorException
+	 */
+	public String register(RSP_services_csparql_API api, String queryURI, ObserverResultHandler handler) throws ServerErrorException, ObserverErrorException {
+		String id = String.valueOf(registrationCounter.incrementAndGet());
+		String callbackUrl = "http://" + advertisedHost + ":" + getPort() + CALLBACK_PATH + id;
+		registrations.put(id, new Registration(api, queryURI, handler));
+		String observerURI;
+		try {
+			observerURI = api.addObserver(queryURI, callbackUrl);
+		} catch (ServerErrorException e) {
+			registrations.remove(id);
+			throw e;
+		} catch (ObserverErrorException e) {
+			registrations.remove(id);
+			throw e;
+		}
+		if("Error".equals(observerURI))
+			registrations.remove(id);
+		else
+			observerIds.put(observerURI, id);
+		return observerURI;
+	}
+
+	/**
+	 * Delete from the engine an observer registered through this receiver and stop delivering its results
+	 * @param observerURI unique uri of the observer, as returned by {@link #register(RSP_services_csparql_API, String, ObserverResultHandler)}
+	 * @return json response from server
+	 * @throws IllegalArgumentException if the observer has not been registered through this receiver
+	 * @throws ServerErrorException
+	 * @throws ObserverErrorException
+	 */
+	public String unregister(String observerURI) throws ServerErrorException, ObserverErrorException {
+		String id = observerIds.remove(observerURI);
+		if(id == null)
+			throw new IllegalArgumentException("Observer " + observerURI + " not registered through this receiver");
+		// results pushed while the observer is being deleted are refused
+		Registration registration = registrations.remove(id);
+		return registration.api.deleteObserver(observerURI);
+	}
+
+	/**
+	 * @return number of observers registered through this receiver and not unregistered yet
+	 */
+	public int getObserverCount() {
+		return registrations.size();
+	}
+
+	/**
+	 * @return number of results delivered to the handlers
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * @return number of results refused because the workers were saturated
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return number of results whose handler threw an exception
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return number of results waiting for a worker
+	 */
+	public int getQueueSize() {
+		return workers.getQueue().size();
+	}
+
+	/**
+	 * Stop listening and stop the workers. Observers registered on the engine are not removed.
+	 */
+	@Override
+	public void close() throws IOException {
+		server.shutdown();
+		workers.shutdownNow();
+	}
+
+	private static void respond(HttpAsyncExchange exchange, int status, String message) {
+		HttpResponse response = exchange.getResponse();
+		response.setStatusCode(status);
+		response.setEntity(new NStringEntity(message, ContentType.create("text/plain", "UTF-8")));
+		exchange.submitResponse();
+	}
+
+	private static class Registration {
+		private final RSP_services_csparql_API api;
+		private final String queryURI;
+		private final ObserverResultHandler handler;
+
+		private Registration(RSP_services_csparql_API api, String queryURI, ObserverResultHandler handler) {
+			this.api = api;
+			this.queryURI = queryURI;
+			this.handler = handler;
+		}
+	}
+
+	private class ResultRequestHandler implements HttpAsyncRequestHandler<HttpRequest> {
+
+		@Override
+		public HttpAsyncRequestConsumer<HttpRequest> processRequest(HttpRequest request, HttpContext context) throws HttpException, IOException {
+			return new BasicAsyncRequestConsumer();
+		}
+
+		@Override
+		public void handle(final HttpRequest request, final HttpAsyncExchange exchange, HttpContext context) throws HttpException, IOException {
+			final long receivedAt = System.currentTimeMillis();
+			String path = request.getRequestLine().getUri();
+			int query = path.indexOf('?');
+			String id = path.substring(CALLBACK_PATH.length(), query < 0 ? path.length() : query);
+			final Registration registration = registrations.get(id);
+			if(registration == null || !(request instanceof HttpEntityEnclosingRequest)){
+				respond(exchange, HttpStatus.SC_NOT_FOUND, "Unknown observer");
+				return;
+			}
+
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			try {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							String payload = entity == null ? "" : EntityUtils.toString(entity, "UTF-8");
+							String contentType = entity == null || entity.getContentType() == null ? null : entity.getContentType().getValue();
+							registration.handler.onResult(new ObserverResult(registration.queryURI, contentType, payload, receivedAt));
+							received.incrementAndGet();
+							respond(exchange, HttpStatus.SC_OK, "OK");
+						} catch (Exception e) {
+							failed.incrementAndGet();
+							logger.error("error while handling result of query " + registration.queryURI, e);
+							respond(exchange, HttpStatus.SC_INTERNAL_SERVER_ERROR, "Error while handling result");
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				rejected.incrementAndGet();
+				respond(exchange, HttpStatus.SC_SERVICE_UNAVAILABLE, "Observer overloaded");
+			}
+		}
+	}
+
+}
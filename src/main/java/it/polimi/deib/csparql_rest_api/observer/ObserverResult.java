@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.observer;
+
+import java.io.StringReader;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * A query result pushed by the engine to an {@link ObserverReceiver}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public class ObserverResult {
+
+	private final String queryURI;
+	private final String contentType;
+	private final String payload;
+	private final long receivedAt;
+
+	public ObserverResult(String queryURI, String contentType, String payload, long receivedAt) {
+		super();
+		this.queryURI = queryURI;
+		this.contentType = contentType;
+		this.payload = payload;
+		this.receivedAt = receivedAt;
+	}
+
+	/**
+	 * @return unique uri of the observed query
+	 */
+	public String getQueryURI() {
+		return queryURI;
+	}
+
+	/**
+	 * @return content type declared by the engine, or null
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return serialization of the result as sent by the engine
+	 */
+	public String getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return time the result was received, in milliseconds since the epoch
+	 */
+	public long getReceivedAt() {
+		return receivedAt;
+	}
+
+	/**
+	 * Parse the payload of the result of a CONSTRUCT query
+	 * @return new Jena model with the content of the RDF/JSON payload
+	 */
+	public Model asModel() {
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new StringReader(payload), null, "RDF/JSON");
+		return model;
+	}
+
+}
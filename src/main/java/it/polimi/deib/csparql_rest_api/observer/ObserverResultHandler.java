@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.observer;
+
+/**
+ * Receives the query results pushed by the engine to an {@link ObserverReceiver}.
+ *
+ * @author Marco Balduini
+ *
+ */
+public interface ObserverResultHandler {
+
+	/**
+	 * Called on a worker thread of the receiver for every result pushed by the engine.
+	 * The engine does not get its response until this method returns, so slow
+	 * handlers slow down the engine instead of piling up results in memory.
+	 * @param result result pushed by the engine
+	 * @throws Exception reported to the engine as an error response
+	 */
+	public void onResult(ObserverResult result) throws Exception;
+
+}
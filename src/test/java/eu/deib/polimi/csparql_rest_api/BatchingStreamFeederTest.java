@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.feed.BatchListener;
+import it.polimi.deib.csparql_rest_api.feed.BatchingStreamFeeder;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Checks the flush thresholds of the batches and the reporting of their outcome.
+ */
+public class BatchingStreamFeederTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/s";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private RecordingListener listener;
+	private BatchingStreamFeeder feeder;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		api.registerStream(STREAM);
+		listener = new RecordingListener();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(feeder != null)
+			feeder.close();
+		api.close();
+		server.close();
+	}
+
+	public void testFlushOnModelCount() throws Exception {
+		feeder = new BatchingStreamFeeder(api, 3, 1000, 60000, listener);
+		feeder.feed(STREAM, model(0, 1));
+		feeder.feed(STREAM, model(1, 1));
+		assertNull(listener.events.poll(200, TimeUnit.MILLISECONDS));
+		feeder.feed(STREAM, model(2, 1));
+		assertEquals("flushed 3 3", listener.events.poll(10, TimeUnit.SECONDS));
+		assertEquals(1, server.getFeedCount(STREAM));
+	}
+
+	public void testFlushOnTripleCount() throws Exception {
+		feeder = new BatchingStreamFeeder(api, 100, 5, 60000, listener);
+		feeder.feed(STREAM, model(0, 2));
+		feeder.feed(STREAM, model(2, 2));
+		assertNull(listener.events.poll(200, TimeUnit.MILLISECONDS));
+		feeder.feed(STREAM, model(4, 2));
+		assertEquals("flushed 3 6", listener.events.poll(10, TimeUnit.SECONDS));
+	}
+
+	public void testIdenticalTriplesAreSentOnce() throws Exception {
+		feeder = new BatchingStreamFeeder(api, 2, 1000, 60000, listener);
+		feeder.feed(STREAM, model(0, 2));
+		feeder.feed(STREAM, model(0, 2));
+		assertEquals("flushed 2 2", listener.events.poll(10, TimeUnit.SECONDS));
+	}
+
+	public void testFlushOnDelay() throws Exception {
+		feeder = new BatchingStreamFeeder(api, 100, 1000, 100, listener);
+		long begin = System.nanoTime();
+		feeder.feed(STREAM, model(0, 1));
+		assertEquals("flushed 1 1", listener.events.poll(10, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) >= 100);
+		assertEquals(1, server.getFeedCount(STREAM));
+	}
+
+	public void testBatchFailed() throws Exception {
+		feeder = new BatchingStreamFeeder(api, 2, 1000, 60000, listener);
+		server.failNext(1, 400);
+		feeder.feed(STREAM, model(0, 1));
+		feeder.feed(STREAM, model(1, 1));
+		assertEquals("failed 2 2 StreamErrorException", listener.events.poll(10, TimeUnit.SECONDS));
+		assertEquals(0, server.getFeedCount(STREAM));
+	}
+
+	public void testNullListenerIsRejected() {
+		try {
+			new BatchingStreamFeeder(api, 1, 1, 1, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testCloseFlushesConcurrentFeeds() throws Exception {
+		feeder = new BatchingStreamFeeder(api, 1000, 1000000, 60000, listener);
+		final AtomicInteger accepted = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] feeders = new Thread[4];
+		for(int t = 0; t < feeders.length; t++){
+			final int base = t * 100000;
+			feeders[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for(int i = 0; ; i++){
+							feeder.feed(STREAM, model(base + i, 1));
+							accepted.incrementAndGet();
+						}
+					} catch (IllegalStateException e) {
+						// closed
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			feeders[t].start();
+		}
+		start.countDown();
+		Thread.sleep(50);
+		feeder.close();
+		for(Thread t : feeders)
+			t.join(10000);
+
+		// every model accepted before the close is delivered
+		int delivered = 0;
+		String event;
+		while(delivered < accepted.get() && (event = listener.events.poll(10, TimeUnit.SECONDS)) != null){
+			assertTrue(event, event.startsWith("flushed "));
+			delivered += Integer.parseInt(event.split(" ")[1]);
+		}
+		assertEquals(accepted.get(), delivered);
+		assertNull(listener.events.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	private static Model model(int first, int triples) {
+		Model model = ModelFactory.createDefaultModel();
+		for(int i = first; i < first + triples; i++)
+			model.createResource("http://ex.org/s" + i).addProperty(model.createProperty("http://ex.org/p"), "o");
+		return model;
+	}
+
+	private static class RecordingListener implements BatchListener {
+		private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+		@Override
+		public void batchFlushed(String streamName, int models, long triples, String response) {
+			events.add("flushed " + models + " " + triples);
+		}
+
+		@Override
+		public void batchFailed(String streamName, int models, long triples, Exception cause) {
+			events.add("failed " + models + " " + triples + " " + cause.getClass().getSimpleName());
+		}
+	}
+
+}
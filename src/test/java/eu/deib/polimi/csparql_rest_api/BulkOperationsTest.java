@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.bulk.BulkOperations;
+import it.polimi.deib.csparql_rest_api.bulk.BulkResult;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Deploys and tears down a topology of queries through {@link BulkOperations}.
+ */
+public class BulkOperationsTest extends TestCase {
+
+	private static final int QUERIES = 40;
+	private static final int LATENCY = 50;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private BulkOperations bulk;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		server.setLatency(LATENCY, LATENCY);
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		bulk = new BulkOperations(api, 8);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		bulk.close();
+		api.close();
+		server.close();
+	}
+
+	public void testQueryLifecycle() throws Exception {
+		Map<String, String> queries = new LinkedHashMap<String, String>();
+		for(int i = 0; i < QUERIES; i++)
+			queries.put("q" + i, "REGISTER QUERY q" + i + " AS SELECT ?s FROM STREAM <http://ex.org/s> [RANGE 1s STEP 1s] WHERE { ?s ?p ?o }");
+
+		long start = System.currentTimeMillis();
+		BulkResult<String> registered = bulk.registerQueries(queries);
+		assertTrue("bulk registration not parallel", System.currentTimeMillis() - start < QUERIES * LATENCY / 2);
+		assertTrue(registered.toString(), registered.isSuccessful());
+		assertEquals(new ArrayList<String>(queries.keySet()), new ArrayList<String>(registered.getResults().keySet()));
+		assertEquals(server.getAddress() + "/queries/q7", registered.get("q7"));
+		assertEquals(QUERIES, server.getQueryNames().size());
+
+		List<String> uris = new ArrayList<String>(registered.getResults().values());
+		BulkResult<String> observers = bulk.addObservers(uris, "http://127.0.0.1:1/results");
+		assertTrue(observers.isSuccessful());
+		assertEquals(Arrays.asList("http://127.0.0.1:1/results"), server.getObserverCallbacks("q3"));
+
+		assertTrue(bulk.pauseQueries(uris).isSuccessful());
+		assertTrue(api.getQueryInfo(uris.get(0)).contains("PAUSED"));
+		assertTrue(bulk.restartQueries(uris).isSuccessful());
+		assertTrue(api.getQueryInfo(uris.get(0)).contains("RUNNING"));
+
+		assertTrue(bulk.unregisterQueries(uris).isSuccessful());
+		assertEquals(0, server.getQueryNames().size());
+	}
+
+	public void testFailuresAreReportedPerItem() throws Exception {
+		api.registerQuery("q1", "REGISTER QUERY q1 AS SELECT ?s WHERE { ?s ?p ?o }");
+		Map<String, String> queries = new LinkedHashMap<String, String>();
+		for(int i = 0; i < 3; i++)
+			queries.put("q" + i, "REGISTER QUERY q" + i + " AS SELECT ?s WHERE { ?s ?p ?o }");
+
+		BulkResult<String> registered = bulk.registerQueries(queries);
+		assertFalse(registered.isSuccessful());
+		assertEquals(Arrays.asList("q0", "q2"), new ArrayList<String>(registered.getResults().keySet()));
+		assertTrue(registered.getFailure("q1") instanceof QueryErrorException);
+		assertNull(registered.get("q1"));
+
+		BulkResult<String> paused = bulk.pauseQueries(Arrays.asList(server.getAddress() + "/queries/q0", server.getAddress() + "/queries/missing"));
+		assertNotNull(paused.get(server.getAddress() + "/queries/q0"));
+		assertTrue(paused.getFailure(server.getAddress() + "/queries/missing") instanceof QueryErrorException);
+	}
+
+	public void testDuplicatesAreRejected() throws Exception {
+		try {
+			bulk.registerStreams(Arrays.asList("http://ex.org/s1", "http://ex.org/s2", "http://ex.org/s1"));
+			fail("duplicate stream accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("http://ex.org/s1"));
+		}
+		assertTrue(server.getStreamNames().isEmpty());
+
+		Map<String, List<String>> callbacks = new LinkedHashMap<String, List<String>>();
+		callbacks.put(server.getAddress() + "/queries/q0", Arrays.asList("http://127.0.0.1:1/a", "http://127.0.0.1:1/a"));
+		try {
+			bulk.addObservers(callbacks);
+			fail("duplicate callback accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("http://127.0.0.1:1/a"));
+		}
+	}
+
+	public void testSeveralObserversPerQuery() throws Exception {
+		String queryURI = api.registerQuery("q0", "REGISTER QUERY q0 AS SELECT ?s WHERE { ?s ?p ?o }");
+		Map<String, List<String>> callbacks = new LinkedHashMap<String, List<String>>();
+		callbacks.put(queryURI, Arrays.asList("http://127.0.0.1:1/a", "http://127.0.0.1:1/b"));
+
+		BulkResult<String> observers = bulk.addObservers(callbacks);
+		assertTrue(observers.toString(), observers.isSuccessful());
+		assertEquals(Arrays.asList(queryURI + " http://127.0.0.1:1/a", queryURI + " http://127.0.0.1:1/b"), new ArrayList<String>(observers.getResults().keySet()));
+		assertEquals(2, server.getObserverCallbacks("q0").size());
+	}
+
+}
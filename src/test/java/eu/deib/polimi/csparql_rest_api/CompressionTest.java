@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.Operation;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.http.GzipCompressingEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+
+/**
+ * Sends gzip compressed request bodies and reads gzip compressed responses.
+ */
+public class CompressionTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/s";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private Model model;
+	private String serialization;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		model = ModelFactory.createDefaultModel();
+		Property p = model.createProperty("http://ex.org/vocabulary#observedValue");
+		for(int i = 0; i < 100; i++)
+			model.createResource("http://ex.org/sensors/sensor" + i).addLiteral(p, i);
+		StringWriter writer = new StringWriter();
+		model.write(writer, "RDF/JSON");
+		serialization = writer.toString();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(api != null)
+			api.close();
+		server.close();
+	}
+
+	private void createClient(int threshold, boolean responseCompression) {
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		configuration.setRequestCompressionThreshold(threshold);
+		configuration.setResponseCompression(responseCompression);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+	}
+
+	public void testFeedsAboveThresholdAreCompressed() throws Exception {
+		createClient(1024, false);
+		api.registerStream(STREAM);
+
+		api.feedStream(STREAM, serialization);
+		assertEquals(1, server.getCompressedRequestCount());
+		assertEquals(serialization, server.getLastFeed(STREAM));
+		assertTrue(server.getFeedBytes(STREAM) < serialization.length() / 4);
+		assertEquals(server.getFeedBytes(STREAM), api.getMetrics().get(Operation.FEED_STREAM).getRequestBytes());
+
+		api.feedStream(STREAM, "{}");
+		assertEquals(1, server.getCompressedRequestCount());
+		assertEquals("{}", server.getLastFeed(STREAM));
+
+		// serialized while sent, so the length is not known and the model is always compressed
+		api.feedStream(STREAM, model);
+		assertEquals(2, server.getCompressedRequestCount());
+		Model received = ModelFactory.createDefaultModel();
+		received.read(new StringReader(server.getLastFeed(STREAM)), null, "RDF/JSON");
+		assertTrue(received.isIsomorphicWith(model));
+
+		api.feedStreamAsync(STREAM, serialization).get(5, TimeUnit.SECONDS);
+		assertEquals(3, server.getCompressedRequestCount());
+		assertEquals(serialization, server.getLastFeed(STREAM));
+	}
+
+	public void testCompressionDisabledByDefault() throws Exception {
+		createClient(ClientConfiguration.DEFAULT_REQUEST_COMPRESSION_THRESHOLD, false);
+		api.registerStream(STREAM);
+		api.feedStream(STREAM, serialization);
+		assertEquals(serialization.getBytes("UTF-8").length, server.getFeedBytes(STREAM));
+		api.feedStream(STREAM, model);
+		assertEquals(0, server.getCompressedRequestCount());
+	}
+
+	public void testStaticModelIsCompressed() throws Exception {
+		createClient(0, false);
+		File file = File.createTempFile("static-kb", ".rdf");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			model.write(out);
+			out.close();
+			api.putStaticModel("http://ex.org/kb", file.getAbsolutePath());
+			assertEquals(1, server.getCompressedRequestCount());
+			assertNotNull(server.getStaticModel("http://ex.org/kb"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testCompressedResponsesAreDecompressed() throws Exception {
+		server.setResponseCompression(true);
+		createClient(-1, true);
+		for(int i = 0; i < 20; i++)
+			api.registerQuery("q" + i, "REGISTER QUERY q" + i + " AS SELECT ?s FROM STREAM <" + STREAM + "> [RANGE 1s STEP 1s] WHERE { ?s ?p ?o }");
+		long compressed = server.getCompressedResponseCount();
+		assertTrue(compressed > 0);
+
+		String info = api.getQueriesInfo();
+		assertEquals(compressed + 1, server.getCompressedResponseCount());
+		assertTrue(info, info.startsWith("[") && info.contains("REGISTER QUERY q19"));
+	}
+
+	public void testResponsesAreNotCompressedUnlessAsked() throws Exception {
+		server.setResponseCompression(true);
+		createClient(-1, false);
+		api.registerQuery("q", "REGISTER QUERY q AS SELECT ?s WHERE { ?s ?p ?o }");
+		assertTrue(api.getQueriesInfo().contains("REGISTER QUERY q"));
+		assertEquals(0, server.getCompressedResponseCount());
+	}
+
+	public void testCompressedContentCanBeRead() throws Exception {
+		byte[] payload = serialization.getBytes("UTF-8");
+		HttpEntity[] entities = {
+				GzipCompressingEntity.compress(new ByteArrayEntity(payload), 0),
+				GzipCompressingEntity.compress(new InputStreamEntity(new ByteArrayInputStream(payload), -1), 0)
+		};
+		for(HttpEntity entity : entities){
+			assertEquals(GzipCompressingEntity.GZIP, entity.getContentEncoding().getValue());
+			InputStream content = new GZIPInputStream(entity.getContent());
+			assertEquals(serialization, new String(IOUtils.toByteArray(content), "UTF-8"));
+			content.close();
+		}
+	}
+
+}
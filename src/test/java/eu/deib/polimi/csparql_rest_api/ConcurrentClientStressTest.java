@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.Operation;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.metrics.OperationMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import junit.framework.TestCase;
+
+/**
+ * Shares a single client between an increasing number of feeder threads and
+ * checks that throughput grows with the thread count against a fake server
+ * that simulates a fixed round trip time. The throughput figures themselves
+ * are measured by {@code ConcurrentFeedBenchmark}.
+ */
+public class ConcurrentClientStressTest extends TestCase {
+
+	private static final int SERVER_LATENCY_MS = 5;
+	private static final long RUN_MILLIS = 500;
+
+	private static final String STREAM = "http://ex.org/stream";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer();
+		server.setLatency(SERVER_LATENCY_MS, SERVER_LATENCY_MS);
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(true);
+		api = new RSP_services_csparql_API(server.start(), configuration);
+		api.registerStream(STREAM);
+		for(int i = 0 ; i < 10 ; i++)
+			api.registerStream(STREAM + i);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		api.close();
+		server.close();
+	}
+
+	public void testThroughputScalesWithThreads() throws Exception {
+		double single = run(1);
+		double eight = run(8);
+		assertTrue("throughput did not scale: " + single + " vs " + eight, eight > single * 2);
+	}
+
+	public void testAsyncFeedsKeepManyRequestsInFlight() throws Exception {
+		int feeds = 2000;
+		List<Future<String>> futures = new ArrayList<Future<String>>(feeds);
+		long begin = System.nanoTime();
+		for(int i = 0 ; i < feeds ; i++)
+			futures.add(api.feedStreamAsync(STREAM + (i % 10), "{}"));
+		for(Future<String> f : futures)
+			assertTrue(f.get(30, TimeUnit.SECONDS).endsWith("succesfully fed"));
+		long elapsed = System.nanoTime() - begin;
+		// one request at a time would take feeds * SERVER_LATENCY_MS
+		assertTrue("async feeds were not overlapped: " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms",
+				elapsed < TimeUnit.MILLISECONDS.toNanos(feeds * SERVER_LATENCY_MS / 4));
+	}
+
+	public void testAsyncFeedFailsWithServerError() throws Exception {
+		server.close();
+		try {
+			api.feedStreamAsync(STREAM, "{}").get(30, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServerErrorException);
+		}
+	}
+
+	public void testMetricsAreRecordedAndPublished() throws Exception {
+		for(int i = 0 ; i < 10 ; i++)
+			api.feedStream(STREAM, "{}");
+		OperationMetrics feeds = api.getMetrics().get(Operation.FEED_STREAM);
+		assertEquals(10, feeds.getCalls());
+		assertEquals(0, feeds.getErrors());
+		assertEquals(20, feeds.getRequestBytes());
+		assertEquals(10 * ("\"Stream " + STREAM + " succesfully fed\"").length(), feeds.getResponseBytes());
+		assertTrue(feeds.getLatencyP50() >= SERVER_LATENCY_MS * 1000 / 2);
+
+		server.close();
+		try {
+			api.feedStream(STREAM, "{}");
+			fail();
+		} catch (ServerErrorException e) {
+			assertEquals(1, feeds.getErrors());
+			assertEquals(Long.valueOf(1), feeds.getErrorsByType().get("ServerErrorException"));
+		}
+
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		Set<ObjectName> names = mbeanServer.queryNames(new ObjectName("it.polimi.deib.csparql_rest_api:type=Client,operation=feedStream,*"), null);
+		boolean published = false;
+		for(ObjectName name : names){
+			if(Long.valueOf(10).equals(mbeanServer.getAttribute(name, "Calls"))){
+				published = true;
+				TabularData errorsByType = (TabularData) mbeanServer.getAttribute(name, "ErrorsByType");
+				assertEquals(Long.valueOf(1), errorsByType.get(new Object[]{"ServerErrorException"}).get("value"));
+			}
+		}
+		assertTrue(published);
+
+		api.close();
+		assertTrue(mbeanServer.queryNames(new ObjectName("it.polimi.deib.csparql_rest_api:type=Client,*"), null).isEmpty());
+	}
+
+	private double run(int threads) throws InterruptedException {
+		final AtomicLong completed = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+		Thread[] feeders = new Thread[threads];
+		for(int i = 0 ; i < threads ; i++){
+			final String streamName = STREAM + i;
+			feeders[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						while(System.nanoTime() < deadline){
+							String response = api.feedStream(streamName, "{}");
+							if(response.endsWith("succesfully fed"))
+								completed.incrementAndGet();
+							else
+								failed.incrementAndGet();
+						}
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					}
+				}
+			});
+			feeders[i].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for(Thread t : feeders)
+			t.join();
+		long elapsed = System.nanoTime() - begin;
+		assertEquals(0, failed.get());
+		return completed.get() * 1e9 / elapsed;
+	}
+}
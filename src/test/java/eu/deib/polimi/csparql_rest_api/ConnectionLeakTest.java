@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Drives a small connection pool with successful, failing and truncated
+ * responses and checks that every connection is returned to the pool.
+ */
+public class ConnectionLeakTest extends TestCase {
+
+	private static final int POOL_SIZE = 4;
+	private static final int THREADS = 16;
+	private static final int CALLS_PER_THREAD = 200;
+	private static final String STREAM = "http://ex.org/s";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer();
+		server.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(api != null)
+			api.close();
+		server.close();
+	}
+
+	private ClientConfiguration createConfiguration() {
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		configuration.setMaxTotalConnections(POOL_SIZE);
+		configuration.setMaxConnectionsPerRoute(POOL_SIZE);
+		return configuration;
+	}
+
+	private RSP_services_csparql_API createClient(String address) {
+		return new RSP_services_csparql_API(address, createConfiguration());
+	}
+
+	public void testLeasedConnectionsReturnToZeroUnderLoad() throws Exception {
+		api = createClient(server.getAddress());
+		api.registerStream(STREAM);
+		api.registerQuery("q", "REGISTER QUERY q AS SELECT ?s WHERE { ?s ?p ?o }");
+		server.setErrorRate(0.3, 500);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for(int t = 0; t < THREADS; t++){
+			workers.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for(int i = 0; i < CALLS_PER_THREAD; i++){
+						try {
+							switch(i % 4){
+							case 0:
+								api.feedStream(STREAM, "{}");
+								break;
+							case 1:
+								api.getQueriesInfo();
+								break;
+							case 2:
+								api.getQueryInfo(server.getAddress() + "/queries/missing");
+								break;
+							default:
+								api.registerQuery("q", "REGISTER QUERY q AS SELECT ?s WHERE { ?s ?p ?o }");
+							}
+						} catch (Exception e) {
+							// errors are expected, leaked connections are not
+						}
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+		assertTrue("calls stalled, connection pool exhausted", executor.awaitTermination(60, TimeUnit.SECONDS));
+		for(Future<?> worker : workers)
+			worker.get();
+
+		assertTrue(server.getInjectedErrorCount() > 0);
+		assertEquals(0, api.getPoolStats().getLeased());
+		assertEquals(0, api.getPoolStats().getPending());
+	}
+
+	public void testTruncatedBodiesAreErrorsAndReleaseTheConnection() throws Exception {
+		final ServerSocket truncating = new ServerSocket(0);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while(true){
+						Socket socket = truncating.accept();
+						BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+						String line;
+						while((line = in.readLine()) != null && !line.isEmpty());
+						OutputStream out = socket.getOutputStream();
+						out.write("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 100\r\n\r\n[{\"id\":".getBytes("US-ASCII"));
+						out.flush();
+						socket.close();
+					}
+				} catch (Exception e) {
+					// server socket closed
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try {
+			api = createClient("http://127.0.0.1:" + truncating.getLocalPort());
+			for(int i = 0; i < POOL_SIZE * 5; i++){
+				try {
+					api.getQueriesInfo();
+					fail("truncated body returned");
+				} catch (ServerErrorException e) {
+					assertEquals(0, api.getPoolStats().getLeased());
+				}
+			}
+		} finally {
+			truncating.close();
+		}
+	}
+
+	public void testIdleConnectionsAreEvicted() throws Exception {
+		ClientConfiguration configuration = createConfiguration();
+		configuration.setIdleConnectionTimeout(100);
+		configuration.setEvictionInterval(50);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		api.registerStream(STREAM);
+		api.getStreamsInfo();
+		assertEquals(0, api.getPoolStats().getLeased());
+		assertEquals(1, api.getPoolStats().getAvailable());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while(api.getPoolStats().getAvailable() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertEquals(0, api.getPoolStats().getAvailable());
+
+		// a new connection is opened for the next call
+		assertTrue(api.getStreamsInfo().contains(STREAM));
+		assertEquals(1, api.getPoolStats().getAvailable());
+	}
+
+	public void testConfigurationIsCopiedWhenTheClientIsCreated() throws Exception {
+		ClientConfiguration configuration = createConfiguration();
+		configuration.setEvictionInterval(50);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		configuration.setMaxTotalConnections(1);
+		configuration.setIdleConnectionTimeout(0);
+
+		assertEquals(POOL_SIZE, api.getPoolStats().getMax());
+		api.getStreamsInfo();
+		Thread.sleep(200);
+		assertEquals(1, api.getPoolStats().getAvailable());
+	}
+
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.StaticKnowledgeErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.observer.ObserverReceiver;
+import it.polimi.deib.csparql_rest_api.observer.ObserverResult;
+import it.polimi.deib.csparql_rest_api.observer.ObserverResultHandler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Drives the whole client API against the fake server, including its fault
+ * injection knobs.
+ */
+public class FakeRspServerTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/città";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer();
+		api = new RSP_services_csparql_API(server.start());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		api.close();
+		server.close();
+	}
+
+	public void testStreams() throws Exception {
+		api.registerStream(STREAM);
+		assertEquals(1, server.getStreamNames().size());
+		assertEquals(STREAM, server.getStreamNames().get(0));
+		try {
+			api.registerStream(STREAM);
+			fail();
+		} catch (StreamErrorException e) {
+		}
+
+		api.feedStream(STREAM, "{ \"a\" : \"b\" }");
+		assertEquals(1, server.getFeedCount(STREAM));
+		assertEquals("{ \"a\" : \"b\" }", server.getLastFeed(STREAM));
+		assertEquals(13, server.getFeedBytes(STREAM));
+		assertTrue(api.getStreamsInfo().contains("città"));
+		assertTrue(api.getStreamInfo(STREAM).contains("RUNNING"));
+
+		api.unregisterStream(STREAM);
+		try {
+			api.feedStream(STREAM, "{}");
+			fail();
+		} catch (StreamErrorException e) {
+		}
+	}
+
+	public void testQueriesAndObservers() throws Exception {
+		String queryURI = api.registerQuery("q1", "REGISTER QUERY q1 AS SELECT * WHERE { ?s ?p ?o }");
+		assertEquals(server.getAddress() + "/queries/q1", queryURI);
+		api.pauseQuery(queryURI);
+		assertTrue(api.getQueryInfo(queryURI).contains("PAUSED"));
+		api.restartQuery(queryURI);
+		assertTrue(api.getQueriesInfo().contains("RUNNING"));
+
+		final BlockingQueue<ObserverResult> results = new LinkedBlockingQueue<ObserverResult>();
+		ObserverReceiver receiver = new ObserverReceiver(0, 1, 10);
+		receiver.setAdvertisedHost("127.0.0.1");
+		receiver.start();
+		try {
+			String observerURI = receiver.register(api, queryURI, new ObserverResultHandler() {
+				@Override
+				public void onResult(ObserverResult result) {
+					results.add(result);
+				}
+			});
+			assertTrue(api.getObserverInformations(observerURI).contains("callbackUrl"));
+			assertTrue(api.getObserversInformations(queryURI).contains(observerURI));
+
+			assertEquals(1, server.pushResult("q1", "{}"));
+			ObserverResult result = results.poll(5, TimeUnit.SECONDS);
+			assertEquals(queryURI, result.getQueryURI());
+
+			api.deleteObserver(observerURI);
+			assertEquals(0, server.pushResult("q1", "{}"));
+		} finally {
+			receiver.close();
+		}
+		api.unregisterQuery(queryURI);
+		assertTrue(server.getQueryNames().isEmpty());
+	}
+
+	public void testKnowledgeBase() throws Exception {
+		api.launchUpdateQuery("INSERT DATA { <http://ex.org/a> <http://ex.org/p> \"a & b\" }");
+		assertEquals("INSERT DATA { <http://ex.org/a> <http://ex.org/p> \"a & b\" }", server.getUpdateQueries().get(0));
+
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource("http://ex.org/a").addProperty(model.createProperty("http://ex.org/p"), "a & b");
+		File file = File.createTempFile("static-model", ".rdf");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			model.write(out, "RDF/XML");
+			out.close();
+			api.putStaticModelStreaming("http://ex.org/kb", file.getAbsolutePath());
+		} finally {
+			file.delete();
+		}
+		Model stored = ModelFactory.createDefaultModel().read(new StringReader(server.getStaticModel("http://ex.org/kb")), null, "RDF/XML");
+		assertTrue(stored.isIsomorphicWith(model));
+
+		api.removeStaticModel("http://ex.org/kb");
+		assertNull(server.getStaticModel("http://ex.org/kb"));
+
+		// only RDF/XML can be streamed without being parsed
+		File turtle = File.createTempFile("static-model", ".ttl");
+		try {
+			OutputStream out = new FileOutputStream(turtle);
+			model.write(out, "TURTLE");
+			out.close();
+			api.putStaticModelStreaming("http://ex.org/kb", turtle.getAbsolutePath());
+			fail();
+		} catch (StaticKnowledgeErrorException e) {
+			assertTrue(e.getMessage().contains("not RDF/XML"));
+		} finally {
+			turtle.delete();
+		}
+		assertNull(server.getStaticModel("http://ex.org/kb"));
+	}
+
+	public void testInjectedErrors() throws Exception {
+		api.registerStream(STREAM);
+		server.failNext(2, 503);
+		for(int i = 0 ; i < 2 ; i++){
+			try {
+				api.feedStream(STREAM, "{}");
+				fail();
+			} catch (StreamErrorException e) {
+			}
+		}
+		api.feedStream(STREAM, "{}");
+		assertEquals(2, server.getInjectedErrorCount());
+		assertEquals(1, server.getFeedCount(STREAM));
+	}
+
+	public void testThroughputLimit() throws Exception {
+		api.registerStream(STREAM);
+		server.setMaxRequestsPerSecond(100);
+		long begin = System.nanoTime();
+		for(int i = 0 ; i < 20 ; i++)
+			api.feedStream(STREAM, "{}");
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+		assertTrue("20 requests at 100/s took " + elapsedMillis + "ms", elapsedMillis >= 180);
+	}
+
+}
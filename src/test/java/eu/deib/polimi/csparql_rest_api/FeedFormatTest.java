@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.TripleBuffer;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.StringReader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Feeds models in every format and checks the fallback to RDF/JSON.
+ */
+public class FeedFormatTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/s";
+
+	private FakeRspServer server;
+	private Model model;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		model = ModelFactory.createDefaultModel();
+		model.createResource("http://ex.org/a").addProperty(model.createProperty("http://ex.org/p"), "città \"quoted\"\n");
+		model.createResource().addProperty(model.createProperty("http://ex.org/q"), model.createResource("http://ex.org/b"));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+	}
+
+	public void testEveryFormatIsReceivedIntact() throws Exception {
+		for(FeedFormat format : FeedFormat.values()){
+			RSP_services_csparql_API api = client(format, true);
+			try {
+				api.registerStream(STREAM + format);
+				api.feedStream(STREAM + format, model);
+				assertTrue(format.toString(), received(STREAM + format, format).isIsomorphicWith(model));
+				api.feedStreamAsync(STREAM + format, model, null).get(10, TimeUnit.SECONDS);
+				assertTrue(format.toString(), received(STREAM + format, format).isIsomorphicWith(model));
+			} finally {
+				api.close();
+			}
+		}
+	}
+
+	public void testFallbackToRdfJson() throws Exception {
+		server.setFeedContentTypes("application/json");
+		RSP_services_csparql_API api = client(FeedFormat.N_TRIPLES, true);
+		try {
+			api.registerStream(STREAM);
+			api.feedStream(STREAM, model);
+			assertEquals(FeedFormat.RDF_JSON, api.getFeedFormat());
+			assertTrue(received(STREAM, FeedFormat.RDF_JSON).isIsomorphicWith(model));
+			api.feedStream(STREAM, model);
+			assertEquals(2, server.getFeedCount(STREAM));
+		} finally {
+			api.close();
+		}
+	}
+
+	public void testAsyncFallbackToRdfJson() throws Exception {
+		server.setFeedContentTypes("application/json");
+		RSP_services_csparql_API api = client(FeedFormat.TURTLE, true);
+		try {
+			api.registerStream(STREAM);
+			api.feedStreamAsync(STREAM, model, null).get(10, TimeUnit.SECONDS);
+			assertEquals(FeedFormat.RDF_JSON, api.getFeedFormat());
+			assertTrue(received(STREAM, FeedFormat.RDF_JSON).isIsomorphicWith(model));
+		} finally {
+			api.close();
+		}
+	}
+
+	public void testNoFallbackWhenDisabled() throws Exception {
+		server.setFeedContentTypes("application/json");
+		RSP_services_csparql_API api = client(FeedFormat.N_TRIPLES, false);
+		try {
+			api.registerStream(STREAM);
+			try {
+				api.feedStream(STREAM, model);
+				fail();
+			} catch (StreamErrorException e) {
+			}
+			try {
+				api.feedStreamAsync(STREAM, model, null).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof StreamErrorException);
+			}
+			assertEquals(FeedFormat.N_TRIPLES, api.getFeedFormat());
+		} finally {
+			api.close();
+		}
+	}
+
+	public void testOtherErrorsLeaveTheFormatUnchanged() throws Exception {
+		RSP_services_csparql_API api = client(FeedFormat.N_TRIPLES, true);
+		try {
+			api.registerStream(STREAM);
+			server.failNext(1, 500);
+			try {
+				api.feedStream(STREAM, model);
+				fail();
+			} catch (StreamErrorException e) {
+				assertEquals(500, e.getStatusCode());
+			}
+			server.failNext(1, 400, "Stream " + STREAM + " is paused");
+			try {
+				api.feedStreamAsync(STREAM, model, null).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals(400, ((StreamErrorException) e.getCause()).getStatusCode());
+			}
+			TripleBuffer triples = new TripleBuffer();
+			triples.addLiteral("http://ex.org/a", "http://ex.org/p", "a");
+			server.failNext(1, 500);
+			try {
+				api.feedStream(STREAM, triples);
+				fail();
+			} catch (StreamErrorException e) {
+			}
+			assertEquals(FeedFormat.N_TRIPLES, api.getFeedFormat());
+			assertEquals(0, server.getFeedCount(STREAM));
+
+			api.feedStream(STREAM, model);
+			assertTrue(received(STREAM, FeedFormat.N_TRIPLES).isIsomorphicWith(model));
+			api.feedStream(STREAM, triples);
+			assertEquals(1, received(STREAM, FeedFormat.N_TRIPLES).size());
+		} finally {
+			api.close();
+		}
+	}
+
+	public void testParseErrorFallsBackToRdfJson() throws Exception {
+		RSP_services_csparql_API api = client(FeedFormat.TURTLE, true);
+		try {
+			api.registerStream(STREAM);
+			server.failNext(1, 400, "org.apache.jena.riot.RiotException: [line: 1, col: 1 ] Parse error");
+			api.feedStream(STREAM, model);
+			assertEquals(FeedFormat.RDF_JSON, api.getFeedFormat());
+			assertTrue(received(STREAM, FeedFormat.RDF_JSON).isIsomorphicWith(model));
+		} finally {
+			api.close();
+		}
+	}
+
+	private RSP_services_csparql_API client(FeedFormat format, boolean fallback) {
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setFeedFormat(format);
+		configuration.setFeedFormatFallback(fallback);
+		configuration.setJmxEnabled(false);
+		return new RSP_services_csparql_API(server.getAddress(), configuration);
+	}
+
+	private Model received(String stream, FeedFormat format) {
+		return ModelFactory.createDefaultModel().read(new StringReader(server.getLastFeed(stream)), null, format.getLang());
+	}
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.Operation;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.metrics.OperationMetrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Serves the info methods from the client cache, revalidates them with
+ * conditional requests and hedges slow ones.
+ */
+public class InfoCacheTest extends TestCase {
+
+	private static final String QUERY = "REGISTER QUERY %s AS SELECT ?s WHERE { ?s ?p ?o }";
+
+	private FakeRspServer server;
+	private ClientConfiguration configuration;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(api != null)
+			api.close();
+		server.close();
+	}
+
+	public void testFreshResponsesAreServedFromTheCache() throws Exception {
+		configuration.setInfoCacheTtl(60000);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		api.registerStream("http://ex.org/s");
+		api.registerQuery("q1", String.format(QUERY, "q1"));
+
+		long requests = server.getRequestCount();
+		String info = api.getQueriesInfo();
+		assertEquals(info, api.getQueriesInfo());
+		assertEquals(info, api.getQueriesInfo());
+		assertEquals(requests + 1, server.getRequestCount());
+		assertEquals(2, api.getMetrics().get(Operation.GET_QUERIES_INFO).getCacheHits());
+
+		// feeds do not change the topology
+		api.feedStream("http://ex.org/s", "{}");
+		api.getQueriesInfo();
+		assertEquals(requests + 2, server.getRequestCount());
+
+		api.registerQuery("q2", String.format(QUERY, "q2"));
+		assertTrue(api.getQueriesInfo().contains("q2"));
+		assertEquals(requests + 4, server.getRequestCount());
+
+		api.invalidateInfoCache();
+		api.getQueriesInfo();
+		assertEquals(requests + 5, server.getRequestCount());
+	}
+
+	public void testStaleResponsesAreRevalidated() throws Exception {
+		configuration.setInfoCacheTtl(0);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		api.registerQuery("q1", String.format(QUERY, "q1"));
+
+		String uri = server.getAddress() + "/queries/q1";
+		String info = api.getQueryInfo(uri);
+		assertEquals(info, api.getQueryInfo(uri));
+		assertEquals(info, api.getQueryInfo(uri));
+		assertEquals(2, server.getNotModifiedCount());
+		OperationMetrics metrics = api.getMetrics().get(Operation.GET_QUERY_INFO);
+		assertEquals(2, metrics.getNotModified());
+		assertEquals(0, metrics.getCacheHits());
+
+		api.pauseQuery(uri);
+		assertTrue(api.getQueryInfo(uri).contains("PAUSED"));
+		assertEquals(2, server.getNotModifiedCount());
+	}
+
+	public void testCacheDisabledByDefault() throws Exception {
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		long requests = server.getRequestCount();
+		api.getStreamsInfo();
+		api.getStreamsInfo();
+		assertEquals(requests + 2, server.getRequestCount());
+		assertEquals(0, server.getNotModifiedCount());
+	}
+
+	public void testSlowRequestsAreHedged() throws Exception {
+		final AtomicInteger connections = new AtomicInteger();
+		final ServerSocket stalling = new ServerSocket(0);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while(true){
+						final Socket socket = stalling.accept();
+						final boolean stall = connections.incrementAndGet() == 1;
+						new Thread(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+									String line;
+									while((line = in.readLine()) != null){
+										if(!line.isEmpty())
+											continue;
+										if(stall)
+											continue;
+										OutputStream out = socket.getOutputStream();
+										out.write("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 2\r\n\r\n[]".getBytes("US-ASCII"));
+										out.flush();
+									}
+									socket.close();
+								} catch (Exception e) {
+									// connection closed
+								}
+							}
+						}).start();
+					}
+				} catch (Exception e) {
+					// server socket closed
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try {
+			configuration.setHedgeDelay(100);
+			api = new RSP_services_csparql_API("http://127.0.0.1:" + stalling.getLocalPort(), configuration);
+			long start = System.currentTimeMillis();
+			assertEquals("[]", api.getStreamsInfo());
+			assertTrue(System.currentTimeMillis() - start < 2000);
+			assertEquals(2, connections.get());
+			assertEquals(1, api.getMetrics().get(Operation.GET_STREAMS_INFO).getHedgedCalls());
+
+			// the stalled request has been aborted
+			assertEquals(0, api.getPoolStats().getLeased());
+			assertEquals("[]", api.getStreamsInfo());
+			assertEquals(1, api.getMetrics().get(Operation.GET_STREAMS_INFO).getHedgedCalls());
+		} finally {
+			stalling.close();
+		}
+	}
+
+}
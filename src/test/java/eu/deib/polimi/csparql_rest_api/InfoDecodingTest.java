@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.Operation;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ObserverErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.info.InfoAdapters;
+import it.polimi.deib.csparql_rest_api.info.InfoIterator;
+import it.polimi.deib.csparql_rest_api.info.ObserverInfo;
+import it.polimi.deib.csparql_rest_api.info.QueryInfo;
+import it.polimi.deib.csparql_rest_api.info.StreamInfo;
+import it.polimi.deib.csparql_rest_api.metrics.OperationMetrics;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Decodes the info responses into typed objects, at once and lazily.
+ */
+public class InfoDecodingTest extends TestCase {
+
+	private static final String QUERY = "REGISTER QUERY %s AS SELECT ?s FROM STREAM <http://ex.org/s> [RANGE 1s STEP 1s] WHERE { ?s ?p ?o }";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		api.close();
+		server.close();
+	}
+
+	public void testAdaptersSkipUnknownFields() {
+		List<QueryInfo> queries = InfoAdapters.readList("[{\"id\":\"q1\",\"type\":\"Stream\",\"streams\":[\"a\",{\"b\":1}],\"body\":\"REGISTER\",\"status\":null}, null]", InfoAdapters.QUERY);
+		assertEquals(2, queries.size());
+		assertEquals("q1", queries.get(0).getId());
+		assertEquals("REGISTER", queries.get(0).getBody());
+		assertNull(queries.get(0).getStatus());
+		assertNull(queries.get(1));
+
+		Gson gson = InfoAdapters.register(new GsonBuilder()).create();
+		StreamInfo stream = gson.fromJson(gson.toJson(new StreamInfo("http://ex.org/s", "RUNNING")), StreamInfo.class);
+		assertEquals("http://ex.org/s", stream.getStreamIRI());
+		assertEquals("RUNNING", stream.getStatus());
+	}
+
+	public void testMalformedDocumentsAreRejected() {
+		try {
+			InfoAdapters.readList("Error", InfoAdapters.STREAM);
+			fail();
+		} catch (JsonSyntaxException e) {
+			// expected
+		}
+		try {
+			InfoAdapters.readList("{\"streamIRI\":\"s\"}", InfoAdapters.STREAM);
+			fail();
+		} catch (JsonSyntaxException e) {
+			// expected
+		}
+		try {
+			InfoAdapters.read("{\"id\":\"o\"} {}", InfoAdapters.OBSERVER);
+			fail();
+		} catch (JsonSyntaxException e) {
+			// expected
+		}
+	}
+
+	public void testTypedInfo() throws Exception {
+		api.registerStream("http://ex.org/s");
+		String queryURI = api.registerQuery("q1", String.format(QUERY, "q1"));
+		String observerURI = api.addObserver(queryURI, "http://ex.org/callback");
+
+		List<StreamInfo> streams = api.getStreams();
+		assertEquals(1, streams.size());
+		assertEquals("http://ex.org/s", streams.get(0).getStreamIRI());
+		assertEquals("RUNNING", api.getStream("http://ex.org/s").getStatus());
+
+		List<QueryInfo> queries = api.getQueries();
+		assertEquals(1, queries.size());
+		assertEquals(queryURI, queries.get(0).getId());
+		assertEquals(String.format(QUERY, "q1"), api.getQuery(queryURI).getBody());
+
+		List<ObserverInfo> observers = api.getObservers(queryURI);
+		assertEquals(1, observers.size());
+		assertEquals("http://ex.org/callback", observers.get(0).getCallbackUrl());
+		assertEquals(observerURI, api.getObserver(observerURI).getId());
+	}
+
+	public void testIteratorReleasesTheConnection() throws Exception {
+		Set<String> names = new HashSet<String>();
+		for(int i = 0; i < 500; i++){
+			api.registerQuery("q" + i, String.format(QUERY, "q" + i));
+			names.add(server.getAddress() + "/queries/q" + i);
+		}
+
+		InfoIterator<QueryInfo> queries = api.iterateQueries();
+		assertEquals(1, api.getPoolStats().getLeased());
+		while(queries.hasNext())
+			assertTrue(names.remove(queries.next().getId()));
+		assertTrue(names.isEmpty());
+		assertEquals(0, api.getPoolStats().getLeased());
+		assertEquals(1, api.getPoolStats().getAvailable());
+
+		OperationMetrics metrics = api.getMetrics().get(Operation.GET_QUERIES_INFO);
+		assertEquals(1, metrics.getCalls());
+		assertTrue(metrics.getResponseBytes() > 500 * QUERY.length());
+
+		// abandoned half way
+		queries = api.iterateQueries();
+		queries.next();
+		queries.close();
+		assertFalse(queries.hasNext());
+		assertEquals(0, api.getPoolStats().getLeased());
+		assertEquals(2, metrics.getCalls());
+		assertEquals(0, metrics.getErrors());
+	}
+
+	public void testIteratorReportsErrorStatus() throws Exception {
+		try {
+			api.iterateObservers(server.getAddress() + "/queries/missing");
+			fail();
+		} catch (ObserverErrorException e) {
+			assertTrue(e.getMessage().contains("does not exist"));
+		}
+		assertEquals(0, api.getPoolStats().getLeased());
+		assertEquals(1, api.getMetrics().get(Operation.GET_OBSERVERS_INFO).getErrors());
+	}
+
+}
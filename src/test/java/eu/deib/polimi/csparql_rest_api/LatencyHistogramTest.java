@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the bucket layout and the percentile math of the latency histogram.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0.0, histogram.getMean());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getPercentile(100));
+	}
+
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 0 ; i < 64 ; i++)
+			histogram.record(i);
+		assertEquals(64, histogram.getCount());
+		assertEquals(31.5, histogram.getMean());
+		assertEquals(63, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(0, histogram.getPercentile(1));
+		assertEquals(31, histogram.getPercentile(50));
+		assertEquals(62, histogram.getPercentile(97));
+		assertEquals(63, histogram.getPercentile(100));
+	}
+
+	public void testNegativeValuesAreRecordedAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(100));
+	}
+
+	public void testPercentileIsTheUpperBoundOfItsBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		// 64 and 65 share the first logarithmic bucket
+		histogram.record(64);
+		assertEquals(64, histogram.getPercentile(50));
+		histogram.record(65);
+		histogram.record(66);
+		assertEquals(65, histogram.getPercentile(50));
+		assertEquals(66, histogram.getPercentile(100));
+
+		// 1000 falls in [992, 1007]
+		histogram.reset();
+		histogram.record(1000);
+		histogram.record(1000000);
+		assertEquals(1007, histogram.getPercentile(50));
+	}
+
+	public void testRelativeErrorIsBounded() {
+		for(long value = 64 ; value < (1L << 40) ; value += value / 7 + 1){
+			LatencyHistogram histogram = new LatencyHistogram();
+			histogram.record(value);
+			histogram.record(1L << 41);
+			long percentile = histogram.getPercentile(50);
+			assertTrue(value + " reported as " + percentile, percentile >= value);
+			assertTrue(value + " reported as " + percentile, (double) (percentile - value) / value < 0.032);
+		}
+	}
+
+	public void testHugeValuesReportTheMaximum() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1L << 50);
+		assertEquals(1L << 50, histogram.getPercentile(50));
+		assertEquals(1L << 50, histogram.getMax());
+	}
+
+	public void testPercentilesOfADistribution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 1 ; i <= 1000 ; i++)
+			histogram.record(i * 100);
+		assertEquals(50050.0, histogram.getMean());
+		assertEquals(100000, histogram.getMax());
+		assertWithin(50000, histogram.getPercentile(50));
+		assertWithin(99000, histogram.getPercentile(99));
+		assertWithin(99900, histogram.getPercentile(99.9));
+		assertEquals(100000, histogram.getPercentile(100));
+	}
+
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(10);
+		histogram.record(5000);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+		histogram.record(20);
+		assertEquals(20, histogram.getPercentile(50));
+	}
+
+	public void testConcurrentRecording() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> recorders = new ArrayList<Future<?>>();
+			for(int t = 0 ; t < 4 ; t++){
+				final int offset = t;
+				recorders.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for(int i = 0 ; i < 10000 ; i++)
+							histogram.record(i * 4 + offset);
+						return null;
+					}
+				}));
+			}
+			for(Future<?> recorder : recorders)
+				recorder.get();
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(40000, histogram.getCount());
+		assertEquals(39999, histogram.getMax());
+		assertEquals(19999.5, histogram.getMean());
+		assertWithin(20000, histogram.getPercentile(50));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(expected + " reported as " + actual, actual >= expected && (double) (actual - expected) / expected < 0.032);
+	}
+
+}
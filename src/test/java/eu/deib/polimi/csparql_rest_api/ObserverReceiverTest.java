@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ObserverErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.observer.ObserverReceiver;
+import it.polimi.deib.csparql_rest_api.observer.ObserverResult;
+import it.polimi.deib.csparql_rest_api.observer.ObserverResultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Registers observers through the receiver on the fake server and pushes
+ * results to them, checking delivery, unregistration and overload handling.
+ */
+public class ObserverReceiverTest extends TestCase {
+
+	private static final String QUERY = "REGISTER QUERY q AS SELECT * WHERE { ?s ?p ?o }";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private ObserverReceiver receiver;
+	private String queryURI;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer();
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		queryURI = api.registerQuery("q", QUERY);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(receiver != null)
+			receiver.close();
+		api.close();
+		server.close();
+	}
+
+	private void startReceiver(int workerThreads, int queueCapacity) throws Exception {
+		receiver = new ObserverReceiver(0, workerThreads, queueCapacity);
+		receiver.setAdvertisedHost("127.0.0.1");
+		receiver.start();
+	}
+
+	public void testResultsAreDeliveredUntilUnregistered() throws Exception {
+		startReceiver(1, 10);
+		final BlockingQueue<ObserverResult> results = new LinkedBlockingQueue<ObserverResult>();
+		String observerURI = receiver.register(api, queryURI, new ObserverResultHandler() {
+			@Override
+			public void onResult(ObserverResult result) {
+				results.add(result);
+			}
+		});
+		assertEquals(1, receiver.getObserverCount());
+
+		assertEquals(1, server.pushResult("q", "{\"a\":1}"));
+		ObserverResult result = results.poll(5, TimeUnit.SECONDS);
+		assertEquals(queryURI, result.getQueryURI());
+		assertEquals("{\"a\":1}", result.getPayload());
+		assertEquals(1, receiver.getReceivedCount());
+
+		receiver.unregister(observerURI);
+		assertEquals(0, receiver.getObserverCount());
+		assertTrue(server.getObserverCallbacks("q").isEmpty());
+		assertEquals(0, server.pushResult("q", "{}"));
+
+		try {
+			receiver.unregister(observerURI);
+			fail("observer unregistered twice");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testFailedRegistrationIsDropped() throws Exception {
+		startReceiver(1, 10);
+		try {
+			receiver.register(api, server.getAddress() + "/queries/missing", new ObserverResultHandler() {
+				@Override
+				public void onResult(ObserverResult result) {
+					fail("result of a missing query");
+				}
+			});
+			fail("observer of a missing query registered");
+		} catch (ObserverErrorException e) {
+			// expected
+		}
+		assertEquals(0, receiver.getObserverCount());
+	}
+
+	public void testFailingHandlerIsReported() throws Exception {
+		startReceiver(1, 10);
+		receiver.register(api, queryURI, new ObserverResultHandler() {
+			@Override
+			public void onResult(ObserverResult result) {
+				throw new IllegalStateException("handler failure");
+			}
+		});
+		assertEquals(0, server.pushResult("q", "{}"));
+		assertEquals(1, receiver.getFailedCount());
+		assertEquals(0, receiver.getReceivedCount());
+	}
+
+	public void testSaturatedWorkersRefuseResults() throws Exception {
+		startReceiver(1, 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		receiver.register(api, queryURI, new ObserverResultHandler() {
+			@Override
+			public void onResult(ObserverResult result) {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		ExecutorService engine = Executors.newCachedThreadPool();
+		try {
+			List<Future<Integer>> pushes = new ArrayList<Future<Integer>>();
+			Callable<Integer> push = new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return server.pushResult("q", "{}");
+				}
+			};
+			// the first result occupies the only worker, the second one waits in the queue
+			pushes.add(engine.submit(push));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			pushes.add(engine.submit(push));
+			long deadline = System.currentTimeMillis() + 5000;
+			while(receiver.getQueueSize() == 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(1, receiver.getQueueSize());
+
+			assertEquals(0, server.pushResult("q", "{}"));
+			assertEquals(1, receiver.getRejectedCount());
+
+			release.countDown();
+			for(Future<Integer> delivered : pushes)
+				assertEquals(1, delivered.get(5, TimeUnit.SECONDS).intValue());
+			assertEquals(2, receiver.getReceivedCount());
+		} finally {
+			release.countDown();
+			engine.shutdownNow();
+		}
+	}
+
+}
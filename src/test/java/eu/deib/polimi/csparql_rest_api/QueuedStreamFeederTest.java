@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.feed.OverflowPolicy;
+import it.polimi.deib.csparql_rest_api.feed.QueuedStreamFeeder;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Overloads a slow engine through a {@link QueuedStreamFeeder} with each overflow policy.
+ */
+public class QueuedStreamFeederTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/s";
+	private static final int CAPACITY = 10;
+	private static final int MODELS = 200;
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		server.setLatency(20, 20);
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		api.registerStream(STREAM);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		api.close();
+		server.close();
+	}
+
+	public void testDropNewest() throws Exception {
+		QueuedStreamFeeder feeder = new QueuedStreamFeeder(api, CAPACITY, 1, OverflowPolicy.DROP_NEWEST);
+		int accepted = overload(feeder);
+		assertTrue(accepted < MODELS);
+		assertEquals(MODELS - accepted, feeder.getDroppedCount(STREAM));
+		assertDelivered(feeder, accepted);
+	}
+
+	public void testDropOldest() throws Exception {
+		QueuedStreamFeeder feeder = new QueuedStreamFeeder(api, CAPACITY, 1, OverflowPolicy.DROP_OLDEST);
+		assertEquals(MODELS, overload(feeder));
+		assertTrue(feeder.getDroppedCount(STREAM) > 0);
+		assertDelivered(feeder, MODELS - feeder.getDroppedCount(STREAM));
+		// the newest model is never the one dropped
+		assertEquals(String.valueOf(MODELS - 1), ModelFactory.createDefaultModel().read(new StringReader(server.getLastFeed(STREAM)), null, "RDF/JSON").listObjects().next().asLiteral().getString());
+	}
+
+	public void testSample() throws Exception {
+		QueuedStreamFeeder feeder = new QueuedStreamFeeder(api, CAPACITY, 1, OverflowPolicy.SAMPLE);
+		feeder.setSampleRate(4);
+		int accepted = overload(feeder);
+		assertTrue(accepted < MODELS);
+		assertTrue(accepted > CAPACITY / 2);
+		assertDelivered(feeder, accepted);
+	}
+
+	public void testBlockWaitsForAFreeSlot() throws Exception {
+		QueuedStreamFeeder feeder = new QueuedStreamFeeder(api, CAPACITY, 1, OverflowPolicy.BLOCK);
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < 2 * CAPACITY; i++)
+			assertTrue(feeder.offer(STREAM, model(i)));
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertDelivered(feeder, 2 * CAPACITY);
+	}
+
+	public void testBlockTimeout() throws Exception {
+		QueuedStreamFeeder feeder = new QueuedStreamFeeder(api, CAPACITY, 1, OverflowPolicy.BLOCK);
+		feeder.setBlockTimeout(1);
+		int accepted = overload(feeder);
+		assertTrue(accepted < MODELS);
+		assertEquals(MODELS - accepted, feeder.getDroppedCount());
+		assertDelivered(feeder, accepted);
+	}
+
+	public void testFailuresAreCounted() throws Exception {
+		QueuedStreamFeeder feeder = new QueuedStreamFeeder(api, CAPACITY, 2, OverflowPolicy.BLOCK);
+		server.failNext(3, 500);
+		for(int i = 0; i < 5; i++)
+			feeder.offer(STREAM, model(i));
+		assertTrue(feeder.awaitEmpty(10000));
+		assertEquals(3, feeder.getFailedCount(STREAM));
+		assertEquals(2, feeder.getSentCount(STREAM));
+	}
+
+	private int overload(QueuedStreamFeeder feeder) throws Exception {
+		int accepted = 0;
+		for(int i = 0; i < MODELS; i++){
+			if(feeder.offer(STREAM, model(i)))
+				accepted++;
+			assertTrue(feeder.getQueueDepth(STREAM) <= CAPACITY);
+		}
+		assertEquals(MODELS, feeder.getOfferedCount(STREAM));
+		return accepted;
+	}
+
+	private void assertDelivered(QueuedStreamFeeder feeder, long expected) throws Exception {
+		assertTrue(feeder.awaitEmpty(30000));
+		assertEquals(0, feeder.getQueueDepth());
+		assertEquals(expected, feeder.getSentCount(STREAM));
+		assertEquals(expected, server.getFeedCount(STREAM));
+		feeder.close();
+	}
+
+	private static Model model(int i) {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource("http://ex.org/event").addProperty(model.createProperty("http://ex.org/seq"), String.valueOf(i));
+		return model;
+	}
+
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.cluster.AckPolicy;
+import it.polimi.deib.csparql_rest_api.cluster.ReplicatedFeeder;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Feeds three fake replicas and checks the acknowledgement policies.
+ */
+public class ReplicatedFeederTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/s";
+
+	private List<FakeRspServer> servers = new ArrayList<FakeRspServer>();
+	private List<String> addresses = new ArrayList<String>();
+	private ReplicatedFeeder feeder;
+	private Model model;
+
+	@Override
+	protected void setUp() throws Exception {
+		for(int i = 0 ; i < 3 ; i++){
+			FakeRspServer server = new FakeRspServer(1);
+			addresses.add(server.start());
+			servers.add(server);
+		}
+		model = ModelFactory.createDefaultModel();
+		model.createResource("http://ex.org/a").addProperty(model.createProperty("http://ex.org/p"), "città");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(feeder != null)
+			feeder.close();
+		for(FakeRspServer server : servers)
+			server.close();
+	}
+
+	public void testAllReplicasReceiveTheSamePayload() throws Exception {
+		feeder = new ReplicatedFeeder(addresses, new ClientConfiguration(), AckPolicy.ALL);
+		feeder.registerStream(STREAM);
+		feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+		for(FakeRspServer server : servers){
+			assertEquals(1, server.getFeedCount(STREAM));
+			assertEquals(servers.get(0).getLastFeed(STREAM), server.getLastFeed(STREAM));
+		}
+		assertTrue(servers.get(0).getLastFeed(STREAM).contains("città"));
+	}
+
+	public void testModelsAreSerializedInTheConfiguredFormat() throws Exception {
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setFeedFormat(FeedFormat.N_TRIPLES);
+		feeder = new ReplicatedFeeder(addresses, configuration, AckPolicy.ALL);
+		feeder.registerStream(STREAM);
+		feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+		for(FakeRspServer server : servers){
+			assertEquals(1, server.getFeedCount(STREAM));
+			assertTrue(server.getLastFeed(STREAM), server.getLastFeed(STREAM).startsWith("<http://ex.org/a> <http://ex.org/p> "));
+		}
+	}
+
+	public void testReplicasWithDifferentFormats() throws Exception {
+		FeedFormat[] formats = { FeedFormat.RDF_JSON, FeedFormat.TURTLE, FeedFormat.N_TRIPLES };
+		List<RSP_services_csparql_API> clients = new ArrayList<RSP_services_csparql_API>();
+		for(int i = 0; i < formats.length; i++){
+			ClientConfiguration configuration = new ClientConfiguration();
+			configuration.setFeedFormat(formats[i]);
+			clients.add(new RSP_services_csparql_API(addresses.get(i), configuration));
+		}
+		servers.get(2).setFeedContentTypes(FeedFormat.RDF_JSON.getContentType());
+		try {
+			feeder = new ReplicatedFeeder(clients, AckPolicy.ALL);
+			feeder.registerStream(STREAM);
+			feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+
+			assertTrue(servers.get(0).getLastFeed(STREAM).startsWith("{"));
+			assertTrue(servers.get(1).getLastFeed(STREAM).contains("<http://ex.org/p>"));
+			assertTrue(servers.get(2).getLastFeed(STREAM), servers.get(2).getLastFeed(STREAM).startsWith("{"));
+			assertEquals(FeedFormat.RDF_JSON, clients.get(2).getFeedFormat());
+
+			feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+			for(FakeRspServer server : servers)
+				assertEquals(2, server.getFeedCount(STREAM));
+		} finally {
+			for(RSP_services_csparql_API client : clients)
+				client.close();
+		}
+	}
+
+	public void testQuorumToleratesAMinorityOfFailures() throws Exception {
+		feeder = new ReplicatedFeeder(addresses, new ClientConfiguration(), AckPolicy.QUORUM);
+		feeder.registerStream(STREAM);
+		servers.get(2).failNext(1, 500);
+		feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+		// the quorum does not wait for the failing replica, which must consume its error before the next feed
+		for(int i = 0; i < 100 && servers.get(2).getInjectedErrorCount() == 0; i++)
+			Thread.sleep(10);
+		assertEquals(1, servers.get(2).getInjectedErrorCount());
+
+		servers.get(1).failNext(1, 500);
+		servers.get(2).failNext(1, 500);
+		try {
+			feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StreamErrorException);
+		}
+	}
+
+	public void testAllFailsOnAnyFailure() throws Exception {
+		feeder = new ReplicatedFeeder(addresses, new ClientConfiguration(), AckPolicy.ALL);
+		feeder.registerStream(STREAM);
+		servers.get(1).failNext(1, 500);
+		try {
+			feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StreamErrorException);
+		}
+	}
+
+	public void testFirstDoesNotWaitForSlowReplicas() throws Exception {
+		feeder = new ReplicatedFeeder(addresses, new ClientConfiguration(), AckPolicy.FIRST);
+		feeder.registerStream(STREAM);
+		servers.get(1).setLatency(2000, 2000);
+		servers.get(2).setLatency(2000, 2000);
+		long begin = System.nanoTime();
+		feeder.feedStream(STREAM, model, null).get(10, TimeUnit.SECONDS);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+	}
+
+}
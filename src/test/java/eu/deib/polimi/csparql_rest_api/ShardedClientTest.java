@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.cluster.ShardedClient;
+import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import com.google.gson.JsonParser;
+
+/**
+ * Routes streams over several fake servers and checks balance and remapping
+ * when the set of servers changes.
+ */
+public class ShardedClientTest extends TestCase {
+
+	private static final int STREAMS = 600;
+
+	private List<FakeRspServer> servers = new ArrayList<FakeRspServer>();
+	private ShardedClient client;
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> addresses = new ArrayList<String>();
+		for(int i = 0 ; i < 4 ; i++){
+			FakeRspServer server = new FakeRspServer(1);
+			addresses.add(server.start());
+			servers.add(server);
+		}
+		client = new ShardedClient(addresses.subList(0, 3));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		client.close();
+		for(FakeRspServer server : servers)
+			server.close();
+	}
+
+	public void testStreamsAreSpreadAndRoutedToTheirOwner() throws Exception {
+		for(int i = 0 ; i < STREAMS ; i++){
+			String stream = "http://ex.org/streams/s" + i;
+			client.registerStream(stream);
+			client.feedStream(stream, "{}");
+		}
+		for(int i = 0 ; i < 3 ; i++){
+			FakeRspServer server = servers.get(i);
+			int owned = server.getStreamNames().size();
+			assertTrue("unbalanced: " + owned, owned > STREAMS / 3 * 0.7 && owned < STREAMS / 3 * 1.3);
+			for(String stream : server.getStreamNames()){
+				assertEquals(server.getAddress(), client.getNode(stream));
+				assertEquals(1, server.getFeedCount(stream));
+			}
+		}
+		assertEquals(STREAMS, new JsonParser().parse(client.getStreamsInfo()).getAsJsonArray().size());
+	}
+
+	public void testAddingANodeMovesOnlyItsShare() throws Exception {
+		Map<String, String> owners = new HashMap<String, String>();
+		for(int i = 0 ; i < STREAMS ; i++){
+			String stream = "http://ex.org/streams/s" + i;
+			client.registerStream(stream);
+			owners.put(stream, client.getNode(stream));
+		}
+
+		String added = servers.get(3).getAddress();
+		List<String> moved = client.addNode(added);
+		assertTrue("moved " + moved.size(), moved.size() > STREAMS / 4 * 0.7 && moved.size() < STREAMS / 4 * 1.3);
+		for(Map.Entry<String, String> owner : owners.entrySet()){
+			String current = client.getNode(owner.getKey());
+			if(moved.contains(owner.getKey()))
+				assertEquals(added, current);
+			else
+				assertEquals(owner.getValue(), current);
+		}
+
+		List<String> back = client.removeNode(added);
+		assertEquals(moved.size(), back.size());
+		for(Map.Entry<String, String> owner : owners.entrySet())
+			assertEquals(owner.getValue(), client.getNode(owner.getKey()));
+	}
+
+	public void testQueriesFollowTheirStreams() throws Exception {
+		String stream = "http://ex.org/streams/s1";
+		client.registerStream(stream);
+		String queryURI = client.registerQuery("q1", "REGISTER QUERY q1 AS SELECT ?s FROM STREAM <" + stream + "> [RANGE 1s STEP 1s] WHERE { ?s ?p ?o }");
+		assertTrue(queryURI.startsWith(client.getNode(stream) + "/"));
+		assertSame(client.getClient(stream), client.getClientForUri(queryURI));
+
+		String other = null;
+		for(int i = 2 ; other == null ; i++)
+			if(!client.getNode("http://ex.org/streams/s" + i).equals(client.getNode(stream)))
+				other = "http://ex.org/streams/s" + i;
+		try {
+			client.registerQuery("q2", "SELECT ?s FROM STREAM <" + stream + "> [RANGE 1s STEP 1s] FROM STREAM <" + other + "> [RANGE 1s STEP 1s] WHERE { ?s ?p ?o }");
+			fail();
+		} catch (QueryErrorException e) {
+		}
+	}
+
+	public void testClientErrorsAreNotRecordedNorMerged() throws Exception {
+		final ServerSocket garbage = new ServerSocket(0);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while(true){
+						Socket socket = garbage.accept();
+						BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+						String line;
+						while((line = in.readLine()) != null && !line.isEmpty());
+						OutputStream out = socket.getOutputStream();
+						out.write("not http\r\n\r\n".getBytes("US-ASCII"));
+						out.flush();
+						socket.close();
+					}
+				} catch (Exception e) {
+					// server socket closed
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+		String garbageAddress = "http://127.0.0.1:" + garbage.getLocalPort();
+		ShardedClient broken = new ShardedClient(Arrays.asList(servers.get(0).getAddress(), garbageAddress));
+		try {
+			String stream = null;
+			for(int i = 0 ; stream == null ; i++)
+				if(broken.getNode("http://ex.org/streams/s" + i).equals(garbageAddress))
+					stream = "http://ex.org/streams/s" + i;
+			assertEquals("Error", broken.registerStream(stream));
+			try {
+				broken.getStreamsInfo();
+				fail("engine error merged as an empty list");
+			} catch (StreamErrorException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains(garbageAddress));
+			}
+			assertTrue(broken.removeNode(garbageAddress).isEmpty());
+		} finally {
+			broken.close();
+			garbage.close();
+		}
+	}
+
+	public void testRemovedNodeIsClosedAfterItsCallsComplete() throws Exception {
+		final String stream = "http://ex.org/streams/s1";
+		client.registerStream(stream);
+		String owner = client.getNode(stream);
+		RSP_services_csparql_API removed = client.getClient(stream);
+		FakeRspServer server = null;
+		for(FakeRspServer candidate : servers)
+			if(candidate.getAddress().equals(owner))
+				server = candidate;
+		server.setLatency(300, 300);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> blocking = executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return client.feedStream(stream, "{}");
+				}
+			});
+			Future<String> async = client.feedStreamAsync(stream, "{}", null);
+			Thread.sleep(100);
+
+			assertEquals(Arrays.asList(stream), client.removeNode(owner));
+			assertFalse(owner.equals(client.getNode(stream)));
+
+			// the calls in flight are not aborted by the removal
+			assertTrue(blocking.get(5, TimeUnit.SECONDS).contains("succesfully fed"));
+			assertTrue(async.get(5, TimeUnit.SECONDS).contains("succesfully fed"));
+			assertEquals(2, server.getFeedCount(stream));
+		} finally {
+			executor.shutdownNow();
+		}
+		assertClosed(removed);
+	}
+
+	public void testRemovedNodeIsClosedAfterItsAsyncFeedsComplete() throws Exception {
+		String stream = "http://ex.org/streams/s1";
+		client.registerStream(stream);
+		String owner = client.getNode(stream);
+		RSP_services_csparql_API removed = client.getClient(stream);
+		for(FakeRspServer server : servers)
+			if(server.getAddress().equals(owner))
+				server.setLatency(200, 200);
+
+		final CountDownLatch completed = new CountDownLatch(3);
+		FutureCallback<String> callback = new FutureCallback<String>() {
+			@Override
+			public void completed(String result) {
+				completed.countDown();
+			}
+
+			@Override
+			public void failed(Exception ex) {
+			}
+
+			@Override
+			public void cancelled() {
+			}
+		};
+		for(int i = 0; i < 3; i++)
+			client.feedStreamAsync(stream, "{}", callback);
+		Thread.sleep(50);
+		long start = System.currentTimeMillis();
+		client.removeNode(owner);
+
+		// the last feed closes the client, which must not block its own I/O dispatch thread
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertTrue("feeds delayed by the closing client", System.currentTimeMillis() - start < 800);
+		assertClosed(removed);
+	}
+
+	private static void assertClosed(RSP_services_csparql_API removed) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		boolean closed = false;
+		while(!closed && System.currentTimeMillis() < deadline){
+			try {
+				removed.getStreamsInfo();
+				Thread.sleep(20);
+			} catch (IllegalStateException e) {
+				closed = true;
+			}
+		}
+		assertTrue("client of the removed node not closed", closed);
+	}
+
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.feed.FeedSpool;
+import it.polimi.deib.csparql_rest_api.feed.SpoolingStreamFeeder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Spools feeds while the engine is down and replays them once it is back.
+ */
+public class SpoolingStreamFeederTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/s";
+	private static final int SEGMENT_SIZE = 4096;
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("feed-spool", "");
+		directory.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if(files != null){
+			for(File file : files)
+				file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testSpoolSurvivesReopening() throws Exception {
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		for(int i = 0; i < 100; i++)
+			spool.append(STREAM + i, SerializedModel.serialize(model(i), FeedFormat.N_TRIPLES));
+		assertTrue(spool.getSegmentCount() > 1);
+		for(int i = 0; i < 30; i++)
+			spool.remove();
+		spool.close();
+
+		spool = new FeedSpool(directory, SEGMENT_SIZE);
+		assertEquals(70, spool.size());
+		for(int i = 30; i < 100; i++){
+			FeedSpool.SpooledFeed feed = spool.peek();
+			assertEquals(STREAM + i, feed.getStreamName());
+			assertEquals(FeedFormat.N_TRIPLES, feed.getSerialization().getFormat());
+			assertEquals(String.valueOf(i), sequence(feed.getSerialization()));
+			spool.remove();
+		}
+		assertNull(spool.peek());
+		assertTrue(spool.isEmpty());
+		assertEquals(1, spool.getSegmentCount());
+		spool.close();
+	}
+
+	public void testFeedsAreReplayedInOrderOnceTheEngineIsBack() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		server.start();
+		int port = URI.create(server.getAddress()).getPort();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		SpoolingStreamFeeder feeder = new SpoolingStreamFeeder(api, spool, 1000, 50);
+		try {
+			api.registerStream(STREAM);
+			assertNotNull(feeder.feed(STREAM, model(0)));
+			server.close();
+
+			for(int i = 1; i <= 50; i++)
+				assertNull(feeder.feed(STREAM, model(i)));
+			assertEquals(50, feeder.getSpooledCount());
+			Thread.sleep(200);
+			assertEquals(50, feeder.getSpoolSize());
+
+			server = new FakeRspServer(1);
+			server.start(new InetSocketAddress("127.0.0.1", port));
+			api.registerStream(STREAM);
+			long deadline = System.currentTimeMillis() + 10000;
+			while(feeder.getSpoolSize() > 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+
+			assertEquals(0, feeder.getSpoolSize());
+			assertEquals(50, feeder.getReplayedCount());
+			assertEquals(50, server.getFeedCount(STREAM));
+			assertEquals("50", sequence(SerializedModel.rdfJson(server.getLastFeed(STREAM))));
+			assertEquals(1, spool.getSegmentCount());
+
+			assertNotNull(feeder.feed(STREAM, model(51)));
+			assertEquals(51, server.getFeedCount(STREAM));
+		} finally {
+			feeder.close();
+			spool.close();
+			api.close();
+			server.close();
+		}
+	}
+
+	public void testRefusedFeedsAreDiscarded() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		spool.append(STREAM, SerializedModel.rdfJson(model(0)));
+		spool.append(STREAM, SerializedModel.rdfJson(model(1)));
+		api.registerStream(STREAM);
+		server.failNext(1, 400);
+		SpoolingStreamFeeder feeder = new SpoolingStreamFeeder(api, spool, 1000, 50);
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while(feeder.getSpoolSize() > 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(1, feeder.getDiscardedCount());
+			assertEquals(1, feeder.getReplayedCount());
+			assertEquals(1, server.getFeedCount(STREAM));
+			assertEquals("1", sequence(SerializedModel.rdfJson(server.getLastFeed(STREAM))));
+		} finally {
+			feeder.close();
+			spool.close();
+			api.close();
+			server.close();
+		}
+	}
+
+	public void testUnavailableEngineIsRetried() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		SpoolingStreamFeeder feeder = new SpoolingStreamFeeder(api, spool, 1000, 50);
+		try {
+			api.registerStream(STREAM);
+			// the first feed and the first replays are answered with 503
+			server.failNext(5, 503);
+			for(int i = 0; i < 10; i++)
+				assertNull(feeder.feed(STREAM, model(i)));
+			assertEquals(10, feeder.getSpooledCount());
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while(feeder.getSpoolSize() > 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(0, feeder.getSpoolSize());
+			assertEquals(5, server.getInjectedErrorCount());
+			assertEquals(0, feeder.getDiscardedCount());
+			assertEquals(10, feeder.getReplayedCount());
+			assertEquals(10, server.getFeedCount(STREAM));
+			assertEquals("9", sequence(SerializedModel.rdfJson(server.getLastFeed(STREAM))));
+
+			// a definite refusal of a direct feed is reported to the caller
+			server.failNext(1, 400);
+			try {
+				feeder.feed(STREAM, model(10));
+				fail();
+			} catch (StreamErrorException e) {
+				assertEquals(400, e.getStatusCode());
+			}
+			assertEquals(10, feeder.getSpooledCount());
+		} finally {
+			feeder.close();
+			spool.close();
+			api.close();
+			server.close();
+		}
+	}
+
+	public void testMissingStreamIsRetriedWhileReplaying() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		spool.append(STREAM, SerializedModel.rdfJson(model(0)));
+		SpoolingStreamFeeder feeder = new SpoolingStreamFeeder(api, spool, 1000, 50);
+		try {
+			Thread.sleep(200);
+			assertEquals(1, feeder.getSpoolSize());
+			assertEquals(0, feeder.getDiscardedCount());
+
+			api.registerStream(STREAM);
+			long deadline = System.currentTimeMillis() + 10000;
+			while(feeder.getSpoolSize() > 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(1, feeder.getReplayedCount());
+			assertEquals(1, server.getFeedCount(STREAM));
+		} finally {
+			feeder.close();
+			spool.close();
+			api.close();
+			server.close();
+		}
+	}
+
+	public void testMissingStreamIsDiscardedAfterMaxAttempts() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		spool.append("http://ex.org/streams/missing", SerializedModel.rdfJson(model(0)));
+		spool.append(STREAM, SerializedModel.rdfJson(model(1)));
+		api.registerStream(STREAM);
+		SpoolingStreamFeeder feeder = new SpoolingStreamFeeder(api, spool, 1000, 20, 3);
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while(feeder.getSpoolSize() > 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(1, feeder.getDiscardedCount());
+			assertEquals(1, feeder.getReplayedCount());
+			assertEquals("1", sequence(SerializedModel.rdfJson(server.getLastFeed(STREAM))));
+		} finally {
+			feeder.close();
+			spool.close();
+			api.close();
+			server.close();
+		}
+	}
+
+	public void testOnlyRejectedFormatsAreTranslated() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		FeedSpool spool = new FeedSpool(directory, SEGMENT_SIZE);
+		spool.append(STREAM, SerializedModel.serialize(model(0), FeedFormat.N_TRIPLES));
+		spool.append(STREAM, SerializedModel.serialize(model(1), FeedFormat.N_TRIPLES));
+		api.registerStream(STREAM);
+		server.failNext(1, 400);
+		server.setFeedContentTypes(FeedFormat.RDF_JSON.getContentType());
+		SpoolingStreamFeeder feeder = new SpoolingStreamFeeder(api, spool, 1000, 50);
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while(feeder.getSpoolSize() > 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			// a 400 not reporting a parse error refuses the feed, a 415 only its format
+			assertEquals(1, feeder.getDiscardedCount());
+			assertEquals(1, feeder.getReplayedCount());
+			assertEquals(1, server.getFeedCount(STREAM));
+			assertEquals("1", sequence(SerializedModel.rdfJson(server.getLastFeed(STREAM))));
+		} finally {
+			feeder.close();
+			spool.close();
+			api.close();
+			server.close();
+		}
+	}
+
+	private static Model model(int i) {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource("http://ex.org/event").addProperty(model.createProperty("http://ex.org/seq"), String.valueOf(i));
+		return model;
+	}
+
+	private static String sequence(SerializedModel serialization) throws IOException {
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new StringReader(new String(toBytes(serialization), "UTF-8")), null, serialization.getFormat().getLang());
+		return model.listObjects().next().asLiteral().getString();
+	}
+
+	private static byte[] toBytes(SerializedModel serialization) {
+		ByteBuffer buffer = ByteBuffer.allocate(serialization.getLength());
+		serialization.writeTo(buffer);
+		return buffer.array();
+	}
+
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+import it.polimi.deib.csparql_rest_api.kb.ModelDelta;
+import it.polimi.deib.csparql_rest_api.kb.StaticKnowledgeSynchronizer;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.update.UpdateAction;
+
+/**
+ * Synchronizes a named model of the static knowledge, checking that the
+ * updates sent to the fake server turn the uploaded model into the new one.
+ */
+public class StaticKnowledgeSynchronizerTest extends TestCase {
+
+	private static final String IRI = "http://ex.org/kb/people";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private StaticKnowledgeSynchronizer synchronizer;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		synchronizer = new StaticKnowledgeSynchronizer(api);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		api.close();
+		server.close();
+	}
+
+	public void testOnlyTheChangedTriplesAreSent() throws Exception {
+		Model original = people(100);
+		ModelDelta delta = synchronizer.sync(IRI, original);
+		assertTrue(delta.isFullUpload());
+		assertEquals(200, delta.getInserted());
+		Model uploaded = ModelFactory.createDefaultModel().read(new StringReader(server.getStaticModel(IRI)), null);
+		assertTrue(uploaded.isIsomorphicWith(original));
+		assertTrue(server.getUpdateQueries().isEmpty());
+
+		Model changed = people(100);
+		Property name = changed.createProperty("http://xmlns.com/foaf/0.1/name");
+		changed.removeAll(changed.createResource("http://ex.org/people/7"), name, null);
+		changed.createResource("http://ex.org/people/7").addProperty(name, "Zoë \"the\"\nsecond", "it");
+		changed.createResource("http://ex.org/people/100").addLiteral(changed.createProperty("http://ex.org/age"), 42);
+		delta = synchronizer.sync(IRI, changed);
+		assertFalse(delta.isFullUpload());
+		assertEquals(1, delta.getDeleted());
+		assertEquals(2, delta.getInserted());
+		assertEquals(2, server.getUpdateQueries().size());
+		assertTrue(replay(original).isIsomorphicWith(changed));
+
+		assertTrue(synchronizer.sync(IRI, people(100).union(changed)).getInserted() > 0);
+		int updates = server.getUpdateQueries().size();
+		assertTrue(synchronizer.sync(IRI, people(100).union(changed)).isEmpty());
+		assertEquals(updates, server.getUpdateQueries().size());
+	}
+
+	public void testLargeDeltasAreSplit() throws Exception {
+		synchronizer.setMaxTriplesPerUpdate(10);
+		Model original = people(100);
+		synchronizer.sync(IRI, original);
+		ModelDelta delta = synchronizer.sync(IRI, people(125));
+		// the last person of the ring now knows a new one
+		assertEquals(1, delta.getDeleted());
+		assertEquals(51, delta.getInserted());
+		assertEquals(1 + 6, server.getUpdateQueries().size());
+		assertTrue(replay(original).isIsomorphicWith(people(125)));
+	}
+
+	public void testChangesAsLargeAsTheModelAreUploaded() throws Exception {
+		synchronizer.sync(IRI, people(10));
+		Model other = ModelFactory.createDefaultModel();
+		other.createResource("http://ex.org/other").addProperty(other.createProperty("http://ex.org/p"), "o");
+		ModelDelta delta = synchronizer.sync(IRI, other);
+		assertTrue(delta.isFullUpload());
+		assertTrue(server.getUpdateQueries().isEmpty());
+		assertTrue(ModelFactory.createDefaultModel().read(new StringReader(server.getStaticModel(IRI)), null).isIsomorphicWith(other));
+	}
+
+	public void testBlankNodesFallBackToFullUploads() throws Exception {
+		Model withBlankNode = people(10);
+		withBlankNode.createResource().addProperty(withBlankNode.createProperty("http://ex.org/p"), "anonymous");
+		assertTrue(synchronizer.sync(IRI, withBlankNode).isFullUpload());
+		// the previous version cannot be diffed either
+		assertTrue(synchronizer.sync(IRI, people(10)).isFullUpload());
+		assertFalse(synchronizer.sync(IRI, people(11)).isFullUpload());
+
+		synchronizer.forget(IRI);
+		assertTrue(synchronizer.sync(IRI, people(11)).isFullUpload());
+		assertEquals(2, server.getUpdateQueries().size());
+	}
+
+	private Model replay(Model original) {
+		Dataset dataset = DatasetFactory.createMem();
+		dataset.addNamedModel(IRI, ModelFactory.createDefaultModel().add(original));
+		for(String update : server.getUpdateQueries())
+			UpdateAction.parseExecute(update, dataset);
+		return dataset.getNamedModel(IRI);
+	}
+
+	private static Model people(int count) {
+		Model model = ModelFactory.createDefaultModel();
+		Property name = model.createProperty("http://xmlns.com/foaf/0.1/name");
+		Property knows = model.createProperty("http://xmlns.com/foaf/0.1/knows");
+		for(int i = 0; i < count; i++){
+			model.createResource("http://ex.org/people/" + i)
+				.addProperty(name, "Person " + i)
+				.addProperty(knows, model.createResource("http://ex.org/people/" + ((i + 1) % count)));
+		}
+		return model;
+	}
+
+}
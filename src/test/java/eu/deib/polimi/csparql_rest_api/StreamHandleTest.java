@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.FeedFormat;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.SerializedModel;
+import it.polimi.deib.csparql_rest_api.StreamHandle;
+import it.polimi.deib.csparql_rest_api.TripleBuffer;
+import it.polimi.deib.csparql_rest_api.exception.StreamErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.StringWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Feeds a stream through its cached handle.
+ */
+public class StreamHandleTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/streams/s?x=1";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private Model model;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		model = ModelFactory.createDefaultModel();
+		model.createResource("http://ex.org/a").addProperty(model.createProperty("http://ex.org/p"), "v");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		api.close();
+		server.close();
+	}
+
+	public void testHandleIsCachedUntilUnregistered() throws Exception {
+		api.registerStream(STREAM);
+		StreamHandle handle = api.getStreamHandle(STREAM);
+		assertSame(handle, api.getStreamHandle(STREAM));
+		assertEquals(STREAM, handle.getName());
+		assertEquals(server.getAddress() + "/streams/http%3A%2F%2Fex.org%2Fstreams%2Fs%3Fx%3D1", handle.getURI().toString());
+
+		api.unregisterStream(STREAM);
+		assertNotSame(handle, api.getStreamHandle(STREAM));
+	}
+
+	public void testEveryFeedReachesTheStream() throws Exception {
+		api.registerStream(STREAM);
+		StreamHandle handle = api.getStreamHandle(STREAM);
+		TripleBuffer triples = new TripleBuffer();
+		triples.addLiteral("http://ex.org/a", "http://ex.org/p", "v");
+
+		StringWriter rdfJson = new StringWriter();
+		model.write(rdfJson, "RDF/JSON");
+		handle.feed(rdfJson.toString());
+		handle.feed(model);
+		handle.feed(triples);
+		handle.feed(SerializedModel.serialize(model, FeedFormat.TURTLE));
+		handle.feedAsync(model, null).get(10, TimeUnit.SECONDS);
+		handle.feedAsync(SerializedModel.rdfJson(model), null).get(10, TimeUnit.SECONDS);
+		api.feedStream(STREAM, model);
+		api.feedStreamAsync(STREAM, model, null).get(10, TimeUnit.SECONDS);
+
+		assertEquals(8, server.getFeedCount(STREAM));
+	}
+
+	public void testErrorsOfTheHandleMatchTheClient() throws Exception {
+		StreamHandle handle = api.getStreamHandle(STREAM);
+		try {
+			handle.feed(model);
+			fail();
+		} catch (StreamErrorException e) {
+		}
+		try {
+			handle.feedAsync(model, null).get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StreamErrorException);
+		}
+	}
+
+	public void testInvalidServerAddress() throws Exception {
+		RSP_services_csparql_API invalid = new RSP_services_csparql_API("http://bad host");
+		try {
+			try {
+				invalid.getStreamHandle(STREAM);
+				fail();
+			} catch (StreamErrorException e) {
+			}
+			assertEquals("Error", invalid.feedStream(STREAM, model));
+			try {
+				invalid.feedStreamAsync(STREAM, model, null).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof StreamErrorException);
+			}
+		} finally {
+			invalid.close();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.http.StreamingFormEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+/**
+ * Compares the form encoding of {@link StreamingFormEntity} with {@link URLEncoder}.
+ */
+public class StreamingFormEntityTest extends TestCase {
+
+	private static final String SPECIAL = "a b*c~d-e_f.g+h&i=j%k/l?m#n\"o<p>\n\tq città € 😀 ";
+
+	public void testEncodingMatchesURLEncoder() throws Exception {
+		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+		parameters.add(new BasicNameValuePair("action", "put"));
+		parameters.add(new BasicNameValuePair("iri €", SPECIAL));
+		String encoded = write(parameters, "serialization", SPECIAL);
+		assertEquals("action=put&" + URLEncoder.encode("iri €", "UTF-8") + "=" + URLEncoder.encode(SPECIAL, "UTF-8")
+				+ "&serialization=" + URLEncoder.encode(SPECIAL, "UTF-8"), encoded);
+	}
+
+	public void testEveryByteMatchesURLEncoder() throws Exception {
+		StringBuilder all = new StringBuilder();
+		for(char c = 0; c < 0x800; c++)
+			all.append(c);
+		String encoded = write(new ArrayList<NameValuePair>(), "v", all.toString());
+		assertEquals("v=" + URLEncoder.encode(all.toString(), "UTF-8"), encoded);
+	}
+
+	public void testValuesLongerThanTheBuffer() throws Exception {
+		StringBuilder value = new StringBuilder();
+		while(value.length() < 100000)
+			value.append(SPECIAL);
+		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+		parameters.add(new BasicNameValuePair("long", value.toString()));
+		String encoded = write(parameters, "serialization", value.toString());
+		String expected = URLEncoder.encode(value.toString(), "UTF-8");
+		assertEquals("long=" + expected + "&serialization=" + expected, encoded);
+	}
+
+	public void testWrittenOnce() throws Exception {
+		StreamingFormEntity entity = new StreamingFormEntity(new ArrayList<NameValuePair>(), "v", new ByteArrayInputStream(new byte[0]));
+		assertTrue(entity.isStreaming());
+		assertFalse(entity.isRepeatable());
+		entity.writeTo(new ByteArrayOutputStream());
+		assertFalse(entity.isStreaming());
+		try {
+			entity.writeTo(new ByteArrayOutputStream());
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static String write(List<NameValuePair> parameters, String streamedName, String streamedValue) throws Exception {
+		StreamingFormEntity entity = new StreamingFormEntity(parameters, streamedName, new ByteArrayInputStream(streamedValue.getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		return out.toString("US-ASCII");
+	}
+
+}
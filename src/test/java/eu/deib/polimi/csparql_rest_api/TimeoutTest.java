@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.Operation;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
+import it.polimi.deib.csparql_rest_api.exception.TimeoutErrorException;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Bounds slow calls with per-operation timeouts and deadlines and aborts
+ * calls in flight with {@link RSP_services_csparql_API#cancelAll()}.
+ */
+public class TimeoutTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/s";
+	private static final long SLOW = 2000;
+
+	private FakeRspServer server;
+	private ClientConfiguration configuration;
+	private RSP_services_csparql_API api;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer();
+		server.start();
+		configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(api != null)
+			api.close();
+		server.close();
+	}
+
+	private void createClient() throws Exception {
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		api.registerStream(STREAM);
+		server.setLatency(SLOW, SLOW);
+	}
+
+	public void testSocketTimeoutOfOperation() throws Exception {
+		configuration.setSocketTimeout(Operation.GET_QUERIES_INFO, 100);
+		createClient();
+
+		long start = System.currentTimeMillis();
+		try {
+			api.getQueriesInfo();
+			fail("no timeout");
+		} catch (TimeoutErrorException e) {
+			assertTrue(System.currentTimeMillis() - start < SLOW / 2);
+		}
+		assertEquals(1, api.getMetrics().get(Operation.GET_QUERIES_INFO).getErrors());
+		assertEquals(0, api.getPoolStats().getLeased());
+
+		server.setLatency(200, 200);
+		assertTrue(api.getStreamsInfo().contains(STREAM));
+	}
+
+	public void testDeadlineOfOperation() throws Exception {
+		configuration.setDeadline(Operation.GET_QUERIES_INFO, 150);
+		createClient();
+
+		long start = System.currentTimeMillis();
+		try {
+			api.getQueriesInfo();
+			fail("no timeout");
+		} catch (TimeoutErrorException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("deadline"));
+			assertTrue(System.currentTimeMillis() - start < SLOW / 2);
+		}
+		assertEquals(0, api.getPoolStats().getLeased());
+	}
+
+	public void testWaitForPooledConnectionIsBounded() throws Exception {
+		configuration.setMaxConnectionsPerRoute(1);
+		configuration.setConnectionTimeout(Operation.GET_STREAMS_INFO, 100);
+		createClient();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> slow = executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return api.getQueriesInfo();
+				}
+			});
+			Thread.sleep(100);
+			try {
+				api.getStreamsInfo();
+				fail("no timeout");
+			} catch (TimeoutErrorException e) {
+				// the only connection is leased by the slow call
+			}
+			assertEquals("[]", slow.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testAsyncFeedDeadline() throws Exception {
+		configuration.setDeadline(Operation.FEED_STREAM_ASYNC, 150);
+		createClient();
+		try {
+			api.feedStreamAsync(STREAM, "{}").get(SLOW / 2, TimeUnit.MILLISECONDS);
+			fail("no timeout");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutErrorException);
+		}
+	}
+
+	public void testCancelAll() throws Exception {
+		createClient();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> blocking = new ArrayList<Future<String>>();
+			for(int i = 0; i < 4; i++){
+				blocking.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return api.getQueriesInfo();
+					}
+				}));
+			}
+			Future<String> async = api.feedStreamAsync(STREAM, "{}");
+			Thread.sleep(300);
+
+			assertEquals(5, api.cancelAll());
+			for(Future<String> call : blocking){
+				try {
+					call.get(SLOW / 2, TimeUnit.MILLISECONDS);
+					fail("not cancelled");
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof ServerErrorException);
+					assertFalse(e.getCause() instanceof TimeoutErrorException);
+				}
+			}
+			try {
+				async.get(SLOW / 2, TimeUnit.MILLISECONDS);
+				fail("not cancelled");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof ServerErrorException);
+			}
+			assertEquals(0, api.cancelAll());
+			assertEquals(0, api.getPoolStats().getLeased());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
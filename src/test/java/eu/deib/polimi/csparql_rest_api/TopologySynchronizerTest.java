@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.bulk.BulkOperations;
+import it.polimi.deib.csparql_rest_api.bulk.BulkResult;
+import it.polimi.deib.csparql_rest_api.bulk.Topology;
+import it.polimi.deib.csparql_rest_api.bulk.TopologyDiff;
+import it.polimi.deib.csparql_rest_api.bulk.TopologySynchronizer;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Converges the fake engine to a desired topology through {@link TopologySynchronizer}.
+ */
+public class TopologySynchronizerTest extends TestCase {
+
+	private static final String STREAM = "http://ex.org/s";
+
+	private FakeRspServer server;
+	private RSP_services_csparql_API api;
+	private BulkOperations bulk;
+	private TopologySynchronizer synchronizer;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeRspServer(1);
+		server.start();
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		api = new RSP_services_csparql_API(server.getAddress(), configuration);
+		bulk = new BulkOperations(api, 8);
+		synchronizer = new TopologySynchronizer(api, bulk);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		bulk.close();
+		api.close();
+		server.close();
+	}
+
+	private static String query(String name, String variable) {
+		return "REGISTER QUERY " + name + " AS SELECT ?" + variable + " FROM STREAM <" + STREAM + "> [RANGE 1s STEP 1s] WHERE { ?s ?p ?o }";
+	}
+
+	public void testSyncConvergesAndIsIdempotent() throws Exception {
+		Topology topology = new Topology()
+				.addStream(STREAM)
+				.addQuery("q1", query("q1", "s"))
+				.addQuery("q2", query("q2", "s"))
+				.addObserver("q1", "http://127.0.0.1:1/a")
+				.addObserver("q2", "http://127.0.0.1:1/b");
+
+		BulkResult<String> result = synchronizer.sync(topology);
+		assertTrue(result.toString(), result.isSuccessful());
+		assertEquals(5, result.getResults().size());
+		assertEquals(Arrays.asList(STREAM), server.getStreamNames());
+		assertEquals(new HashSet<String>(Arrays.asList("q1", "q2")), new HashSet<String>(server.getQueryNames()));
+		assertEquals(Arrays.asList("http://127.0.0.1:1/a"), server.getObserverCallbacks("q1"));
+
+		long requests = server.getRequestCount();
+		TopologyDiff diff = synchronizer.diff(topology);
+		assertTrue(diff.toString(), diff.isEmpty());
+		// streams, queries and the observers of each query
+		assertEquals(requests + 4, server.getRequestCount());
+
+		requests = server.getRequestCount();
+		assertTrue(synchronizer.sync(topology).getResults().isEmpty());
+		assertEquals(requests + 4, server.getRequestCount());
+	}
+
+	public void testSyncAppliesOnlyTheDifference() throws Exception {
+		api.registerStream(STREAM);
+		api.registerStream("http://ex.org/obsolete");
+		String q1 = api.registerQuery("q1", query("q1", "s"));
+		api.registerQuery("q2", query("q2", "s"));
+		api.registerQuery("q3", query("q3", "s"));
+		api.addObserver(q1, "http://127.0.0.1:1/a");
+		api.addObserver(q1, "http://127.0.0.1:1/obsolete");
+
+		Topology topology = new Topology()
+				.addStream(STREAM)
+				.addQuery("q1", query("q1", "s"))
+				.addQuery("q2", query("q2", "o"))
+				.addQuery("q4", query("q4", "s"))
+				.addObserver("q1", "http://127.0.0.1:1/a")
+				.addObserver("q2", "http://127.0.0.1:1/b");
+
+		TopologyDiff diff = synchronizer.diff(topology);
+		assertEquals(Collections.emptySet(), diff.getStreamsToRegister());
+		assertEquals(Collections.singleton("http://ex.org/obsolete"), diff.getStreamsToUnregister());
+		assertEquals(new HashSet<String>(Arrays.asList("q2", "q4")), diff.getQueriesToRegister().keySet());
+		assertEquals(new HashSet<String>(Arrays.asList(server.getAddress() + "/queries/q2", server.getAddress() + "/queries/q3")), diff.getQueriesToUnregister());
+		assertEquals(Collections.singleton("q2"), diff.getObserversToAdd().keySet());
+		assertEquals(1, diff.getObserversToDelete().size());
+		assertEquals(7, diff.size());
+
+		BulkResult<String> result = synchronizer.sync(topology);
+		assertTrue(result.toString(), result.isSuccessful());
+		assertEquals(Arrays.asList(STREAM), server.getStreamNames());
+		assertEquals(new HashSet<String>(Arrays.asList("q1", "q2", "q4")), new HashSet<String>(server.getQueryNames()));
+		assertEquals(Arrays.asList("http://127.0.0.1:1/a"), server.getObserverCallbacks("q1"));
+		assertEquals(Arrays.asList("http://127.0.0.1:1/b"), server.getObserverCallbacks("q2"));
+		assertTrue(synchronizer.diff(topology).isEmpty());
+	}
+
+}
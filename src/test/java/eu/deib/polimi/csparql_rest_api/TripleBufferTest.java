@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package eu.deib.polimi.csparql_rest_api;
+
+import it.polimi.deib.csparql_rest_api.ClientConfiguration;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.deib.csparql_rest_api.TripleBuffer;
+import it.polimi.deib.csparql_rest_api.fake.FakeRspServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Checks the N-Triples written by {@link TripleBuffer} against Jena and feeds
+ * them to the fake server.
+ */
+public class TripleBufferTest extends TestCase {
+
+	private static final String S = "http://ex.org/città/s";
+	private static final String P = "http://ex.org/p";
+	private static final String TEXT = "città \"quoted\" back\\slash\nnew line\r 😀 end";
+
+	public void testEncodingMatchesJena() throws Exception {
+		TripleBuffer buffer = new TripleBuffer(16);
+		buffer.add(S, P, "http://ex.org/o");
+		buffer.add("_:b1", P, S);
+		buffer.addLiteral(S, P, TEXT);
+		buffer.addTypedLiteral(S, P, "3.5", "http://www.w3.org/2001/XMLSchema#double");
+		buffer.addLangLiteral(S, P, "ciao", "it");
+		buffer.addLiteral(S, P, -1234567890123L);
+		buffer.addLiteral(S, P, Long.MIN_VALUE);
+		buffer.addAll(new String[] {S, P, "http://ex.org/x", S, P, "http://ex.org/y"}, 0, 2);
+		assertEquals(9, buffer.getTripleCount());
+
+		Model expected = ModelFactory.createDefaultModel();
+		Resource s = expected.createResource(S);
+		Property p = expected.createProperty(P);
+		s.addProperty(p, expected.createResource("http://ex.org/o"));
+		expected.createResource().addProperty(p, s);
+		s.addProperty(p, TEXT);
+		s.addProperty(p, expected.createTypedLiteral("3.5", "http://www.w3.org/2001/XMLSchema#double"));
+		s.addProperty(p, "ciao", "it");
+		s.addLiteral(p, expected.createTypedLiteral("-1234567890123", "http://www.w3.org/2001/XMLSchema#long"));
+		s.addLiteral(p, expected.createTypedLiteral(String.valueOf(Long.MIN_VALUE), "http://www.w3.org/2001/XMLSchema#long"));
+		s.addProperty(p, expected.createResource("http://ex.org/x"));
+		s.addProperty(p, expected.createResource("http://ex.org/y"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.writeTo(out);
+		assertEquals(out.size(), buffer.size());
+		Model parsed = ModelFactory.createDefaultModel().read(new ByteArrayInputStream(out.toByteArray()), null, "N-TRIPLE");
+		assertTrue(parsed.isIsomorphicWith(expected));
+
+		buffer.clear();
+		assertEquals(0, buffer.size());
+		buffer.addLiteral(S, P, 42);
+		Literal literal = ModelFactory.createDefaultModel().read(new ByteArrayInputStream(toBytes(buffer)), null, "N-TRIPLE").listStatements().next().getLiteral();
+		assertEquals(42, literal.getLong());
+	}
+
+	public void testLongBounds() throws Exception {
+		long[] values = {Long.MIN_VALUE, Long.MAX_VALUE, -Long.MAX_VALUE, 0, -1};
+		for(long value : values){
+			// a full buffer must grow for the longest literal
+			TripleBuffer buffer = new TripleBuffer(7);
+			buffer.addLiteral("_:a", "_:b", value);
+			String expected = "_:a _:b \"" + value + "\"^^<http://www.w3.org/2001/XMLSchema#long> .\n";
+			assertEquals(expected, new String(toBytes(buffer), "UTF-8"));
+			assertEquals(expected.length(), buffer.size());
+		}
+		TripleBuffer buffer = new TripleBuffer(1);
+		buffer.addLiteral(S, P, Long.MIN_VALUE);
+		buffer.addLiteral(S, P, Long.MAX_VALUE);
+		Model parsed = ModelFactory.createDefaultModel().read(new ByteArrayInputStream(toBytes(buffer)), null, "N-TRIPLE");
+		assertEquals(2, parsed.size());
+	}
+
+	public void testUnpairedSurrogatesMatchGetBytes() throws Exception {
+		String[] values = {"a\ud800b", "a\udc00b", "\ud83d", "\ude00\ud83d", "ok \ud83d\ude00 \ud83d"};
+		for(String value : values){
+			TripleBuffer buffer = new TripleBuffer(1);
+			buffer.addLiteral(S, P, value);
+			byte[] expected = ("<" + S + "> <" + P + "> \"" + value + "\" .\n").getBytes("UTF-8");
+			assertEquals(value, new String(expected, "UTF-8"), new String(toBytes(buffer), "UTF-8"));
+			assertEquals(expected.length, buffer.size());
+			assertEquals(1, ModelFactory.createDefaultModel().read(new ByteArrayInputStream(toBytes(buffer)), null, "N-TRIPLE").size());
+		}
+	}
+
+	public void testSteadyStateDoesNotAllocate() throws Exception {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean))
+			return;
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		TripleBuffer buffer = new TripleBuffer();
+		for(int round = 0 ; round < 1000 ; round++)
+			fill(buffer);
+		long before = allocation.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for(int round = 0 ; round < 1000 ; round++)
+			fill(buffer);
+		long allocated = allocation.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		assertTrue("allocated " + allocated + " bytes for 300k triples", allocated < 64 * 1024);
+	}
+
+	public void testFeedAndFallback() throws Exception {
+		FakeRspServer server = new FakeRspServer(1);
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setJmxEnabled(false);
+		RSP_services_csparql_API api = new RSP_services_csparql_API(server.start(), configuration);
+		try {
+			TripleBuffer buffer = new TripleBuffer();
+			buffer.addLiteral(S, P, TEXT);
+			api.registerStream("http://ex.org/stream");
+			api.feedStream("http://ex.org/stream", buffer);
+			Model received = ModelFactory.createDefaultModel().read(new StringReader(server.getLastFeed("http://ex.org/stream")), null, "N-TRIPLE");
+			assertEquals(TEXT, received.listStatements().next().getString());
+
+			server.setFeedContentTypes("application/json");
+			api.feedStream("http://ex.org/stream", buffer);
+			api.feedStream("http://ex.org/stream", buffer);
+			received = ModelFactory.createDefaultModel().read(new StringReader(server.getLastFeed("http://ex.org/stream")), null, "RDF/JSON");
+			assertEquals(TEXT, received.listStatements().next().getString());
+			assertEquals(3, server.getFeedCount("http://ex.org/stream"));
+		} finally {
+			api.close();
+			server.close();
+		}
+	}
+
+	private static void fill(TripleBuffer buffer) {
+		buffer.clear();
+		for(int i = 0 ; i < 100 ; i++){
+			buffer.add(S, P, "http://ex.org/o");
+			buffer.addLiteral(S, P, TEXT);
+			buffer.addLiteral(S, P, i);
+		}
+	}
+
+	private static byte[] toBytes(TripleBuffer buffer) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.writeTo(out);
+		return out.toByteArray();
+	}
+
+}
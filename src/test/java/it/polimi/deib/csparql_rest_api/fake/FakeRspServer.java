@@ -0,0 +1,809 @@
+/*******************************************************************************
+ * Copyright 2014 DEIB - Politecnico di Milano
+ *  
+ * Marco Balduini (marco.balduini@polimi.it)
+ * Emanuele Della Valle (emanuele.dellavalle@polimi.it)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This work was partially supported by the European project LarKC (FP7-215535) and by the European project MODAClouds (FP7-318484)
+ ******************************************************************************/
+package it.polimi.deib.csparql_rest_api.fake;
+
+import it.polimi.deib.csparql_rest_api.http.DaemonThreadFactory;
+import it.polimi.deib.csparql_rest_api.http.NioHttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.nio.protocol.BasicAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncExchange;
+import org.apache.http.nio.protocol.HttpAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandlerRegistry;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * In-process stand-in for an rsp-services deployment, implementing the REST
+ * surface called by {@link it.polimi.deib.csparql_rest_api.RSP_services_csparql_API}:
+ * streams ({@code /streams}, {@code /streams/{name}}), queries and their
+ * observers ({@code /queries}, {@code /queries/{name}},
+ * {@code /queries/{name}/observers[/{id}]}) and the static knowledge base
+ * ({@code /kb}). No reasoning takes place: the server only keeps track of the
+ * registered resources and counts what it receives. Successful GET responses
+ * carry an entity tag, and conditional requests matching it are answered with
+ * {@code 304 Not Modified}.
+ * <p>
+ * The server is part of the test sources: it is not shipped in the main jar
+ * but in the {@code tests} jar of the module, which the benchmarks depend on.
+ * <p>
+ * To exercise the client under realistic or hostile conditions the server can
+ * delay every response, answer a fraction of the requests (or the next ones)
+ * with an error status, and cap the number of requests served per second,
+ * queueing the excess. Delays are implemented with a timer, so thousands of
+ * requests can be pending without tying up threads.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * FakeRspServer server = new FakeRspServer();
+ * server.setLatency(5, 10);
+ * server.start();
+ * RSP_services_csparql_API api = new RSP_services_csparql_API(server.getAddress());
+ * </pre>
+ *
+ * @author Marco Balduini
+ *
+ */
+public class FakeRspServer implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(FakeRspServer.class.getName());
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String STREAMS = "/streams";
+	private static final String QUERIES = "/queries";
+	private static final String OBSERVERS = "/observers";
+	private static final String KB = "/kb";
+	private static final String INJECTED_ERROR = "Injected error";
+
+	private final NioHttpServer server;
+	private final ScheduledExecutorService timer;
+	private final Gson gson = new Gson();
+
+	private final ConcurrentMap<String, FakeStream> streams = new ConcurrentHashMap<String, FakeStream>();
+	private final ConcurrentMap<String, FakeQuery> queries = new ConcurrentHashMap<String, FakeQuery>();
+	private final ConcurrentMap<String, String> staticModels = new ConcurrentHashMap<String, String>();
+	private final List<String> updateQueries = new CopyOnWriteArrayList<String>();
+	private final AtomicLong observerCounter = new AtomicLong();
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong injectedErrors = new AtomicLong();
+	private final AtomicLong compressedRequests = new AtomicLong();
+	private final AtomicLong compressedResponses = new AtomicLong();
+	private final AtomicLong notModifiedResponses = new AtomicLong();
+
+	private volatile long minLatencyMillis = 0;
+	private volatile long maxLatencyMillis = 0;
+	private volatile double errorRate = 0;
+	private volatile int errorStatus = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+	private final AtomicInteger failNext = new AtomicInteger();
+	private volatile int failNextStatus = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+	private volatile String failNextMessage = INJECTED_ERROR;
+	private volatile long throttleIntervalNanos = 0;
+	private final AtomicLong nextSlot = new AtomicLong(Long.MIN_VALUE);
+	private final Random random = new Random();
+
+	private volatile List<String> feedContentTypes;
+	private volatile boolean responseCompression = false;
+
+	private volatile String address;
+
+	/**
+	 * Create a server with two I/O threads
+	 * @throws IOException if the I/O reactor cannot be created
+	 */
+	public FakeRspServer() throws IOException {
+		this(2);
+	}
+
+	/**
+	 * @param ioThreads number of I/O dispatch threads
+	 * @throws IOException if the I/O reactor cannot be created
+	 */
+	public FakeRspServer(int ioThreads) throws IOException {
+		HttpAsyncRequestHandlerRegistry handlers = new HttpAsyncRequestHandlerRegistry();
+		handlers.register("*", new RequestHandler());
+		server = new NioHttpServer("rsp-services-fake", ioThreads, handlers);
+		timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("rsp-services-fake-timer"));
+	}
+
+	/**
+	 * Listen on a free port of the loopback interface
+	 * @return base address of the server, e.g. {@code http://127.0.0.1:49152}
+	 * @throws IOException if the socket cannot be bound
+	 */
+	public String start() throws IOException {
+		return start(new InetSocketAddress("127.0.0.1", 0));
+	}
+
+	/**
+	 * @param bindAddress local address to listen on
+	 * @return base address of the server
+	 * @throws IOException if the socket cannot be bound
+	 */
+	public String start(InetSocketAddress bindAddress) throws IOException {
+		InetSocketAddress bound = server.start(bindAddress);
+		address = "http://" + bound.getAddress().getHostAddress() + ":" + bound.getPort();
+		logger.debug("Fake rsp-services listening on {}", address);
+		return address;
+	}
+
+	/**
+	 * @return base address of the server, to be passed to the client
+	 */
+	public String getAddress() {
+		if(address == null)
+			throw new IllegalStateException("Server not started");
+		return address;
+	}
+
+	/**
+	 * Stop listening and drop all the open connections and pending responses
+	 */
+	@Override
+	public void close() throws IOException {
+		timer.shutdownNow();
+		server.shutdown();
+	}
+
+	//Fault injection
+
+	/**
+	 * Delay every response by a random time between the bounds
+	 * @param minMillis minimum delay in milliseconds
+	 * @param maxMillis maximum delay in milliseconds
+	 */
+	public void setLatency(long minMillis, long maxMillis) {
+		if(minMillis < 0 || maxMillis < minMillis)
+			throw new IllegalArgumentException("Invalid latency bounds " + minMillis + ", " + maxMillis);
+		this.minLatencyMillis = minMillis;
+		this.maxLatencyMillis = maxMillis;
+	}
+
+	/**
+	 * Answer a random fraction of the requests with an error, without touching the server state
+	 * @param errorRate probability of an error, between 0 and 1
+	 * @param status HTTP status of the errors
+	 */
+	public void setErrorRate(double errorRate, int status) {
+		if(errorRate < 0 || errorRate > 1)
+			throw new IllegalArgumentException("Invalid error rate " + errorRate);
+		this.errorRate = errorRate;
+		this.errorStatus = status;
+	}
+
+	/**
+	 * Answer the next requests with an error, without touching the server state
+	 * @param requests number of requests to fail
+	 * @param status HTTP status of the errors
+	 */
+	public void failNext(int requests, int status) {
+		failNext(requests, status, INJECTED_ERROR);
+	}
+
+	/**
+	 * Answer the next requests with an error, without touching the server state
+	 * @param requests number of requests to fail
+	 * @param status HTTP status of the errors
+	 * @param message body of the errors
+	 */
+	public void failNext(int requests, int status, String message) {
+		this.failNextStatus = status;
+		this.failNextMessage = message;
+		this.failNext.set(requests);
+	}
+
+	/**
+	 * Serve at most the given number of requests per second. The excess is
+	 * queued, as an overloaded engine would do, so the response delay grows
+	 * with the backlog.
+	 * @param requestsPerSecond maximum throughput, a non positive value removes the limit
+	 */
+	public void setMaxRequestsPerSecond(int requestsPerSecond) {
+		this.throttleIntervalNanos = requestsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / requestsPerSecond : 0;
+	}
+
+	/**
+	 * Accept feeds only in the given media types, answering {@code 415 Unsupported Media Type} to the others
+	 * @param mediaTypes accepted media types, none to accept any
+	 */
+	public void setFeedContentTypes(String... mediaTypes) {
+		this.feedContentTypes = mediaTypes.length == 0 ? null : Arrays.asList(mediaTypes);
+	}
+
+	/**
+	 * @param responseCompression true to gzip the responses to the requests that accept it
+	 */
+	public void setResponseCompression(boolean responseCompression) {
+		this.responseCompression = responseCompression;
+	}
+
+	/**
+	 * @param seed seed of the random generator used for latency and error injection
+	 */
+	public void setSeed(long seed) {
+		synchronized (random) {
+			random.setSeed(seed);
+		}
+	}
+
+	//Inspection
+
+	/**
+	 * @return number of requests received
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return number of requests answered with an injected error
+	 */
+	public long getInjectedErrorCount() {
+		return injectedErrors.get();
+	}
+
+	/**
+	 * @return number of requests received with a gzip encoded body
+	 */
+	public long getCompressedRequestCount() {
+		return compressedRequests.get();
+	}
+
+	/**
+	 * @return number of responses sent gzip encoded
+	 */
+	public long getCompressedResponseCount() {
+		return compressedResponses.get();
+	}
+
+	/**
+	 * @return number of conditional GET requests answered with {@code 304 Not Modified}
+	 */
+	public long getNotModifiedCount() {
+		return notModifiedResponses.get();
+	}
+
+	/**
+	 * @return names of the registered streams
+	 */
+	public List<String> getStreamNames() {
+		return new ArrayList<String>(streams.keySet());
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of feeds received by the stream, 0 if it is not registered
+	 */
+	public long getFeedCount(String streamName) {
+		FakeStream stream = streams.get(streamName);
+		return stream == null ? 0 : stream.feeds.get();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return number of bytes fed to the stream, 0 if it is not registered
+	 */
+	public long getFeedBytes(String streamName) {
+		FakeStream stream = streams.get(streamName);
+		return stream == null ? 0 : stream.bytes.get();
+	}
+
+	/**
+	 * @param streamName name of the stream
+	 * @return last serialization fed to the stream, or null
+	 */
+	public String getLastFeed(String streamName) {
+		FakeStream stream = streams.get(streamName);
+		return stream == null ? null : stream.lastFeed;
+	}
+
+	/**
+	 * @return names of the registered queries
+	 */
+	public List<String> getQueryNames() {
+		return new ArrayList<String>(queries.keySet());
+	}
+
+	/**
+	 * @param queryName name of the query
+	 * @return callback urls of the observers of the query
+	 */
+	public List<String> getObserverCallbacks(String queryName) {
+		FakeQuery query = queries.get(queryName);
+		return query == null ? new ArrayList<String>() : new ArrayList<String>(query.observers.values());
+	}
+
+	/**
+	 * @param iri IRI of the named model
+	 * @return serialization of the named model put into the knowledge base, or null
+	 */
+	public String getStaticModel(String iri) {
+		return staticModels.get(iri);
+	}
+
+	/**
+	 * @return update queries received, in order of arrival
+	 */
+	public List<String> getUpdateQueries() {
+		return new ArrayList<String>(updateQueries);
+	}
+
+	/**
+	 * Push a result of the query to all its observers, as the engine does at the end of each window
+	 * @param queryName name of the query
+	 * @param payload RDF/JSON serialization of the result
+	 * @return number of observers that accepted the result
+	 */
+	public int pushResult(String queryName, String payload) {
+		int delivered = 0;
+		for(String callbackUrl : getObserverCallbacks(queryName)){
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL(callbackUrl).openConnection();
+				connection.setDoOutput(true);
+				connection.setRequestMethod("POST");
+				connection.setRequestProperty("Content-Type", "application/json");
+				OutputStream out = connection.getOutputStream();
+				out.write(payload.getBytes(UTF_8));
+				out.close();
+				if(connection.getResponseCode() / 100 == 2)
+					delivered++;
+				connection.getInputStream().close();
+			} catch (IOException e) {
+				logger.debug("unable to deliver result to {}", callbackUrl);
+			}
+		}
+		return delivered;
+	}
+
+	//Request handling
+
+	private void handle(String method, String path, String body, long bodyBytes, String contentType, Reply reply) {
+		if(path.equals(STREAMS)){
+			if(method.equals("GET")){
+				List<Map<String, String>> infos = new ArrayList<Map<String, String>>();
+				for(FakeStream stream : streams.values())
+					infos.add(stream.info());
+				reply.send(HttpStatus.SC_OK, gson.toJson(infos));
+			} else {
+				reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+			}
+		} else if(path.startsWith(STREAMS + "/")){
+			handleStream(method, decode(path.substring(STREAMS.length() + 1)), body, bodyBytes, contentType, reply);
+		} else if(path.equals(QUERIES)){
+			if(method.equals("GET")){
+				List<Map<String, String>> infos = new ArrayList<Map<String, String>>();
+				for(FakeQuery query : queries.values())
+					infos.add(query.info());
+				reply.send(HttpStatus.SC_OK, gson.toJson(infos));
+			} else {
+				reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+			}
+		} else if(path.startsWith(QUERIES + "/")){
+			String rest = path.substring(QUERIES.length() + 1);
+			int observers = rest.indexOf(OBSERVERS);
+			if(observers < 0)
+				handleQuery(method, decode(rest), body, contentType, reply);
+			else
+				handleObserver(method, decode(rest.substring(0, observers)), rest.substring(observers + OBSERVERS.length()), reply);
+		} else if(path.equals(KB)){
+			handleKnowledgeBase(method, body, reply);
+		} else {
+			reply.send(HttpStatus.SC_NOT_FOUND, "Unknown resource " + path);
+		}
+	}
+
+	private void handleStream(String method, String name, String body, long bodyBytes, String contentType, Reply reply) {
+		FakeStream stream = streams.get(name);
+		if(method.equals("PUT")){
+			if(streams.putIfAbsent(name, new FakeStream(name)) == null)
+				reply.send(HttpStatus.SC_OK, gson.toJson("Stream " + name + " succesfully registered"));
+			else
+				reply.send(HttpStatus.SC_BAD_REQUEST, "Stream " + name + " already exists");
+		} else if(stream == null){
+			reply.send(HttpStatus.SC_NOT_FOUND, "Stream " + name + " does not exist");
+		} else if(method.equals("POST") && !acceptsFeed(contentType)){
+			reply.send(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported feed format " + contentType);
+		} else if(method.equals("POST")){
+			stream.feeds.incrementAndGet();
+			stream.bytes.addAndGet(bodyBytes);
+			stream.lastFeed = body;
+			reply.send(HttpStatus.SC_OK, gson.toJson("Stream " + name + " succesfully fed"));
+		} else if(method.equals("GET")){
+			reply.send(HttpStatus.SC_OK, gson.toJson(stream.info()));
+		} else if(method.equals("DELETE")){
+			streams.remove(name);
+			reply.send(HttpStatus.SC_OK, gson.toJson("Stream " + name + " succesfully unregistered"));
+		} else {
+			reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+		}
+	}
+
+	private void handleQuery(String method, String name, String body, String contentType, Reply reply) {
+		FakeQuery query = queries.get(name);
+		if(method.equals("PUT")){
+			if(queries.putIfAbsent(name, new FakeQuery(address + QUERIES + "/" + name, body)) == null)
+				reply.send(HttpStatus.SC_OK, gson.toJson(address + QUERIES + "/" + name));
+			else
+				reply.send(HttpStatus.SC_BAD_REQUEST, "Query " + name + " already exists");
+		} else if(query == null){
+			reply.send(HttpStatus.SC_NOT_FOUND, "Query " + name + " does not exist");
+		} else if(method.equals("POST") && contentType != null && contentType.startsWith("application/x-www-form-urlencoded")){
+			String action = formParameters(body).get("action");
+			if("pause".equals(action)){
+				query.status = "PAUSED";
+				reply.send(HttpStatus.SC_OK, gson.toJson("Query " + name + " succesfully paused"));
+			} else if("restart".equals(action)){
+				query.status = "RUNNING";
+				reply.send(HttpStatus.SC_OK, gson.toJson("Query " + name + " succesfully restarted"));
+			} else {
+				reply.send(HttpStatus.SC_BAD_REQUEST, "Unknown action " + action);
+			}
+		} else if(method.equals("POST")){
+			String id = String.valueOf(observerCounter.incrementAndGet());
+			query.observers.put(id, body);
+			reply.send(HttpStatus.SC_OK, gson.toJson(query.uri + OBSERVERS + "/" + id));
+		} else if(method.equals("GET")){
+			reply.send(HttpStatus.SC_OK, gson.toJson(query.info()));
+		} else if(method.equals("DELETE")){
+			queries.remove(name);
+			reply.send(HttpStatus.SC_OK, gson.toJson("Query " + name + " succesfully unregistered"));
+		} else {
+			reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+		}
+	}
+
+	private void handleObserver(String method, String queryName, String rest, Reply reply) {
+		FakeQuery query = queries.get(queryName);
+		if(query == null){
+			reply.send(HttpStatus.SC_NOT_FOUND, "Query " + queryName + " does not exist");
+		} else if(rest.isEmpty() || rest.equals("/")){
+			if(method.equals("GET")){
+				List<Map<String, String>> infos = new ArrayList<Map<String, String>>();
+				for(Map.Entry<String, String> observer : query.observers.entrySet())
+					infos.add(observerInfo(query, observer.getKey(), observer.getValue()));
+				reply.send(HttpStatus.SC_OK, gson.toJson(infos));
+			} else {
+				reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+			}
+		} else {
+			String id = rest.substring(1);
+			String callbackUrl = query.observers.get(id);
+			if(callbackUrl == null){
+				reply.send(HttpStatus.SC_NOT_FOUND, "Observer " + id + " does not exist");
+			} else if(method.equals("GET")){
+				reply.send(HttpStatus.SC_OK, gson.toJson(gson.toJson(observerInfo(query, id, callbackUrl))));
+			} else if(method.equals("DELETE")){
+				query.observers.remove(id);
+				reply.send(HttpStatus.SC_OK, gson.toJson("Observer " + id + " succesfully unregistered"));
+			} else {
+				reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+			}
+		}
+	}
+
+	private void handleKnowledgeBase(String method, String body, Reply reply) {
+		if(!method.equals("POST")){
+			reply.send(HttpStatus.SC_METHOD_NOT_ALLOWED, "");
+			return;
+		}
+		Map<String, String> params = formParameters(body);
+		String action = params.get("action");
+		if("update".equals(action)){
+			updateQueries.add(params.get("queryBody"));
+			reply.send(HttpStatus.SC_OK, gson.toJson("Update query succesfully executed"));
+		} else if("put".equals(action)){
+			staticModels.put(params.get("iri"), params.get("serialization"));
+			reply.send(HttpStatus.SC_OK, gson.toJson("Model " + params.get("iri") + " succesfully put"));
+		} else if("delete".equals(action)){
+			if(staticModels.remove(params.get("iri")) != null)
+				reply.send(HttpStatus.SC_OK, gson.toJson("Model " + params.get("iri") + " succesfully removed"));
+			else
+				reply.send(HttpStatus.SC_NOT_FOUND, "Model " + params.get("iri") + " does not exist");
+		} else {
+			reply.send(HttpStatus.SC_BAD_REQUEST, "Unknown action " + action);
+		}
+	}
+
+	private Map<String, String> observerInfo(FakeQuery query, String id, String callbackUrl) {
+		Map<String, String> info = new LinkedHashMap<String, String>();
+		info.put("id", query.uri + OBSERVERS + "/" + id);
+		info.put("callbackUrl", callbackUrl);
+		return info;
+	}
+
+	private boolean acceptsFeed(String contentType) {
+		List<String> accepted = feedContentTypes;
+		if(accepted == null)
+			return true;
+		String mediaType = contentType == null ? "" : contentType.split(";")[0].trim();
+		return accepted.contains(mediaType);
+	}
+
+	private static Map<String, String> formParameters(String body) {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for(NameValuePair pair : URLEncodedUtils.parse(body, UTF_8))
+			params.put(pair.getName(), pair.getValue());
+		return params;
+	}
+
+	private static String decode(String pathSegment) {
+		try {
+			return URLDecoder.decode(pathSegment, "UTF-8");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return status of the error requested by {@link #failNext(int, int, String)} for the current request, or 0
+	 */
+	private int nextError() {
+		int remaining = failNext.get();
+		while(remaining > 0){
+			if(failNext.compareAndSet(remaining, remaining - 1))
+				return failNextStatus;
+			remaining = failNext.get();
+		}
+		return 0;
+	}
+
+	/**
+	 * @return status of the random error to inject in the current request, or 0
+	 */
+	private int randomError() {
+		if(errorRate > 0){
+			synchronized (random) {
+				if(random.nextDouble() < errorRate)
+					return errorStatus;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return delay in nanoseconds before the current request is answered
+	 */
+	private long responseDelay() {
+		long delay = TimeUnit.MILLISECONDS.toNanos(minLatencyMillis);
+		if(maxLatencyMillis > minLatencyMillis){
+			synchronized (random) {
+				delay += TimeUnit.MILLISECONDS.toNanos((long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis)));
+			}
+		}
+		long interval = throttleIntervalNanos;
+		if(interval > 0){
+			long now = System.nanoTime();
+			while(true){
+				long slot = nextSlot.get();
+				long start = slot == Long.MIN_VALUE || slot - now < 0 ? now : slot;
+				if(nextSlot.compareAndSet(slot, start + interval)){
+					delay += start - now;
+					break;
+				}
+			}
+		}
+		return delay;
+	}
+
+	private static byte[] gzip(byte[] content) {
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+			gzip.write(content);
+			gzip.close();
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class FakeStream {
+		private final String name;
+		private final AtomicLong feeds = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private volatile String lastFeed;
+
+		private FakeStream(String name) {
+			this.name = name;
+		}
+
+		private Map<String, String> info() {
+			Map<String, String> info = new LinkedHashMap<String, String>();
+			info.put("streamIRI", name);
+			info.put("status", "RUNNING");
+			return info;
+		}
+	}
+
+	private static class FakeQuery {
+		private final String uri;
+		private final String body;
+		private volatile String status = "RUNNING";
+		private final ConcurrentMap<String, String> observers = new ConcurrentHashMap<String, String>();
+
+		private FakeQuery(String uri, String body) {
+			this.uri = uri;
+			this.body = body;
+		}
+
+		private Map<String, String> info() {
+			Map<String, String> info = new LinkedHashMap<String, String>();
+			info.put("id", uri);
+			info.put("body", body);
+			info.put("status", status);
+			return info;
+		}
+	}
+
+	/**
+	 * Submits the response of an exchange after the configured delay
+	 */
+	private class Reply {
+		private final HttpAsyncExchange exchange;
+		private final long delayNanos;
+		private final boolean gzip;
+		/** Entity tag of the If-None-Match header of a GET request, null if none */
+		private final String ifNoneMatch;
+		private final boolean get;
+
+		private Reply(HttpAsyncExchange exchange, long delayNanos, boolean gzip, boolean get, String ifNoneMatch) {
+			this.exchange = exchange;
+			this.delayNanos = delayNanos;
+			this.gzip = gzip;
+			this.get = get;
+			this.ifNoneMatch = ifNoneMatch;
+		}
+
+		private void send(int status, String body) {
+			HttpResponse response = exchange.getResponse();
+			response.setStatusCode(status);
+			ContentType contentType = ContentType.create(status == HttpStatus.SC_OK ? "application/json" : "text/plain", UTF_8);
+			String etag = get && status == HttpStatus.SC_OK ? "\"" + Integer.toHexString(body.hashCode()) + "\"" : null;
+			if(etag != null)
+				response.setHeader("ETag", etag);
+			if(etag != null && etag.equals(ifNoneMatch)){
+				notModifiedResponses.incrementAndGet();
+				response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+			} else if(gzip){
+				compressedResponses.incrementAndGet();
+				NByteArrayEntity entity = new NByteArrayEntity(gzip(body.getBytes(UTF_8)), contentType);
+				entity.setContentEncoding("gzip");
+				response.setEntity(entity);
+			} else {
+				response.setEntity(new NStringEntity(body, contentType));
+			}
+			if(delayNanos <= 0){
+				exchange.submitResponse();
+			} else {
+				timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						exchange.submitResponse();
+					}
+				}, delayNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	private class RequestHandler implements HttpAsyncRequestHandler<HttpRequest> {
+
+		@Override
+		public HttpAsyncRequestConsumer<HttpRequest> processRequest(HttpRequest request, HttpContext context) throws HttpException, IOException {
+			return new BasicAsyncRequestConsumer();
+		}
+
+		@Override
+		public void handle(HttpRequest request, HttpAsyncExchange exchange, HttpContext context) throws HttpException, IOException {
+			requests.incrementAndGet();
+			Header acceptEncoding = request.getFirstHeader("Accept-Encoding");
+			boolean gzip = responseCompression && acceptEncoding != null && acceptEncoding.getValue().contains("gzip");
+			Header ifNoneMatch = request.getFirstHeader("If-None-Match");
+			boolean get = request.getRequestLine().getMethod().equals("GET");
+			Reply reply = new Reply(exchange, responseDelay(), gzip, get, ifNoneMatch == null ? null : ifNoneMatch.getValue());
+
+			String message = failNextMessage;
+			int error = nextError();
+			if(error == 0){
+				message = INJECTED_ERROR;
+				error = randomError();
+			}
+			if(error != 0){
+				injectedErrors.incrementAndGet();
+				reply.send(error, message);
+				return;
+			}
+
+			String path;
+			try {
+				// proxy style clients send the absolute URI in the request line
+				path = new URI(request.getRequestLine().getUri()).getRawPath();
+			} catch (URISyntaxException e) {
+				reply.send(HttpStatus.SC_BAD_REQUEST, "Invalid request URI");
+				return;
+			}
+			String body = "";
+			long bodyBytes = 0;
+			String contentType = null;
+			if(request instanceof HttpEntityEnclosingRequest){
+				HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+				if(entity != null){
+					byte[] content = EntityUtils.toByteArray(entity);
+					bodyBytes = content.length;
+					Header contentEncoding = entity.getContentEncoding();
+					if(contentEncoding != null && contentEncoding.getValue().equalsIgnoreCase("gzip")){
+						compressedRequests.incrementAndGet();
+						content = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(content)));
+					}
+					body = new String(content, UTF_8);
+					contentType = entity.getContentType() == null ? null : entity.getContentType().getValue();
+				}
+			}
+			FakeRspServer.this.handle(request.getRequestLine().getMethod(), path, body, bodyBytes, contentType, reply);
+		}
+	}
+
+}